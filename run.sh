@@ -1,5 +1,5 @@
 java \
 	-Djava.library.path=. \
-	-Dcom.amd.aparapi.executionMode=%1 \
+	-Dcom.amd.aparapi.executionMode=${1:-JTP} \
 	-classpath ./aparapi.jar:VisionTracking.jar \
-	controller.Runner
+	controller.Runner "${@:2}"
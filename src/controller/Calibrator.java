@@ -0,0 +1,288 @@
+package controller;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import model.util.FastRGB;
+import model.vision.BrightnessStats;
+import model.vision.ColorHistogram;
+import model.vision.CompiledConfig;
+import model.vision.Pixel;
+import model.vision.RunLength;
+import model.vision.VisionConfig;
+import model.vision.kernel.VisionKernels;
+
+/*
+ * Works out the hues, spread and threshold from recorded frames instead of
+ * moving sliders at every event. The samples file has a line per frame and
+ * color, paths relative to the samples file, color 0 the cubes and 1 the tape:
+ *
+ * frame1.jpg 0 120,80 131,85 ... clicked points, each a small patch
+ * frame1.jpg 1 box 200,40,230,180 everything in the box
+ *
+ * Frames go through the same conversion and blur the pipeline uses, so the
+ * samples are what the isolate step will see. The results, with a learned
+ * histogram per color for back projection, are written into the config file,
+ * which a running pipeline picks up by itself
+ */
+public class Calibrator {
+
+	// each clicked point stands for the pixels this far around it
+	private static final int PATCH_RADIUS = 2;
+	// the share of samples left outside the hue range and under the threshold, so a few stray pixels don't stretch them
+	private static final double OUTLIERS = .05;
+	// room left around what the samples covered
+	private static final float SPREAD_MARGIN = 1.25f;
+	private static final float THRESHOLD_MARGIN = .9f;
+	// hue means nothing on pixels this dark
+	private static final float DARKEST = .1f;
+
+	private VisionKernels kernels;
+	private VisionConfig config;
+	private Samples[] samples;
+
+	/*
+	 * the pixels of one color, as the pipeline sees them
+	 */
+	private static class Samples {
+		float[] hue = new float[1024], saturation = new float[1024], value = new float[1024];
+		int size;
+		ColorHistogram histogram = ColorHistogram.EMPTY;
+
+		void add(float h, float s, float v) {
+			if (size == hue.length) {
+				hue = Arrays.copyOf(hue, size * 2);
+				saturation = Arrays.copyOf(saturation, size * 2);
+				value = Arrays.copyOf(value, size * 2);
+			}
+			hue[size] = h;
+			saturation[size] = s;
+			value[size] = v;
+			size++;
+		}
+	}
+
+	public Calibrator(VisionKernels kernels, VisionConfig config, int colors) {
+		this.kernels = kernels;
+		this.config = config;
+		this.samples = new Samples[colors];
+		for (int i = 0; i < colors; i++)
+			samples[i] = new Samples();
+	}
+
+	/*
+	 * --calibrate samples.txt together with --config file, updates the file and
+	 * exits
+	 */
+	public static void run(RunOptions options) {
+		if (options.configFile == null) {
+			System.out.println("--calibrate needs --config for the file to write");
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		Properties properties = new Properties();
+		if (options.configFile.exists()) {
+			try (InputStream in = new FileInputStream(options.configFile)) {
+				properties.load(in);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		// only the processing parameters, not the calibration the controller takes out
+		Properties processing = new Properties();
+		for (String name : properties.stringPropertyNames()) {
+			if (!name.matches("camera\\d+\\..*|hue\\d+"))
+				processing.setProperty(name, properties.getProperty(name));
+		}
+		VisionKernels kernels = new VisionKernels();
+		try {
+			Calibrator calibrator = new Calibrator(kernels, VisionConfig.defaults().with(processing), 2);
+			int frames = calibrator.addSamples(options.calibrationSamples);
+			Properties result = calibrator.getParameters();
+			properties.putAll(result);
+			try (OutputStream out = new FileOutputStream(options.configFile)) {
+				properties.store(out, "calibrated from " + options.calibrationSamples);
+			}
+			System.out.println("Calibrated from " + frames + " frames in " + (System.currentTimeMillis() - startTime) + " ms, wrote " + options.configFile);
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+		} finally {
+			kernels.dispose();
+		}
+	}
+
+	/*
+	 * reads the samples file and adds the samples of every frame in it
+	 *
+	 * @return the number of frames
+	 */
+	public int addSamples(File samplesFile) throws IOException {
+		// every frame is converted once, however many lines name it
+		Map<String, List<String[]>> frames = new LinkedHashMap<String, List<String[]>>();
+		for (String line : Files.readAllLines(samplesFile.toPath())) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			String[] parts = line.split("\\s+");
+			if (parts.length < 3)
+				throw new IllegalArgumentException("Expected frame, color and samples: " + line);
+			frames.computeIfAbsent(parts[0], name -> new ArrayList<String[]>()).add(parts);
+		}
+		for (Map.Entry<String, List<String[]>> frame : frames.entrySet()) {
+			File file = new File(frame.getKey());
+			if (!file.isAbsolute())
+				file = new File(samplesFile.getAbsoluteFile().getParentFile(), frame.getKey());
+			BufferedImage read = ImageIO.read(file);
+			if (read == null)
+				throw new IOException("Can't read " + file);
+			addFrame(read, frame.getValue());
+		}
+		return frames.size();
+	}
+
+	private void addFrame(BufferedImage read, List<String[]> lines) {
+		// into the byte layout the pipeline reads, whatever the file was
+		BufferedImage image = FastRGB.createImage(read.getWidth(), read.getHeight());
+		Graphics graphics = image.getGraphics();
+		graphics.drawImage(read, 0, 0, null);
+		graphics.dispose();
+
+		int width = image.getWidth(), height = image.getHeight();
+		int[] rgb = new FastRGB(image).getRGB(null);
+		float[] hue = new float[rgb.length], saturation = new float[rgb.length], value = new float[rgb.length];
+		kernels.convert(rgb, hue, saturation, value, new BrightnessStats(null), 0, rgb.length);
+		kernels.blur(saturation, value, width, 0, height, (int) Math.sqrt(config.getBlur()));
+
+		for (String[] line : lines) {
+			int color = Integer.parseInt(line[1]);
+			if (color < 0 || color >= samples.length)
+				throw new IllegalArgumentException("No color " + color);
+			RunLength runs = regions(line, width, height);
+			Samples colorSamples = samples[color];
+			for (int run = 0; run < runs.size(); run++) {
+				int start = runs.getRow(run) * width;
+				for (int i = start + runs.getStart(run); i <= start + runs.getEnd(run); i++) {
+					if (value[i] > DARKEST)
+						colorSamples.add(hue[i], saturation[i], value[i]);
+				}
+			}
+			colorSamples.histogram = colorSamples.histogram.withSamples(hue, saturation, value, runs, width, DARKEST);
+		}
+	}
+
+	/*
+	 * the pixels a line names, clipped to the frame
+	 */
+	private static RunLength regions(String[] line, int width, int height) {
+		RunLength runs = new RunLength();
+		if (line[2].equals("box")) {
+			if (line.length != 4)
+				throw new IllegalArgumentException("A box is x0,y0,x1,y1");
+			int[] box = numbers(line[3], 4);
+			for (int row = Math.max(0, Math.min(box[1], box[3])); row <= Math.min(height - 1, Math.max(box[1], box[3])); row++)
+				runs.add(row, Math.max(0, Math.min(box[0], box[2])), Math.min(width - 1, Math.max(box[0], box[2])));
+			return runs;
+		}
+		for (int i = 2; i < line.length; i++) {
+			int[] point = numbers(line[i], 2);
+			for (int row = Math.max(0, point[1] - PATCH_RADIUS); row <= Math.min(height - 1, point[1] + PATCH_RADIUS); row++)
+				runs.add(row, Math.max(0, point[0] - PATCH_RADIUS), Math.min(width - 1, point[0] + PATCH_RADIUS));
+		}
+		return runs;
+	}
+
+	private static int[] numbers(String text, int count) {
+		String[] parts = text.split(",");
+		if (parts.length != count)
+			throw new IllegalArgumentException("Expected " + count + " numbers: " + text);
+		int[] numbers = new int[count];
+		for (int i = 0; i < count; i++)
+			numbers[i] = Integer.parseInt(parts[i].trim());
+		return numbers;
+	}
+
+	/*
+	 * hue0, hue1, ..., hueSpread, threshold and histogram0, ... for the samples
+	 * so far. One spread and threshold cover every color, so they are the widest
+	 * any color needs, but never so wide that two colors overlap
+	 */
+	public Properties getParameters() {
+		Properties properties = new Properties();
+		float[] hues = new float[samples.length];
+		float spread = 0, threshold = 1;
+		for (int color = 0; color < samples.length; color++) {
+			Samples colorSamples = samples[color];
+			if (colorSamples.size == 0) {
+				System.out.println("No samples of color " + color + ", leaving it as it is");
+				hues[color] = Float.NaN;
+				continue;
+			}
+			hues[color] = meanHue(colorSamples);
+			float[] distances = new float[colorSamples.size];
+			for (int i = 0; i < colorSamples.size; i++)
+				distances[i] = Pixel.hueDistance(colorSamples.hue[i], hues[color]);
+			float colorSpread = percentile(distances, colorSamples.size, 1 - OUTLIERS) * SPREAD_MARGIN;
+			float colorThreshold = percentile(colorSamples.saturation, colorSamples.size, OUTLIERS) * THRESHOLD_MARGIN;
+			float darkest = percentile(colorSamples.value, colorSamples.size, OUTLIERS);
+			System.out.println("Color " + color + ": " + colorSamples.size + " samples, hue " + hues[color] + " +-" + colorSpread + ", saturation over " + colorThreshold
+					+ ", value over " + darkest + (darkest < CompiledConfig.VALUE_CUTOFF && !config.isAdaptive() ? " (under the value cutoff, turn on adaptive)" : ""));
+			spread = Math.max(spread, colorSpread);
+			threshold = Math.min(threshold, colorThreshold);
+			properties.setProperty("hue" + color, Float.toString(hues[color]));
+			properties.setProperty("histogram" + color, colorSamples.histogram.encode());
+		}
+		for (int a = 0; a < hues.length; a++) {
+			for (int b = a + 1; b < hues.length; b++) {
+				if (Float.isNaN(hues[a]) || Float.isNaN(hues[b]))
+					continue;
+				float apart = Pixel.hueDistance(hues[a], hues[b]);
+				if (spread > apart / 2) {
+					System.out.println("Colors " + a + " and " + b + " overlap, narrowing the spread to " + apart / 2);
+					spread = apart / 2;
+				}
+			}
+		}
+		if (spread > 0) {
+			properties.setProperty("hueSpread", Float.toString(spread));
+			properties.setProperty("threshold", Float.toString(threshold));
+		}
+		return properties;
+	}
+
+	/*
+	 * the average around the color wheel, so samples either side of red don't
+	 * average out to cyan. Weighted by saturation, grey pixels have little hue
+	 */
+	private static float meanHue(Samples samples) {
+		double sin = 0, cos = 0;
+		for (int i = 0; i < samples.size; i++) {
+			double angle = samples.hue[i] * 2 * Math.PI;
+			sin += samples.saturation[i] * Math.sin(angle);
+			cos += samples.saturation[i] * Math.cos(angle);
+		}
+		double hue = Math.atan2(sin, cos) / (2 * Math.PI);
+		return (float) (hue < 0 ? hue + 1 : hue);
+	}
+
+	private static float percentile(float[] values, int size, double fraction) {
+		float[] sorted = Arrays.copyOf(values, size);
+		Arrays.sort(sorted);
+		return sorted[Math.min(size - 1, (int) (fraction * size))];
+	}
+}
@@ -0,0 +1,220 @@
+package controller;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import model.util.Camera;
+import model.util.FastRGB;
+import model.util.FrameScheduler;
+import model.util.LatencyGovernor;
+import model.util.RollingTimer;
+import model.vision.CameraModel;
+import model.vision.ChangeDetector;
+import model.vision.CompiledConfig;
+import model.vision.ProcessingMask;
+import model.vision.VisionConfig;
+import model.vision.hsvIsolate.HSVIsolateController;
+import model.vision.hsvIsolate.HSVIsolateObject;
+import model.vision.hsvIsolate.TargetTracker;
+import model.vision.hsvIsolate.Track;
+import model.vision.kernel.VisionKernels;
+
+/*
+ * Everything that belongs to one camera: the camera itself, its change
+ * detector and its newest results. The heavy lifting goes through the kernels
+ * and workers every pipeline shares, this thread mostly waits for frames
+ */
+public class CameraPipeline extends Thread {
+	
+	private int cameraId;
+	private Controller controller;
+	private Camera camera;
+	private VisionKernels kernels;
+	// replaced as a whole by the controller when the colors are recalibrated
+	private volatile float[] hues;
+	private ChangeDetector changeDetector = new ChangeDetector();
+	private TargetTracker tracker = new TargetTracker();
+	// replaced as a whole when the calibration changes, the tables in it are kept till then
+	private volatile CameraModel cameraModel;
+	private RollingTimer frameTimer = new RollingTimer(.05);
+	// picks the processing size that keeps frames inside the config's latency budget
+	private LatencyGovernor governor = new LatencyGovernor();
+	// the camera frame scaled down to it, reused every frame
+	private BufferedImage scaled;
+	// rebuilt only when the config version changes
+	private CompiledConfig compiled;
+	
+	// newest results, read by the preview and the network server
+	private volatile HSVIsolateController pic;
+	// when the camera frame pic was last confirmed with arrived, and whether the camera has stalled since
+	private volatile long resultImageTime;
+	private volatile boolean stale = false;
+	
+	public CameraPipeline(int cameraId, Camera camera, Controller controller, VisionKernels kernels, float[] hues) {
+		super("Camera " + cameraId);
+		this.cameraId = cameraId;
+		this.camera = camera;
+		this.controller = controller;
+		this.kernels = kernels;
+		this.hues = hues;
+		this.cameraModel = controller.loadCameraModel(cameraId);
+		
+		compiled = CompiledConfig.compile(null, controller.getConfig(), hues);
+		pic = new HSVIsolateController(camera.getImage(), compiled, kernels);
+		resultImageTime = camera.getImageTime();
+	}
+	
+	public void run() {
+		// the config the current pic was made with, a change forces a full frame
+		VisionConfig lastConfig = compiled.getConfig();
+		FrameScheduler scheduler = camera.getScheduler();
+		long seen = scheduler.getFrameCount();
+		while (!isInterrupted()) {
+			try {
+				// wakes as soon as a frame arrives, but no faster than the requested framerate.
+				// Times out now and then so config changes still apply with a stalled camera
+				seen = scheduler.awaitFrame(seen, Math.max(1, controller.getConfig().getFramerate()), 100, TimeUnit.MILLISECONDS);
+				
+				frameTimer.startTimer();
+				
+				BufferedImage image = camera.getImage();
+				long imageTime = camera.getImageTime();
+				controller.checkConfigFile();
+				VisionConfig current = controller.getConfig();
+				float[] currentHues = hues;
+				int scale = governor.getScale();
+				boolean configChanged = !current.sameProcessing(lastConfig) || !Arrays.equals(currentHues, compiled.getHues());
+				if (configChanged) {
+					changeDetector.reset();
+				}
+				if (scale != compiled.getScale()) {
+					// nothing from the old size lines up with the new one, tracks would see every target jump
+					changeDetector.reset();
+					tracker.clear();
+					configChanged = true;
+				}
+				lastConfig = current;
+				compiled = CompiledConfig.compile(compiled, current, currentHues, scale);
+				if (scale > 1) {
+					scaled = FastRGB.scaleDown(image, scale, scaled);
+					image = scaled;
+				}
+				// masked off rows aren't decoded from the next frame on, or compared now
+				ProcessingMask.Raster mask = compiled.getMask().rasterize(image.getWidth(), image.getHeight());
+				camera.setDecodeRows((float) mask.getFirstRow() / image.getHeight(), (float) mask.getLastRow() / image.getHeight());
+				
+				// a stalled camera keeps handing out its last frame, the last result
+				// stays up for clients but is flagged as stale
+				boolean processed = false;
+				if (imageTime != resultImageTime || configChanged) {
+					changeDetector.update(image, mask.getFirstRow(), mask.getLastRow());
+					// moving targets are traced again where they should be now, even if they moved too little to notice
+					tracker.markPredicted(changeDetector, imageTime);
+					// if nothing moved the last results are still valid
+					if (!changeDetector.isStatic()) {
+						pic = new HSVIsolateController(image, compiled, pic, changeDetector, kernels);
+						processed = true;
+					}
+					// an unchanged frame still tells the tracker its targets stood still
+					tracker.update(pic, imageTime);
+					resultImageTime = imageTime;
+				}
+				stale = camera.isStalled();
+				
+				frameTimer.stopTimer();
+				// frames with nothing to redo are no guide to what the next real one costs
+				if (processed)
+					governor.update(frameTimer.getLastTimeTaken(), current.getLatencyBudget());
+				
+				System.out.println("Camera " + cameraId + " milliseconds taken: " + frameTimer.getLastTimeTaken() + (scale > 1 ? " at 1/" + scale + " size" : ""));
+				System.out.println("Average: " + (int) frameTimer.getAverage());
+				System.out.println("Framerate: " + getEffectiveFramerate() + " of " + current.getFramerate() + " requested, camera " + getCameraFramerate() + "\n");
+				
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	public int getCameraId() {
+		return cameraId;
+	}
+	
+	public Camera getCamera() {
+		return camera;
+	}
+	
+	public void setHues(float[] hues) {
+		this.hues = hues;
+	}
+	
+	public HSVIsolateController getLatestResult() {
+		return pic;
+	}
+	
+	public CameraModel getCameraModel() {
+		return cameraModel;
+	}
+	
+	public void setCameraModel(CameraModel cameraModel) {
+		this.cameraModel = cameraModel;
+	}
+	
+	public TargetTracker getTracker() {
+		return tracker;
+	}
+	
+	/*
+	 * the object to report for a hue: the primary tracked target if it was found
+	 * in the latest frame, so it doesn't flip between similar objects, otherwise
+	 * the largest one
+	 */
+	public HSVIsolateObject getTarget(int hueIndex) {
+		Track track = tracker.getPrimary(hueIndex);
+		if (track != null && track.getMisses() == 0)
+			return track.getObject();
+		return pic.getColoredFrame(hueIndex).getLargestObject();
+	}
+	
+	/*
+	 * the primary tracked target for a color, null if there is none
+	 */
+	public Track getTrack(int hueIndex) {
+		return tracker.getPrimary(hueIndex);
+	}
+	
+	/*
+	 * milliseconds since the camera frame behind the latest result arrived
+	 */
+	public long getResultAge() {
+		return (System.nanoTime() - resultImageTime) / 1000000;
+	}
+	
+	/*
+	 * true while the camera is stalled, the latest result is then the last good one
+	 */
+	public boolean isStale() {
+		return stale;
+	}
+	
+	/*
+	 * how many frames a second this pipeline could do if it never waited
+	 */
+	public int getMaxFramerate() {
+		return (int) frameTimer.getOpsPerSecond();
+	}
+	
+	/*
+	 * how many frames a second are actually processed
+	 */
+	public int getEffectiveFramerate() {
+		return (int) Math.round(camera.getScheduler().getEffectiveFramerate());
+	}
+	
+	public int getCameraFramerate() {
+		return camera.getFrameRate();
+	}
+}
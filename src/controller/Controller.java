@@ -1,104 +1,287 @@
 package controller;
 
-import view.PreviewFrame;
-
-import java.awt.Color;
-import java.awt.Dimension;
-import java.net.MalformedURLException;
-import java.util.concurrent.TimeUnit;
-
-import com.github.sarxos.webcam.Webcam;
-import com.github.sarxos.webcam.ds.ipcam.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 import model.networking.NetworkServerController;
 import model.util.Camera;
-import model.util.GarbageCollector;
-import model.util.RollingTimer;
 import model.vision.*;
 import model.vision.hsvIsolate.HSVIsolateController;
+import model.vision.hsvIsolate.HSVIsolateObject;
+import model.vision.kernel.VisionKernels;
 
 public class Controller {
 	
-	// VisionFrameController pic;
-	private HSVIsolateController pic;
-	private PreviewFrame window;
+	// one per camera, camera ids are the index in this list
+	private List<CameraPipeline> pipelines = new ArrayList<CameraPipeline>();
+	// a view.PreviewFrame, kept as an Object so headless runs never load the view
+	private Object window;
 	private NetworkServerController rioResponder;
-	private Camera webcam;
-	private RollingTimer frameTimer;
+	// shared by every camera so they take turns instead of fighting over the cpu
+	private VisionKernels kernels;
 	
-	public float hueSpread = .05f;
-	public float threshold = .4f;
-	public int blur = 10;
-	public int framerate = 24;
+	// swapped as a whole by the preview and clients, read once per frame
+	private final AtomicReference<VisionConfig> config = new AtomicReference<VisionConfig>(VisionConfig.defaults());
 	
-	public float yellowHue = .16f;
-	public float greenHue = .33f;
+	// where the cubes and the tape are in colors
+	public static final int YELLOW = 0, GREEN = 1;
+	
+	// hue0 and hue1 in the config file, see Calibrator
+	public volatile float yellowHue = .16f;
+	public volatile float greenHue = .33f;
 	private float testHue = .43f;
 	
-	private float[] colors = new float[] { yellowHue, greenHue};
+	private volatile float[] colors = new float[] { yellowHue, greenHue};
+	
+	// parameters are read from here at startup and again whenever it changes
+	private File configFile;
+	private long configModified;
+	private long lastConfigCheck;
+	// the "cameraN." entries of the config file, the calibration of camera N
+	private Properties calibration = new Properties();
 	
 	public Controller(String[] args) {
-		try {
+		this(RunOptions.parse(args));
+	}
+	
+	public Controller(RunOptions options) {
+		this.configFile = options.configFile;
+		reloadConfig();
+		kernels = new VisionKernels();
+		System.out.println("Kernel execution mode: " + kernels.getExecutionMode());
+		
+		List<Camera> cameras = new ArrayList<Camera>();
+		for (String url : options.cameraArgs) {
 			try {
-				webcam = new Camera(args[0]);
+				cameras.add(new Camera(url, options.decodeScale));
 			} catch (Exception e) {
-				webcam = new Camera(640, 480);
-//												 webcam = new Camera("http://10.45.85.2:5800/stream.mjpg");
-//				 webcam = new Camera("http://10.0.0.56:8080/video");
-
+				e.printStackTrace();
+				System.out.println("Skipping camera " + url);
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		webcam.start();
-		frameTimer = new RollingTimer(.05);
-		pic = new HSVIsolateController(webcam.getImage(), colors, blur, threshold, hueSpread);
-		window = new PreviewFrame(pic.getPixels2D(), this);
+		if (cameras.isEmpty()) {
+			cameras.add(new Camera(640, 480));
+//			cameras.add(new Camera("http://10.45.85.2:5800/stream.mjpg"));
+//			cameras.add(new Camera("http://10.0.0.56:8080/video"));
+		}
+		for (Camera camera : cameras) {
+			camera.setStallTimeout(options.stallTimeout);
+			camera.start();
+			pipelines.add(new CameraPipeline(pipelines.size(), camera, this, kernels, colors));
+		}
 		
-		rioResponder = new NetworkServerController(5801, this, pic);
+		if (!options.headless)
+			window = openPreview();
+		
+		rioResponder = new NetworkServerController(5801, this);
 		rioResponder.start();
-		while (true) {
-			try {
-				
-				frameTimer.startTimer();
-				
-				pic = new HSVIsolateController(webcam.getImage(), colors, blur, threshold, hueSpread);
-				rioResponder.setVisionFrameController(this, pic);
-				window.update(pic.getPixels2D());
-				
-//				 Frame frame = new Frame(webcam.getImage());
-//				 frame.addStatic((float)blur/100);
-//				 window.update(frame.getPixels2D());
-				
-				frameTimer.stopTimer();
-				
-				System.out.println("Milliseconds taken: " + frameTimer.getLastTimeTaken());
-				System.out.println("Average: " + (int) frameTimer.getAverage() + "\n");
-				
-				TimeUnit.MILLISECONDS.sleep((1000 / framerate) - frameTimer.getLastTimeTaken() > 0 ? (1000 / framerate) - frameTimer.getLastTimeTaken() : 0);
-				
-			} catch (Exception e) {
-				e.printStackTrace();
+		
+		for (CameraPipeline pipeline : pipelines) {
+			pipeline.start();
+		}
+	}
+	
+	/*
+	 * loaded by name so the view package, and swing with it, is only loaded when
+	 * there is a display to show it on
+	 */
+	private Object openPreview() {
+		try {
+			return Class.forName("view.PreviewFrame").getConstructor(Controller.class).newInstance(this);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Could not open the preview, running without it");
+			return null;
+		}
+	}
+	
+	synchronized void checkConfigFile() {
+		if (configFile == null || System.currentTimeMillis() - lastConfigCheck < 1000)
+			return;
+		lastConfigCheck = System.currentTimeMillis();
+		if (configFile.lastModified() != configModified)
+			reloadConfig();
+	}
+	
+	private synchronized void reloadConfig() {
+		if (configFile == null || !configFile.exists())
+			return;
+		configModified = configFile.lastModified();
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(configFile)) {
+			properties.load(in);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		calibration = new Properties();
+		float[] hues = colors.clone();
+		for (String name : properties.stringPropertyNames()) {
+			if (name.matches("camera\\d+\\..*")) {
+				calibration.setProperty(name, properties.getProperty(name));
+				properties.remove(name);
+			} else if (name.matches("hue\\d+")) {
+				int index = Integer.parseInt(name.substring("hue".length()));
+				try {
+					if (index < hues.length)
+						hues[index] = Float.parseFloat(properties.getProperty(name).trim());
+				} catch (NumberFormatException e) {
+					System.out.println("Ignoring " + name + "=" + properties.getProperty(name));
+				}
+				properties.remove(name);
 			}
 		}
+		setHues(hues);
+		VisionConfig loaded = updateConfig(c -> c.with(properties));
+		System.out.println("Loaded " + configFile + ": " + loaded);
+		for (CameraPipeline pipeline : pipelines) {
+			pipeline.setCameraModel(loadCameraModel(pipeline.getCameraId()));
+		}
+	}
+	
+	/*
+	 * the hue of each color, yellow cubes then green tape. Pipelines pick up a
+	 * change on their next frame and process it in full
+	 */
+	public synchronized void setHues(float[] hues) {
+		if (Arrays.equals(hues, colors))
+			return;
+		colors = hues.clone();
+		yellowHue = colors[YELLOW];
+		greenHue = colors[GREEN];
+		for (CameraPipeline pipeline : pipelines) {
+			pipeline.setHues(colors);
+		}
+		System.out.println("Hues " + Arrays.toString(colors));
+	}
+	
+	public float[] getHues() {
+		return colors.clone();
+	}
+	
+	/*
+	 * the calibration of a camera from the config file, the old 90 degree
+	 * assumption for any that isn't in it
+	 */
+	synchronized CameraModel loadCameraModel(int cameraId) {
+		try {
+			CameraModel model = CameraModel.load(calibration, "camera" + cameraId + ".", CameraModel.defaults());
+			if (calibration.stringPropertyNames().stream().anyMatch(name -> name.startsWith("camera" + cameraId + ".")))
+				System.out.println("Camera " + cameraId + " calibration: " + model);
+			return model;
+		} catch (IllegalArgumentException e) {
+			System.out.println("Bad calibration for camera " + cameraId + ": " + e.getMessage());
+			return CameraModel.defaults();
+		}
+	}
+	
+	//methods to interact with the GUI and clients
+	
+	public VisionConfig getConfig() {
+		return config.get();
+	}
+	
+	/*
+	 * safe to call from any thread, the next frame picks up the change
+	 */
+	public VisionConfig updateConfig(UnaryOperator<VisionConfig> change) {
+		return config.updateAndGet(change);
 	}
 	
-	//methods to interact with the GUI
+	public List<CameraPipeline> getPipelines() {
+		return pipelines;
+	}
+	
+	/*
+	 * null if there is no camera with that id
+	 */
+	public CameraPipeline getPipeline(int cameraId) {
+		return cameraId >= 0 && cameraId < pipelines.size() ? pipelines.get(cameraId) : null;
+	}
+	
+	/*
+	 * the first camera's, the preview shows this one
+	 */
+	public HSVIsolateController getLatestResult() {
+		return pipelines.get(0).getLatestResult();
+	}
 	
 	public void setThresholdCoeff(float value) {
-		this.threshold = value;
+		updateConfig(c -> c.withThreshold(value));
 	}
 	
 	public void setHueSpread(float value) {
-		this.hueSpread = value;
+		updateConfig(c -> c.withHueSpread(value));
 	}
 	
 	public void setFrameRate(int value) {
-		this.framerate = value;
+		updateConfig(c -> c.withFramerate(value));
 	}
 	
 	public void setBlur(int value) {
-		this.blur = value;
+		updateConfig(c -> c.withBlur(value));
+	}
+	
+	/*
+	 * JTP, SEQ, GPU or CPU, takes effect on the next frame
+	 */
+	public void setExecutionMode(String mode) {
+		kernels.setExecutionMode(VisionKernels.parseExecutionMode(mode, kernels.getExecutionMode()));
+	}
+	
+	/*
+	 * sets a parameter by name from a client, executionMode switches the kernels
+	 * and everything else goes to the config
+	 * 
+	 * @return false if the name or value wasn't understood
+	 */
+	public boolean setParameter(String name, String value) {
+		if (name.trim().equals("executionMode")) {
+			setExecutionMode(value);
+			return true;
+		}
+		try {
+			updateConfig(c -> c.with(name, value));
+			return true;
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return false;
+		}
+	}
+	
+	/*
+	 * adds the pixels of the biggest object of colors[hueIndex] in the latest
+	 * frame of that camera to the color's histogram. Learn with the hue ranges
+	 * first, then switch to back projection
+	 * 
+	 * @return false if there is no such camera or color or nothing to learn from
+	 */
+	public boolean learnColor(int cameraId, int hueIndex) {
+		CameraPipeline pipeline = getPipeline(cameraId);
+		if (pipeline == null || hueIndex < 0 || hueIndex >= colors.length)
+			return false;
+		HSVIsolateController result = pipeline.getLatestResult();
+		HSVIsolateObject sample = result.getColoredFrame(hueIndex).getLargestObject();
+		if (sample.getArea() == 0)
+			return false;
+		VisionConfig learned = updateConfig(c -> c.withHistogram(hueIndex, result.sampleColors(sample, c.getHistogram(hueIndex))));
+		System.out.println("Learned color " + hueIndex + " from camera " + cameraId + ", " + learned.getHistogram(hueIndex));
+		return true;
+	}
+	
+	public boolean forgetColor(int hueIndex) {
+		if (hueIndex < 0 || hueIndex >= colors.length)
+			return false;
+		updateConfig(c -> c.withHistogram(hueIndex, ColorHistogram.EMPTY));
+		return true;
 	}
 	
 	public void setTestHue(float value) {
@@ -106,14 +289,14 @@ public class Controller {
 	}
 	
 	public int getMaxFramerate() {
-		return (int) frameTimer.getOpsPerSecond();
+		return pipelines.get(0).getMaxFramerate();
 	}
 	
-	public int getMaxCameraFramerate() {
-		return webcam.getMaxFramerate();
+	public int getEffectiveFramerate() {
+		return pipelines.get(0).getEffectiveFramerate();
 	}
 	
 	public int getCameraFramerate() {
-		return webcam.getFrameRate();
+		return pipelines.get(0).getCameraFramerate();
 	}
 }
@@ -0,0 +1,47 @@
+package controller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * usage: Runner [--headless] [--config file] [--decode-scale 1|2|4|8]
+ * [--stall-timeout ms] [--calibrate samples] [camera url]
+ * 
+ * --headless never loads the preview (or swing and awt with it), the
+ * parameters can then be set with the config file or over the network.
+ * --decode-scale shrinks frames from MJPEG cameras while they are decoded.
+ * --stall-timeout is how long the camera can go without a frame before it is
+ * reconnected. --calibrate works out the colors from the frames listed in
+ * the samples file, writes them to the config file and exits, see Calibrator
+ */
+public class RunOptions {
+	public boolean headless = false;
+	public File configFile = null;
+	public int decodeScale = 1;
+	public int stallTimeout = 1500;
+	public File calibrationSamples = null;
+	public String[] cameraArgs = new String[0];
+	
+	public static RunOptions parse(String[] args) {
+		RunOptions options = new RunOptions();
+		List<String> cameraArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--headless")) {
+				options.headless = true;
+			} else if (args[i].equals("--config") && i + 1 < args.length) {
+				options.configFile = new File(args[++i]);
+			} else if (args[i].equals("--decode-scale") && i + 1 < args.length) {
+				options.decodeScale = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--stall-timeout") && i + 1 < args.length) {
+				options.stallTimeout = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--calibrate") && i + 1 < args.length) {
+				options.calibrationSamples = new File(args[++i]);
+			} else {
+				cameraArgs.add(args[i]);
+			}
+		}
+		options.cameraArgs = cameraArgs.toArray(new String[0]);
+		return options;
+	}
+}
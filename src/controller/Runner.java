@@ -2,6 +2,20 @@ package controller;
 
 public class Runner {
 	public static void main(String[] args){
-		Controller controller = new Controller(args);
+		RunOptions options = RunOptions.parse(args);
+		
+		if (options.calibrationSamples != null) {
+			// nothing to show, and no display in the pits
+			System.setProperty("java.awt.headless", "true");
+			Calibrator.run(options);
+			return;
+		}
+		
+		if (options.headless) {
+			// has to be set before anything touches awt
+			System.setProperty("java.awt.headless", "true");
+		}
+		
+		Controller controller = new Controller(options);
 	}
 }
@@ -8,22 +8,26 @@ import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.concurrent.TimeUnit;
 
+import controller.CameraPipeline;
 import controller.Controller;
 import model.vision.hsvIsolate.HSVIsolateController;
+import model.vision.hsvIsolate.Track;
 
 public class Client extends Thread {
 	
 	private PrintWriter out;
 	private BufferedReader in;
-	private HSVIsolateController visionFrameController;
 	private Socket socket;
 	private Controller controller;
 	
-	public Client(Controller controller, HSVIsolateController visionFrameController, Socket socket) {
+	// one strip of tape, inches
+	private static final double TAPE_WIDTH = 2;
+	private static final double TAPE_HEIGHT = 15.3;
+	
+	public Client(Controller controller, Socket socket) {
 		super();
 		try {
 			this.socket = socket;
-			this.visionFrameController = visionFrameController;
 			this.controller = controller;
 			out = new PrintWriter(socket.getOutputStream());
 			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -35,6 +39,28 @@ public class Client extends Thread {
 		
 	}
 	
+	/*
+	 * the camera pixel at the middle of a pixel of a frame processed at 1/scale
+	 * size
+	 */
+	private static int toCamera(int position, int scale) {
+		return position * scale + scale / 2;
+	}
+	
+	private static double toCamera(double position, int scale) {
+		return (position + .5) * scale - .5;
+	}
+	
+	/*
+	 * "col,row" of a centre of mass in camera pixels, {0, 0} stays as it is, it
+	 * means nothing was found
+	 */
+	private static String toCamera(int[] point, int scale) {
+		if (point[0] == 0 && point[1] == 0)
+			return "0,0";
+		return toCamera(point[0], scale) + "," + toCamera(point[1], scale);
+	}
+	
 	public boolean isClosed() {
 		return socket.isClosed();
 	}
@@ -55,18 +81,42 @@ public class Client extends Thread {
 				// point object to send to the client if required
 				int[] point;
 				
+				// "camera:request", without a camera id it's camera 0. Values can hold colons too, only digits are an id
+				int cameraId = 0;
+				int colon = message.indexOf(':');
+				if (colon > 0 && message.substring(0, colon).trim().matches("\\d+")) {
+					cameraId = Integer.parseInt(message.substring(0, colon).trim());
+					message = message.substring(colon + 1);
+				}
+				CameraPipeline pipeline = controller.getPipeline(cameraId);
+				if (pipeline == null) {
+					out.println("ERROR");
+					out.flush();
+					socket.close();
+					return;
+				}
+				HSVIsolateController visionFrameController = pipeline.getLatestResult();
+				// positions are answered in camera pixels whatever size the frame was processed at
+				int scale = visionFrameController.getScale();
+				
+				// anything after the request number are its arguments, the last one can hold commas itself
+				String[] parts = message.split(",", 3);
+				
 				// process client request and respond with an accurate response
-				switch (Integer.parseInt(message)) {
+				switch (Integer.parseInt(parts[0].trim())) {
 					case (Requests.HEIGHT):
-						out.println(Integer.toString(visionFrameController.getHeight()));
+						out.println(Integer.toString(visionFrameController.getHeight() * scale));
 						out.flush();
 						break;
 					case (Requests.WIDTH):
-						out.println(Integer.toString(visionFrameController.getWidth()));
+						out.println(Integer.toString(visionFrameController.getWidth() * scale));
 						out.flush();
 						break;
 					case (Requests.NEAREST_CUBE_DISTANCE):
-						double distance = visionFrameController.getColoredFrame(controller.yellowHue).getLargestObject().getDistanceFeet(13, 10.5);
+						// along the floor once the camera's mounting is calibrated, from the size otherwise
+						double distance = pipeline.getTarget(Controller.YELLOW).getFloorDistance(pipeline.getCameraModel()) / 12;
+						if (Double.isNaN(distance))
+							distance = pipeline.getTarget(Controller.YELLOW).getDistanceFeet(13, 10.5);
 						if (distance < 50)
 							out.println(distance);
 						else
@@ -74,21 +124,21 @@ public class Client extends Thread {
 						out.flush();
 						break;
 					case (Requests.NEAREST_CUBE):
-						point = visionFrameController.getColoredFrame(controller.yellowHue).getLargestObject().getCOM();
-						out.println(point[0] + "," + point[1]);
+						point = pipeline.getTarget(Controller.YELLOW).getCOM();
+						out.println(toCamera(point, scale));
 						out.flush();
 						break;
 					case (Requests.NEAREST_TAPE):
-						point = visionFrameController.getColoredFrame(controller.greenHue).getLargestObject().getCOM();
-						out.println(point[0] + "," + point[1]);
+						point = pipeline.getTarget(Controller.GREEN).getCOM();
+						out.println(toCamera(point, scale));
 						out.flush();
 						break;
 					case (Requests.AMOUNT_CUBES):
-						out.println(Integer.toString(visionFrameController.getColoredFrame(controller.yellowHue).getObjects().size()));
+						out.println(Integer.toString(visionFrameController.getColoredFrame(Controller.YELLOW).getObjects().size()));
 						out.flush();
 						break;
 					case (Requests.AMOUNT_TAPE):
-						out.println(Integer.toString(visionFrameController.getColoredFrame(controller.greenHue).getObjects().size()));
+						out.println(Integer.toString(visionFrameController.getColoredFrame(Controller.GREEN).getObjects().size()));
 						out.flush();
 						break;
 					case (Requests.AVERAGE_BRIGHTNESS):
@@ -97,10 +147,63 @@ public class Client extends Thread {
 						out.flush();
 						break;
 					case (Requests.ANGLE_OFF_CENTER_CUBE):
-						double[] angles = visionFrameController.getColoredFrame(controller.yellowHue).getLargestObject().getAngleOffCenter(90);
+						double[] angles = pipeline.getTarget(Controller.YELLOW).getAngleOffCenter(pipeline.getCameraModel());
 						out.println(angles[0] + "," + angles[1]);
 						out.flush();
 						break;
+					case (Requests.RESULT_AGE):
+						out.println(pipeline.getResultAge() + "," + (pipeline.isStale() ? 1 : 0));
+						out.flush();
+						break;
+					case (Requests.TRACKED_CUBE):
+					case (Requests.TRACKED_TAPE):
+						Track track = pipeline.getTrack(parts[0].trim().equals(Integer.toString(Requests.TRACKED_CUBE)) ? Controller.YELLOW : Controller.GREEN);
+						if (track == null) {
+							out.println("0,0,0,0,0");
+						} else {
+							double[] position = track.predict(System.nanoTime());
+							double[] velocity = track.getVelocity();
+							out.println(track.getId() + "," + toCamera((int) position[0], scale) + "," + toCamera((int) position[1], scale) + "," + (int) (velocity[0] * scale) + ","
+									+ (int) (velocity[1] * scale));
+						}
+						out.flush();
+						break;
+					case (Requests.TAPE_CORNERS):
+						double[][] corners = pipeline.getTarget(Controller.GREEN).getCorners();
+						if (corners == null) {
+							out.println("0");
+						} else {
+							StringBuilder answer = new StringBuilder();
+							for (double[] corner : corners) {
+								if (answer.length() > 0)
+									answer.append(',');
+								answer.append((int) toCamera(corner[0], scale)).append(',').append((int) toCamera(corner[1], scale));
+							}
+							out.println(answer);
+						}
+						out.flush();
+						break;
+					case (Requests.TAPE_POSE):
+						double[] pose = pipeline.getTarget(Controller.GREEN).getPose(pipeline.getCameraModel(), TAPE_WIDTH, TAPE_HEIGHT);
+						if (pose == null) {
+							out.println("0");
+						} else {
+							out.println((float) pose[0] + "," + (float) pose[1] + "," + (float) pose[2] + "," + (float) pose[3] + "," + (float) pose[4] + "," + (float) pose[5]);
+						}
+						out.flush();
+						break;
+					case (Requests.LEARN_COLOR):
+						out.println(parts.length == 2 && controller.learnColor(cameraId, Integer.parseInt(parts[1].trim())) ? "OK" : "ERROR");
+						out.flush();
+						break;
+					case (Requests.FORGET_COLOR):
+						out.println(parts.length == 2 && controller.forgetColor(Integer.parseInt(parts[1].trim())) ? "OK" : "ERROR");
+						out.flush();
+						break;
+					case (Requests.SET_PARAMETER):
+						out.println(parts.length == 3 && controller.setParameter(parts[1], parts[2]) ? "OK" : "ERROR");
+						out.flush();
+						break;
 					default:
 						break;
 				}
@@ -116,6 +219,8 @@ public class Client extends Thread {
 			}
 		} catch (NumberFormatException e) {
 			// System.out.println("Invalid Request: " + message);
+			out.println("ERROR");
+			out.flush();
 		}
 		
 		// close socket
@@ -3,7 +3,6 @@ package model.networking;
 import java.util.List;
 
 import controller.Controller;
-import model.vision.hsvIsolate.HSVIsolateController;
 
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -14,13 +13,11 @@ public class NetworkServerController extends Thread {
 	int port;
 	ServerSocket server;
 	List<Client> clients;
-	HSVIsolateController frameController;
 	Controller controller;
 
-	public NetworkServerController(int port, Controller controller, HSVIsolateController frameController) {
+	public NetworkServerController(int port, Controller controller) {
 		this.port = port;
 		try {
-			this.frameController = frameController;
 			this.controller = controller;
 			this.server = new ServerSocket(port);
 			server.setSoTimeout(1);
@@ -30,17 +27,12 @@ public class NetworkServerController extends Thread {
 		clients = new ArrayList<Client>();
 	}
 	
-	public void setVisionFrameController(Controller controller, HSVIsolateController visionFrameController) {
-		this.frameController = visionFrameController;
-		this.controller = controller;
-	}
-
 	public void run() {
 		while (server != null && !server.isClosed() && !this.isInterrupted()) {
 
 			// add connecting clients
 			try {
-				clients.add(new Client(controller, frameController, server.accept()));
+				clients.add(new Client(controller, server.accept()));
 //				System.out.println("Client Connected");
 			} catch (IOException e) {
 			}
@@ -1,5 +1,9 @@
 package model.networking;
 
+/*
+ * a request is one of these numbers, optionally with a camera id in front
+ * ("1:3" is NEAREST_CUBE from camera 1), camera 0 if there is none
+ */
 public class Requests {
 	public final static int HEIGHT = 0;
 	public final static int WIDTH = 1;
@@ -10,4 +14,22 @@ public class Requests {
 	public final static int AMOUNT_TAPE = 6;
 	public final static int AVERAGE_BRIGHTNESS = 7;
 	public final static int ANGLE_OFF_CENTER_CUBE = 8;
+	// "9,name,value", answers OK or ERROR
+	public final static int SET_PARAMETER = 9;
+	// "milliseconds,stale", how old the frame behind the answers is and 1 if the camera has stalled
+	public final static int RESULT_AGE = 10;
+	// "id,col,row,colVelocity,rowVelocity" of the tracked target, the position
+	// extrapolated to when the request came in, velocities in pixels per second
+	public final static int TRACKED_CUBE = 11;
+	public final static int TRACKED_TAPE = 12;
+	// "col,row,col,row,col,row,col,row" of the corners of the nearest tape, top
+	// left first going clockwise, "0" if there is none
+	public final static int TAPE_CORNERS = 13;
+	// "x,y,z,yaw,pitch,roll" of the nearest tape from the camera, inches right,
+	// down and forward and degrees, "0" if there is none
+	public final static int TAPE_POSE = 14;
+	// "15,colorIndex" adds the biggest object of that color to its histogram for
+	// back projection, "16,colorIndex" clears it. Both answer OK or ERROR
+	public final static int LEARN_COLOR = 15;
+	public final static int FORGET_COLOR = 16;
 }
@@ -5,21 +5,47 @@ import java.awt.Graphics;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
 
 import com.github.sarxos.webcam.Webcam;
+import com.github.sarxos.webcam.WebcamException;
 import com.github.sarxos.webcam.ds.ipcam.IpCamDeviceRegistry;
 import com.github.sarxos.webcam.ds.ipcam.IpCamDriver;
 import com.github.sarxos.webcam.ds.ipcam.IpCamMode;
 
 public class Camera extends Thread {
-	private Webcam webcam;
+	private volatile Webcam webcam;
 	private boolean isIpCamera;
-	private BufferedImage image;
+	private volatile BufferedImage image;
 	private String url;
-	private RollingTimer requestTimer = new RollingTimer(.1);
-	private RollingTimer frameTimer = new RollingTimer(.05);
+	// ip cameras webcam-capture reads are registered under their own name, one device each
+	private static final AtomicInteger ipCameras = new AtomicInteger();
+	private static boolean ipDriverSet;
+	private String deviceName;
+	private FrameScheduler scheduler = new FrameScheduler();
+	
+	// MJPEG mode, this thread decodes into whichever of the three images is
+	// neither the newest one nor the one getImage last handed out
+	private volatile MjpegStream stream;
+	private JpegDecoder decoder;
+	private BufferedImage[] buffers = new BufferedImage[3];
+	private int latest = -1, inUse = -1, writing = -1;
+	
+	// System.nanoTime() when the newest frame arrived and when the one getImage last returned did
+	private volatile long frameTime = System.nanoTime();
+	private volatile long imageTime;
+	private volatile long frameCount;
+	
+	// reconnects the camera when frames stop coming, so this thread never has to
+	private CameraMonitor monitor = new CameraMonitor(this, 1500);
 	
 	public Camera(int width, int height) {
 		this.url = null;
@@ -33,11 +59,35 @@ public class Camera extends Thread {
 	}
 	
 	public Camera(String url) throws MalformedURLException {
+		this(url, 1);
+	}
+	
+	/**
+	 * Reads the stream itself if it is MJPEG over http, otherwise falls back to
+	 * webcam-capture
+	 * 
+	 * @param decodeScale
+	 *            1, 2, 4 or 8, MJPEG frames are decoded at 1/decodeScale the size
+	 */
+	public Camera(String url, int decodeScale) throws MalformedURLException {
 		this.url = url;
 		image = new BufferedImage(1, 1, 1);
-		IpCamDeviceRegistry.register("Camera", url, IpCamMode.PUSH);
-		Webcam.setDriver(new IpCamDriver());
-		webcam = Webcam.getDefault();
+		try {
+			decoder = new JpegDecoder(decodeScale);
+			stream = new MjpegStream(url);
+			readFrame();
+			isIpCamera = true;
+			System.out.println("Reading " + url + " as MJPEG at " + image.getWidth() + "x" + image.getHeight());
+			return;
+		} catch (IOException e) {
+			System.out.println("Could not read " + url + " as MJPEG, using webcam-capture: " + e.getMessage());
+			if (stream != null)
+				stream.close();
+			stream = null;
+			decoder = null;
+		}
+		deviceName = "Camera" + ipCameras.incrementAndGet();
+		webcam = registerIpCamera();
 		isIpCamera = true;
 		webcam.open();
 		image = webcam.getImage();
@@ -53,49 +103,204 @@ public class Camera extends Thread {
 	}
 	
 	public void run() {
-		while (isAlive() && !isInterrupted()) {
-			frameTimer.startTimer();
-			image = webcam.getImage();
-			
-			if (isIpCamera) {
-				if (!webcam.isImageNew()) {
-					try {
-						IpCamDeviceRegistry.unregisterAll();
-						IpCamDeviceRegistry.register("Camera", url, IpCamMode.PUSH);
-					} catch (Exception e1) {
-						e1.printStackTrace();
-					}
+		monitor.start();
+		if (stream != null) {
+			readStream();
+			monitor.interrupt();
+			return;
+		}
+		while (!isInterrupted()) {
+			boolean fresh = false;
+			try {
+				BufferedImage next = webcam.getImage();
+				// webcam-capture hands back the same image until a new one arrives
+				if (next != null && next != image) {
+					image = next;
+					markFrame();
+					fresh = true;
 				}
+			} catch (RuntimeException e) {
+				// the monitor reopens the camera
 			}
-			frameTimer.stopTimer();
+			
+			// local cameras block in getImage until the next frame, ip cameras don't.
+			// Right after a frame the next one is a while off, otherwise check often
+			long interval = scheduler.getArrivalInterval();
+			long pause = interval == 0 ? TimeUnit.MILLISECONDS.toNanos(5) : (fresh ? interval * 3 / 4 : interval / 8);
+			LockSupport.parkNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), Math.min(TimeUnit.MILLISECONDS.toNanos(50), pause)));
+		}
+		monitor.interrupt();
+	}
+	
+	/*
+	 * the stream paces this thread, reading blocks until the camera sends a frame.
+	 * When the stream breaks this thread only waits for the monitor to swap in a
+	 * new one
+	 */
+	private void readStream() {
+		while (!isInterrupted()) {
+			MjpegStream current = stream;
 			try {
-				if ((int) requestTimer.getAverage() - (frameTimer.getLastTimeTaken()) > 0) {
-					TimeUnit.MILLISECONDS.sleep((int) requestTimer.getAverage() - (frameTimer.getLastTimeTaken()));
+				readFrame(current);
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Lost the camera stream: " + e.getMessage());
+				try {
+					while (stream == current && !isInterrupted())
+						TimeUnit.MILLISECONDS.sleep(20);
+				} catch (InterruptedException e1) {
+					break;
 				}
-				
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
 			}
 		}
+		stream.close();
 	}
 	
-	public BufferedImage getImage() {
+	/*
+	 * called by the monitor, blocks for as long as opening the camera takes
+	 */
+	void reconnect() throws IOException {
+		if (stream != null) {
+			MjpegStream old = stream;
+			stream = new MjpegStream(url);
+			// wakes the capture thread if it is still stuck reading the old one
+			old.close();
+		} else if (url != null) {
+			webcam.close();
+			// only this camera's device, the other cameras keep theirs
+			IpCamDeviceRegistry.unregister(deviceName);
+			webcam = registerIpCamera();
+			webcam.open();
+		} else {
+			webcam.close();
+			webcam.open();
+		}
+	}
+	
+	/*
+	 * registers the url as deviceName and finds the webcam for it
+	 */
+	private Webcam registerIpCamera() throws MalformedURLException {
+		synchronized (Camera.class) {
+			if (!ipDriverSet) {
+				Webcam.setDriver(new IpCamDriver());
+				ipDriverSet = true;
+			}
+		}
+		IpCamDeviceRegistry.register(deviceName, url, IpCamMode.PUSH);
+		Webcam found = Webcam.getWebcamByName(deviceName);
+		if (found == null)
+			throw new WebcamException("No webcam for " + deviceName + " at " + url);
+		return found;
+	}
+	
+	private void readFrame() throws IOException {
+		readFrame(stream);
+	}
+	
+	private void readFrame(MjpegStream stream) throws IOException {
+		int length = stream.readFrame();
+		BufferedImage target;
 		try {
-			requestTimer.stopTimer();
-		} catch (IllegalStateException e) {
-			
+			decoder.decode(stream.getFrame(), length);
+			target = nextBuffer(decoder.getWidth(), decoder.getHeight());
+			decoder.writeRGB(((DataBufferByte) target.getRaster().getDataBuffer()).getData());
+		} catch (IOException e) {
+			// progressive or otherwise unusual, slow but still works
+			BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(stream.getFrame(), 0, length));
+			if (decoded == null)
+				throw e;
+			int scale = decoder.getScale();
+			target = nextBuffer((decoded.getWidth() + scale - 1) / scale, (decoded.getHeight() + scale - 1) / scale);
+			Graphics g = target.getGraphics();
+			g.drawImage(decoded, 0, 0, target.getWidth(), target.getHeight(), null);
+			g.dispose();
+		}
+		publish();
+	}
+	
+	private synchronized BufferedImage nextBuffer(int width, int height) {
+		for (int i = 0; i < buffers.length; i++) {
+			if (i != latest && i != inUse) {
+				if (buffers[i] == null || buffers[i].getWidth() != width || buffers[i].getHeight() != height)
+					buffers[i] = FastRGB.createImage(width, height);
+				writing = i;
+				break;
+			}
+		}
+		return buffers[writing];
+	}
+	
+	private synchronized void publish() {
+		latest = writing;
+		image = buffers[latest];
+		markFrame();
+	}
+	
+	private void markFrame() {
+		frameTime = System.nanoTime();
+		frameCount++;
+		scheduler.frameArrived();
+	}
+	
+	public BufferedImage getImage() {
+		synchronized (this) {
+			inUse = latest;
+			imageTime = frameTime;
+			return image;
 		}
-		requestTimer.startTimer();
-		return image;
 	}
 	
-	public int getMaxFramerate() {
-		return (int) frameTimer.getOpsPerSecond();
+	/*
+	 * System.nanoTime() when the image getImage last returned arrived, the same
+	 * value twice means there was no new frame in between
+	 */
+	public long getImageTime() {
+		return imageTime;
+	}
+	
+	/*
+	 * milliseconds since the newest frame arrived
+	 */
+	public long getFrameAge() {
+		return (System.nanoTime() - frameTime) / 1000000;
+	}
+	
+	public long getFrameCount() {
+		return frameCount;
+	}
+	
+	/*
+	 * MJPEG frames are only decoded from row from to row to, as fractions of the
+	 * height, from the next frame on. Other cameras always give the whole picture
+	 */
+	public void setDecodeRows(float from, float to) {
+		if (decoder != null)
+			decoder.setRows(from, to);
+	}
+	
+	/*
+	 * true once no frame has arrived for longer than the stall timeout
+	 */
+	public boolean isStalled() {
+		return monitor.isStalled();
+	}
+	
+	public void setStallTimeout(int milliseconds) {
+		monitor.setStallTimeout(milliseconds);
+	}
+	
+	/*
+	 * paced by the frames this camera delivers
+	 */
+	public FrameScheduler getScheduler() {
+		return scheduler;
 	}
 	
+	/*
+	 * how many frames a second the camera actually delivers
+	 */
 	public int getFrameRate() {
-		return (int) requestTimer.getOpsPerSecond();
+		return (int) Math.round(scheduler.getCameraFramerate());
 	}
 	
 	public boolean isIpCamera() {
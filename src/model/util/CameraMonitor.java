@@ -0,0 +1,77 @@
+package model.util;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Watches when frames arrive and reconnects the camera once they stop for
+ * longer than the stall timeout. Reconnecting happens on this thread so the
+ * capture thread and the pipeline never wait on it, and failed attempts back
+ * off so a short wifi drop doesn't turn into a storm of reconnects
+ */
+public class CameraMonitor extends Thread {
+	
+	private static final int MIN_BACKOFF = 250;
+	private static final int MAX_BACKOFF = 8000;
+	
+	private Camera camera;
+	private volatile int stallTimeout;
+	private volatile boolean stalled = false;
+	private int backoff = MIN_BACKOFF;
+	private long nextAttempt = 0;
+	
+	public CameraMonitor(Camera camera, int stallTimeout) {
+		super("CameraMonitor");
+		this.camera = camera;
+		this.stallTimeout = stallTimeout;
+		setDaemon(true);
+	}
+	
+	public void setStallTimeout(int milliseconds) {
+		this.stallTimeout = milliseconds;
+	}
+	
+	public int getStallTimeout() {
+		return stallTimeout;
+	}
+	
+	public boolean isStalled() {
+		return stalled;
+	}
+	
+	public void run() {
+		while (!isInterrupted()) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(Math.max(10, Math.min(100, stallTimeout / 4)));
+			} catch (InterruptedException e) {
+				break;
+			}
+			
+			long age = camera.getFrameAge();
+			if (age < stallTimeout) {
+				if (stalled)
+					System.out.println("Camera is back");
+				stalled = false;
+				backoff = MIN_BACKOFF;
+				continue;
+			}
+			if (!stalled) {
+				System.out.println("Camera stalled, no frame for " + age + "ms");
+				stalled = true;
+				nextAttempt = 0;
+			}
+			
+			long now = System.currentTimeMillis();
+			if (now < nextAttempt)
+				continue;
+			try {
+				camera.reconnect();
+				System.out.println("Reconnected the camera");
+			} catch (Exception e) {
+				System.out.println("Reconnecting failed, trying again in " + backoff + "ms: " + e.getMessage());
+			}
+			// even a connection that opens might not send frames, so wait before the next try either way
+			nextAttempt = System.currentTimeMillis() + backoff;
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+		}
+	}
+}
@@ -1,7 +1,14 @@
 package model.util;
 
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 public class FastRGB {
     public int width;
@@ -14,8 +21,69 @@ public class FastRGB {
         height = image.getHeight();
     }
     
+    /*
+     * an image with red, green and blue bytes in that order, which is the order
+     * getRGB reads them in, the same layout webcam-capture gives us
+     */
+    public static BufferedImage createImage(int width, int height) {
+        ComponentColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] { 8, 8, 8 }, false, false, Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, width * 3, 3, new int[] { 0, 1, 2 }, null);
+        return new BufferedImage(model, raster, false, null);
+    }
+    
+    /*
+     * image shrunk to 1/factor of its size, each pixel the average of the
+     * factor by factor block it covers, leftover edge pixels are dropped. Written
+     * into dest if it is the right size, a new image otherwise
+     */
+    public static BufferedImage scaleDown(BufferedImage image, int factor, BufferedImage dest) {
+        FastRGB source = new FastRGB(image);
+        int width = source.width / factor, height = source.height / factor;
+        if (dest == null || dest.getWidth() != width || dest.getHeight() != height)
+            dest = createImage(width, height);
+        byte[] out = ((DataBufferByte) dest.getRaster().getDataBuffer()).getData();
+        int[] sums = new int[width * 3];
+        int area = factor * factor;
+        for (int row = 0; row < height; row++) {
+            Arrays.fill(sums, 0);
+            for (int y = row * factor; y < (row + 1) * factor; y++) {
+                int pos = y * source.width * 3;
+                for (int i = 0; i < width * 3; i += 3) {
+                    for (int x = 0; x < factor; x++, pos += 3) {
+                        sums[i] += source.pixels[pos] & 0xFF;
+                        sums[i + 1] += source.pixels[pos + 1] & 0xFF;
+                        sums[i + 2] += source.pixels[pos + 2] & 0xFF;
+                    }
+                }
+            }
+            for (int i = 0, pos = row * width * 3; i < width * 3; i++)
+                out[pos + i] = (byte) ((sums[i] + area / 2) / area);
+        }
+        return dest;
+    }
+
     public int getRGB(int x, int y) {
         int pos = (y * 3 * width) + (x * 3);
         return ( (pixels[pos++] & 0xFF) << 16)+((pixels[pos++] & 0xFF) << 8)+((pixels[pos++] & 0xFF));
     }
+    
+    /*
+     * the whole image in row major order, same values as getRGB
+     */
+    public int[] getRGB(int[] dest) {
+        return getRGB(dest, 0, width * height);
+    }
+    
+    /*
+     * only pixels first to last in row major order, the rest of dest is left as it is
+     */
+    public int[] getRGB(int[] dest, int first, int last) {
+        if (dest == null || dest.length != width * height)
+            dest = new int[width * height];
+        for (int i = first, pos = first * 3; i < last; i++, pos += 3) {
+            dest[i] = ((pixels[pos] & 0xFF) << 16) + ((pixels[pos + 1] & 0xFF) << 8) + (pixels[pos + 2] & 0xFF);
+        }
+        return dest;
+    }
 }
\ No newline at end of file
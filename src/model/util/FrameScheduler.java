@@ -0,0 +1,120 @@
+package model.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * The one place that decides when a frame gets processed. The camera reports
+ * every frame as it arrives, and the pipeline waits here until there is a frame
+ * it hasn't seen and the requested framerate allows another one, instead of
+ * sleeping for a guessed amount of time. Everything is timed in nanoseconds
+ */
+public class FrameScheduler {
+
+	// how much of each new interval goes into the averages
+	private static final double SMOOTHING = .1;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition arrived = lock.newCondition();
+
+	// written under the lock, volatile so getFrameCount can read it without
+	private volatile long frameCount;
+	private long lastArrival;
+	private double arrivalInterval;
+
+	// when the next frame may be handed out at the requested framerate
+	private long due;
+	private long lastRelease;
+	private double releaseInterval;
+	private volatile int requestedFramerate;
+
+	/*
+	 * called by the camera for every new frame
+	 */
+	public void frameArrived() {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			if (lastArrival != 0)
+				arrivalInterval = average(arrivalInterval, now - lastArrival);
+			lastArrival = now;
+			frameCount++;
+			arrived.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until a frame newer than seen has arrived and it is time for the
+	 * next one at the given framerate, or until the timeout runs out
+	 *
+	 * @param seen
+	 *            the count returned last time, 0 the first time
+	 * @return the number of frames that have arrived, the same as seen if it
+	 *         timed out without a new one
+	 */
+	public long awaitFrame(long seen, int framerate, long timeout, TimeUnit unit) throws InterruptedException {
+		requestedFramerate = framerate;
+		long period = framerate > 0 ? TimeUnit.SECONDS.toNanos(1) / framerate : 0;
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (true) {
+				long now = System.nanoTime();
+				boolean fresh = frameCount > seen;
+				if (fresh && now - due >= 0) {
+					release(now, period);
+					return frameCount;
+				}
+				if (now - deadline >= 0)
+					return seen;
+				// a frame is waiting but it's too early for it, otherwise wait for the camera
+				arrived.awaitNanos(Math.min(deadline - now, fresh ? due - now : Long.MAX_VALUE));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(long now, long period) {
+		if (lastRelease != 0)
+			releaseInterval = average(releaseInterval, now - lastRelease);
+		lastRelease = now;
+		// stepping from the last due time keeps the average on the requested rate,
+		// but a slow frame shouldn't earn a burst of quick ones afterwards
+		due = now - due > period ? now + period : due + period;
+	}
+
+	private static double average(double average, long interval) {
+		return average == 0 ? interval : average * (1 - SMOOTHING) + interval * SMOOTHING;
+	}
+
+	/*
+	 * average time between frames from the camera in nanoseconds, 0 until two
+	 * have arrived
+	 */
+	public long getArrivalInterval() {
+		return (long) arrivalInterval;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public double getCameraFramerate() {
+		return arrivalInterval == 0 ? 0 : 1e9 / arrivalInterval;
+	}
+
+	/*
+	 * how often frames are actually handed to the pipeline
+	 */
+	public double getEffectiveFramerate() {
+		return releaseInterval == 0 ? 0 : 1e9 / releaseInterval;
+	}
+
+	public int getRequestedFramerate() {
+		return requestedFramerate;
+	}
+}
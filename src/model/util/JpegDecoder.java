@@ -0,0 +1,693 @@
+package model.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Decodes baseline JPEGs (what IP cameras send in an MJPEG stream) straight into
+ * the byte layout FastRGB reads, optionally at 1/2, 1/4 or 1/8 scale.
+ *
+ * Scaling happens inside the inverse DCT, at 1/n scale only the top left 8/n by
+ * 8/n coefficients of each block are used and transformed into 8/n by 8/n
+ * pixels, so smaller output is also a lot less work. The entropy decoding still
+ * has to read every coefficient.
+ *
+ * With setRows only a band of rows is decoded, blocks above it are read but
+ * never transformed and the scan is left as soon as it is past the band.
+ *
+ * Every buffer is kept between frames, decoding frames of the same size makes
+ * no garbage. Progressive and arithmetic coded JPEGs throw an IOException
+ */
+public class JpegDecoder {
+
+	private static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35,
+			42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63 };
+
+	// the example tables from annex K of the standard, most MJPEG cameras leave their DHT out and use these
+	private static final int[] DC_LUMINANCE_COUNTS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+	private static final int[] DC_CHROMINANCE_COUNTS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+	private static final int[] DC_SYMBOLS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+	private static final int[] AC_LUMINANCE_COUNTS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+	private static final int[] AC_LUMINANCE_SYMBOLS = { 0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07, 0x22,
+			0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18,
+			0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54,
+			0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85,
+			0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3,
+			0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+			0xe1, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa };
+	private static final int[] AC_CHROMINANCE_COUNTS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+	private static final int[] AC_CHROMINANCE_SYMBOLS = { 0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71, 0x13,
+			0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25,
+			0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53,
+			0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83,
+			0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa,
+			0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8,
+			0xd9, 0xda, 0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa };
+
+	// fixed point YCbCr to RGB, 16 fractional bits
+	private static final int[] CR_RED = new int[256];
+	private static final int[] CB_BLUE = new int[256];
+	private static final int[] CR_GREEN = new int[256];
+	private static final int[] CB_GREEN = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int x = i - 128;
+			CR_RED[i] = (int) Math.round(1.402 * x);
+			CB_BLUE[i] = (int) Math.round(1.772 * x);
+			CR_GREEN[i] = (int) Math.round(-0.714136 * 65536 * x);
+			CB_GREEN[i] = (int) Math.round(-0.344136 * 65536 * x) + 32768;
+		}
+	}
+
+	private static class HuffmanTable {
+		// lookups for codes up to FAST_BITS long, the length is 0 for longer codes
+		static final int FAST_BITS = 9;
+		byte[] fastLength = new byte[1 << FAST_BITS];
+		byte[] fastSymbol = new byte[1 << FAST_BITS];
+		// largest code of each length, -1 if there is none
+		int[] maxCode = new int[18];
+		int[] valueOffset = new int[17];
+		byte[] symbols = new byte[256];
+
+		void set(int[] counts, int[] symbolList) {
+			for (int i = 0; i < symbolList.length; i++) {
+				symbols[i] = (byte) symbolList[i];
+			}
+			Arrays.fill(fastLength, (byte) 0);
+			int code = 0, k = 0;
+			for (int length = 1; length <= 16; length++) {
+				valueOffset[length] = k - code;
+				for (int i = 0; i < counts[length - 1]; i++, k++, code++) {
+					if (length <= FAST_BITS) {
+						int shift = FAST_BITS - length;
+						for (int fill = 0; fill < 1 << shift; fill++) {
+							fastLength[(code << shift) | fill] = (byte) length;
+							fastSymbol[(code << shift) | fill] = symbols[k];
+						}
+					}
+				}
+				maxCode[length] = counts[length - 1] > 0 ? code - 1 : -1;
+				code <<= 1;
+			}
+			maxCode[17] = Integer.MAX_VALUE;
+		}
+	}
+
+	private static class Component {
+		int id, h, v, quantTable, dcTable, acTable;
+		int blocksPerLine, blocksPerColumn;
+		// decoded samples of this component at the output scale
+		byte[] plane = new byte[0];
+		int planeWidth;
+		int prediction;
+	}
+
+	private int scale;
+	private int blockSize;
+	// coefficients of a block that are needed at this scale, in natural order
+	private boolean[] needed = new boolean[64];
+	// idct[x][u] is C(u) / 2 * cos((2x + 1) u pi / (2 * blockSize))
+	private float[][] idct;
+	// scale factors of the fast full size idct, one per coefficient
+	private float[] aanScale = new float[64];
+
+	private int[][] quantTables = new int[4][64];
+	private HuffmanTable[] dcTables = new HuffmanTable[4];
+	private HuffmanTable[] acTables = new HuffmanTable[4];
+	private Component[] components = new Component[0];
+	private int restartInterval;
+	private int width, height;
+	private int maxH, maxV;
+	private int mcusPerLine, mcusPerColumn;
+
+	private byte[] data;
+	private int pos, end;
+	private int bitBuffer, bitCount;
+	private boolean hitMarker;
+
+	// fractions of the height to decode, picked up by the next decode
+	private volatile float fromFraction = 0, toFraction = 1;
+	// output rows firstRow up to lastRow of the current picture are decoded
+	private int firstRow, lastRow;
+	// set while reading blocks that are entirely above firstRow
+	private boolean skipping;
+
+	private float[] coefficients = new float[64];
+	private float[] rows = new float[64];
+
+	/**
+	 * @param scale
+	 *            1, 2, 4 or 8, the output is 1/scale the size of the picture
+	 */
+	public JpegDecoder(int scale) {
+		if (scale != 1 && scale != 2 && scale != 4 && scale != 8)
+			throw new IllegalArgumentException("Scale has to be 1, 2, 4 or 8, not " + scale);
+		this.scale = scale;
+		this.blockSize = 8 / scale;
+		for (int i = 0; i < 64; i++) {
+			needed[i] = (i >> 3) < blockSize && (i & 7) < blockSize;
+		}
+		idct = new float[blockSize][blockSize];
+		for (int x = 0; x < blockSize; x++) {
+			for (int u = 0; u < blockSize; u++) {
+				idct[x][u] = (float) ((u == 0 ? Math.sqrt(.5) : 1) / 2 * Math.cos((2 * x + 1) * u * Math.PI / (2 * blockSize)));
+			}
+		}
+		for (int i = 0; i < 64; i++) {
+			aanScale[i] = (float) (aanFactor(i >> 3) * aanFactor(i & 7) / 8);
+		}
+		for (int i = 0; i < 4; i++) {
+			dcTables[i] = new HuffmanTable();
+			acTables[i] = new HuffmanTable();
+		}
+	}
+
+	private static double aanFactor(int k) {
+		return k == 0 ? 1 : Math.cos(k * Math.PI / 16) * Math.sqrt(2);
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	/*
+	 * size of the decoded picture, not of the output
+	 */
+	public int getPictureWidth() {
+		return width;
+	}
+
+	public int getPictureHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return (width + scale - 1) / scale;
+	}
+
+	public int getHeight() {
+		return (height + scale - 1) / scale;
+	}
+
+	/*
+	 * only rows from to to, as fractions of the height, are decoded from the next
+	 * picture on, the rest comes out black. Safe to call from any thread
+	 */
+	public void setRows(float from, float to) {
+		fromFraction = Math.max(0, Math.min(1, from));
+		toFraction = Math.max(fromFraction, Math.min(1, to));
+	}
+
+	/**
+	 * Decodes one JPEG, the picture is kept until the next call. getWidth and
+	 * getHeight are valid afterwards
+	 */
+	public void decode(byte[] data, int length) throws IOException {
+		this.data = data;
+		this.pos = 0;
+		this.end = length;
+		this.restartInterval = 0;
+		dcTables[0].set(DC_LUMINANCE_COUNTS, DC_SYMBOLS);
+		dcTables[1].set(DC_CHROMINANCE_COUNTS, DC_SYMBOLS);
+		acTables[0].set(AC_LUMINANCE_COUNTS, AC_LUMINANCE_SYMBOLS);
+		acTables[1].set(AC_CHROMINANCE_COUNTS, AC_CHROMINANCE_SYMBOLS);
+
+		if (readMarker() != 0xD8)
+			throw new IOException("Not a JPEG");
+		boolean decodedScan = false;
+		while (pos < end) {
+			int marker = readMarker();
+			switch (marker) {
+				case 0xD9: // end of image
+					pos = end;
+					break;
+				case 0xDB:
+					readQuantTables();
+					break;
+				case 0xC4:
+					readHuffmanTables();
+					break;
+				case 0xC0: // baseline
+				case 0xC1: // extended sequential, same thing with 8 bit samples
+					readFrameHeader();
+					break;
+				case 0xDD:
+					readShort();
+					restartInterval = readShort();
+					break;
+				case 0xDA:
+					readScan();
+					decodedScan = true;
+					break;
+				case 0xC2:
+				case 0xC3:
+				case 0xC5:
+				case 0xC6:
+				case 0xC7:
+				case 0xC9:
+				case 0xCA:
+				case 0xCB:
+				case 0xCD:
+				case 0xCE:
+				case 0xCF:
+					throw new IOException("Only baseline JPEGs are supported");
+				default: // APPn, COM and anything else with a length
+					pos += readShort() - 2;
+					break;
+			}
+		}
+		if (!decodedScan)
+			throw new IOException("JPEG has no image data");
+	}
+
+	private int readMarker() throws IOException {
+		// fill bytes can come before a marker
+		while (pos < end && (data[pos] & 0xFF) != 0xFF)
+			pos++;
+		while (pos < end && (data[pos] & 0xFF) == 0xFF)
+			pos++;
+		if (pos >= end)
+			return 0xD9;
+		return data[pos++] & 0xFF;
+	}
+
+	private int readShort() throws IOException {
+		if (pos + 2 > end)
+			throw new IOException("JPEG ends early");
+		int value = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+		pos += 2;
+		return value;
+	}
+
+	private void readQuantTables() throws IOException {
+		int segmentEnd = pos + readShort();
+		while (pos < segmentEnd) {
+			int info = data[pos++] & 0xFF;
+			int[] table = quantTables[info & 3];
+			boolean sixteenBit = (info >> 4) != 0;
+			for (int i = 0; i < 64; i++) {
+				if (sixteenBit) {
+					table[ZIGZAG[i]] = readShort();
+				} else {
+					table[ZIGZAG[i]] = data[pos++] & 0xFF;
+				}
+			}
+		}
+	}
+
+	private void readHuffmanTables() throws IOException {
+		int segmentEnd = pos + readShort();
+		int[] counts = new int[16];
+		while (pos < segmentEnd) {
+			int info = data[pos++] & 0xFF;
+			int total = 0;
+			for (int i = 0; i < 16; i++) {
+				counts[i] = data[pos++] & 0xFF;
+				total += counts[i];
+			}
+			if (total > 256)
+				throw new IOException("Bad huffman table");
+			int[] symbolList = new int[total];
+			for (int i = 0; i < total; i++) {
+				symbolList[i] = data[pos++] & 0xFF;
+			}
+			(info >> 4 == 0 ? dcTables : acTables)[info & 3].set(counts, symbolList);
+		}
+	}
+
+	private void readFrameHeader() throws IOException {
+		readShort();
+		if ((data[pos++] & 0xFF) != 8)
+			throw new IOException("Only 8 bit JPEGs are supported");
+		height = readShort();
+		width = readShort();
+		int count = data[pos++] & 0xFF;
+		if (count != 1 && count != 3)
+			throw new IOException("Only grayscale and YCbCr JPEGs are supported");
+		if (components.length != count) {
+			components = new Component[count];
+			for (int i = 0; i < count; i++) {
+				components[i] = new Component();
+			}
+		}
+		maxH = 1;
+		maxV = 1;
+		for (Component component : components) {
+			component.id = data[pos++] & 0xFF;
+			component.h = (data[pos] & 0xFF) >> 4;
+			component.v = data[pos++] & 0xF;
+			component.quantTable = data[pos++] & 3;
+			maxH = Math.max(maxH, component.h);
+			maxV = Math.max(maxV, component.v);
+		}
+		mcusPerLine = (width + 8 * maxH - 1) / (8 * maxH);
+		mcusPerColumn = (height + 8 * maxV - 1) / (8 * maxV);
+		for (Component component : components) {
+			component.blocksPerLine = mcusPerLine * component.h;
+			component.blocksPerColumn = mcusPerColumn * component.v;
+			component.planeWidth = component.blocksPerLine * blockSize;
+			int size = component.planeWidth * component.blocksPerColumn * blockSize;
+			if (component.plane.length != size)
+				component.plane = new byte[size];
+		}
+		float from = fromFraction, to = toFraction;
+		firstRow = (int) Math.floor(from * getHeight());
+		lastRow = Math.max(firstRow, Math.min(getHeight(), (int) Math.ceil(to * getHeight())));
+	}
+
+	private void readScan() throws IOException {
+		readShort();
+		int count = data[pos++] & 0xFF;
+		Component[] scan = new Component[count];
+		for (int i = 0; i < count; i++) {
+			int id = data[pos++] & 0xFF;
+			int tables = data[pos++] & 0xFF;
+			for (Component component : components) {
+				if (component.id == id)
+					scan[i] = component;
+			}
+			if (scan[i] == null)
+				throw new IOException("Scan uses an unknown component");
+			scan[i].dcTable = (tables >> 4) & 3;
+			scan[i].acTable = tables & 3;
+			scan[i].prediction = 0;
+		}
+		// spectral selection and approximation, always the whole block for baseline
+		pos += 3;
+
+		bitBuffer = 0;
+		bitCount = 0;
+		hitMarker = false;
+
+		if (count == 1) {
+			// a single component is not interleaved, its blocks go in plain raster order
+			Component component = scan[0];
+			int blocksPerLine = ((width * component.h + maxH - 1) / maxH + 7) / 8;
+			int blocksPerColumn = ((height * component.v + maxV - 1) / maxV + 7) / 8;
+			// a block row is blockSize * maxV / v output rows
+			int blockRows = blockSize * maxV;
+			blocksPerColumn = Math.min(blocksPerColumn, (lastRow * component.v + blockRows - 1) / blockRows);
+			int total = blocksPerLine * blocksPerColumn;
+			for (int n = 0; n < total; n++) {
+				if (restartInterval > 0 && n > 0 && n % restartInterval == 0)
+					restart(scan);
+				int blockRow = n / blocksPerLine;
+				skipping = (blockRow + 1) * blockRows <= firstRow * component.v;
+				decodeBlock(component, blockRow, n % blocksPerLine);
+			}
+		} else {
+			// output rows per row of MCUs, nothing past lastRow is read at all
+			int mcuHeight = 8 * maxV / scale;
+			int total = mcusPerLine * Math.min(mcusPerColumn, (lastRow + mcuHeight - 1) / mcuHeight);
+			for (int n = 0; n < total; n++) {
+				if (restartInterval > 0 && n > 0 && n % restartInterval == 0)
+					restart(scan);
+				int mcuRow = n / mcusPerLine;
+				int mcuCol = n % mcusPerLine;
+				skipping = (mcuRow + 1) * mcuHeight <= firstRow;
+				for (Component component : scan) {
+					for (int v = 0; v < component.v; v++) {
+						for (int h = 0; h < component.h; h++) {
+							decodeBlock(component, mcuRow * component.v + v, mcuCol * component.h + h);
+						}
+					}
+				}
+			}
+		}
+
+		// leave pos on the marker after the scan
+		bitBuffer = 0;
+		bitCount = 0;
+		while (pos < end && !((data[pos] & 0xFF) == 0xFF && pos + 1 < end && data[pos + 1] != 0 && (data[pos + 1] & 0xFF) != 0xFF))
+			pos++;
+	}
+
+	/*
+	 * skips to the RSTn marker and starts over with the predictions
+	 */
+	private void restart(Component[] scan) {
+		bitBuffer = 0;
+		bitCount = 0;
+		hitMarker = false;
+		while (pos + 1 < end && !((data[pos] & 0xFF) == 0xFF && (data[pos + 1] & 0xFF) >= 0xD0 && (data[pos + 1] & 0xFF) <= 0xD7))
+			pos++;
+		pos += 2;
+		for (Component component : scan) {
+			component.prediction = 0;
+		}
+	}
+
+	private void fillBits() {
+		while (bitCount <= 24) {
+			int b = 0;
+			if (!hitMarker && pos < end) {
+				b = data[pos] & 0xFF;
+				if (b == 0xFF) {
+					int next = pos + 1 < end ? data[pos + 1] & 0xFF : 0xD9;
+					if (next == 0) {
+						pos += 2;
+					} else {
+						// a marker, the scan is over so feed zeros from here on
+						hitMarker = true;
+						b = 0;
+					}
+				} else {
+					pos++;
+				}
+			}
+			bitBuffer |= b << (24 - bitCount);
+			bitCount += 8;
+		}
+	}
+
+	private int readBits(int count) {
+		if (count == 0)
+			return 0;
+		if (bitCount < count)
+			fillBits();
+		int value = bitBuffer >>> (32 - count);
+		bitBuffer <<= count;
+		bitCount -= count;
+		return value;
+	}
+
+	private int decodeHuffman(HuffmanTable table) throws IOException {
+		if (bitCount < 16)
+			fillBits();
+		int peek = bitBuffer >>> (32 - HuffmanTable.FAST_BITS);
+		int length = table.fastLength[peek];
+		if (length > 0) {
+			bitBuffer <<= length;
+			bitCount -= length;
+			return table.fastSymbol[peek] & 0xFF;
+		}
+		int code = bitBuffer >>> (32 - HuffmanTable.FAST_BITS);
+		length = HuffmanTable.FAST_BITS;
+		while (code > table.maxCode[length]) {
+			length++;
+			code = bitBuffer >>> (32 - length);
+		}
+		if (length > 16)
+			throw new IOException("Bad huffman code");
+		bitBuffer <<= length;
+		bitCount -= length;
+		return table.symbols[code + table.valueOffset[length]] & 0xFF;
+	}
+
+	/*
+	 * a size bit value is positive if its top bit is set, otherwise negative
+	 */
+	private static int extend(int value, int size) {
+		return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+	}
+
+	private void decodeBlock(Component component, int blockRow, int blockCol) throws IOException {
+		int[] quant = quantTables[component.quantTable];
+		HuffmanTable acTable = acTables[component.acTable];
+		Arrays.fill(coefficients, 0);
+
+		int size = decodeHuffman(dcTables[component.dcTable]);
+		component.prediction += size == 0 ? 0 : extend(readBits(size), size);
+		coefficients[0] = component.prediction * quant[0];
+		// bit v is set if row v has anything but zeros, bit 8 if there is any AC coefficient
+		int usedRows = 1;
+
+		for (int k = 1; k < 64;) {
+			int symbol = decodeHuffman(acTable);
+			int run = symbol >> 4;
+			size = symbol & 15;
+			if (size == 0) {
+				if (run != 15)
+					break;
+				k += 16;
+				continue;
+			}
+			k += run;
+			int value = extend(readBits(size), size);
+			if (k < 64) {
+				int z = ZIGZAG[k];
+				if (needed[z]) {
+					coefficients[z] = value * quant[z];
+					usedRows |= (1 << (z >> 3)) | 0x100;
+				}
+			}
+			k++;
+		}
+
+		if (skipping || blockRow >= component.blocksPerColumn || blockCol >= component.blocksPerLine)
+			return;
+		byte[] plane = component.plane;
+		int planeWidth = component.planeWidth;
+		int start = blockRow * blockSize * planeWidth + blockCol * blockSize;
+
+		if (usedRows == 1) {
+			byte sample = clamp(coefficients[0] / 8 + 128);
+			for (int y = 0; y < blockSize; y++) {
+				Arrays.fill(plane, start + y * planeWidth, start + y * planeWidth + blockSize, sample);
+			}
+			return;
+		}
+
+		if (blockSize == 8) {
+			fastIdct(usedRows, plane, start, planeWidth);
+			return;
+		}
+
+		// rows first, then columns, only over the coefficients this scale keeps
+		for (int v = 0; v < blockSize; v++) {
+			if ((usedRows & (1 << v)) == 0)
+				continue;
+			for (int x = 0; x < blockSize; x++) {
+				float sum = 0;
+				for (int u = 0; u < blockSize; u++) {
+					sum += idct[x][u] * coefficients[v * 8 + u];
+				}
+				rows[v * 8 + x] = sum;
+			}
+		}
+		for (int y = 0; y < blockSize; y++) {
+			int line = start + y * planeWidth;
+			for (int x = 0; x < blockSize; x++) {
+				float sum = 0;
+				for (int v = 0; v < blockSize; v++) {
+					if ((usedRows & (1 << v)) != 0)
+						sum += idct[y][v] * rows[v * 8 + x];
+				}
+				plane[line + x] = clamp(sum + 128);
+			}
+		}
+	}
+
+	/*
+	 * the Arai, Agui and Nakajima float idct (the same one libjpeg uses for its
+	 * float method), far fewer multiplies than the plain one at full size
+	 */
+	private void fastIdct(int usedRows, byte[] plane, int start, int planeWidth) {
+		float[] in = coefficients;
+		float[] out = rows;
+		for (int v = 0; v < 8; v++) {
+			int i = v * 8;
+			if ((usedRows & (1 << v)) == 0) {
+				for (int x = 0; x < 8; x++)
+					out[i + x] = 0;
+				continue;
+			}
+			idct8(in[i] * aanScale[i], in[i + 1] * aanScale[i + 1], in[i + 2] * aanScale[i + 2], in[i + 3] * aanScale[i + 3], in[i + 4] * aanScale[i + 4],
+					in[i + 5] * aanScale[i + 5], in[i + 6] * aanScale[i + 6], in[i + 7] * aanScale[i + 7], out, i, 1);
+		}
+		for (int x = 0; x < 8; x++) {
+			idct8(out[x], out[8 + x], out[16 + x], out[24 + x], out[32 + x], out[40 + x], out[48 + x], out[56 + x], in, x, 8);
+		}
+		for (int y = 0; y < 8; y++) {
+			int line = start + y * planeWidth;
+			for (int x = 0; x < 8; x++) {
+				plane[line + x] = clamp(in[y * 8 + x] + 128);
+			}
+		}
+	}
+
+	private static void idct8(float in0, float in1, float in2, float in3, float in4, float in5, float in6, float in7, float[] out, int offset, int stride) {
+		// even part
+		float tmp10 = in0 + in4;
+		float tmp11 = in0 - in4;
+		float tmp13 = in2 + in6;
+		float tmp12 = (in2 - in6) * 1.414213562f - tmp13;
+		float tmp0 = tmp10 + tmp13;
+		float tmp3 = tmp10 - tmp13;
+		float tmp1 = tmp11 + tmp12;
+		float tmp2 = tmp11 - tmp12;
+
+		// odd part
+		float z13 = in5 + in3;
+		float z10 = in5 - in3;
+		float z11 = in1 + in7;
+		float z12 = in1 - in7;
+		float tmp7 = z11 + z13;
+		tmp11 = (z11 - z13) * 1.414213562f;
+		float z5 = (z10 + z12) * 1.847759065f;
+		tmp10 = 1.082392200f * z12 - z5;
+		tmp12 = -2.613125930f * z10 + z5;
+		float tmp6 = tmp12 - tmp7;
+		float tmp5 = tmp11 - tmp6;
+		float tmp4 = tmp10 + tmp5;
+
+		out[offset] = tmp0 + tmp7;
+		out[offset + 7 * stride] = tmp0 - tmp7;
+		out[offset + stride] = tmp1 + tmp6;
+		out[offset + 6 * stride] = tmp1 - tmp6;
+		out[offset + 2 * stride] = tmp2 + tmp5;
+		out[offset + 5 * stride] = tmp2 - tmp5;
+		out[offset + 4 * stride] = tmp3 + tmp4;
+		out[offset + 3 * stride] = tmp3 - tmp4;
+	}
+
+	private static byte clamp(float value) {
+		int rounded = Math.round(value);
+		return (byte) (rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded));
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+
+	/**
+	 * Writes the last picture as red, green, blue bytes, row major, getWidth() by
+	 * getHeight(). This is the layout of FastRGB.createImage. Rows outside the
+	 * ones setRows asked for are black
+	 */
+	public void writeRGB(byte[] dest) {
+		int outWidth = getWidth();
+		int outHeight = getHeight();
+		Arrays.fill(dest, 0, firstRow * outWidth * 3, (byte) 0);
+		Arrays.fill(dest, lastRow * outWidth * 3, outHeight * outWidth * 3, (byte) 0);
+		Component luma = components[0];
+		if (components.length == 1) {
+			for (int row = firstRow, out = firstRow * outWidth * 3; row < lastRow; row++) {
+				int line = row * luma.planeWidth;
+				for (int col = 0; col < outWidth; col++) {
+					byte y = luma.plane[line + col];
+					dest[out++] = y;
+					dest[out++] = y;
+					dest[out++] = y;
+				}
+			}
+			return;
+		}
+
+		Component cb = components[1], cr = components[2];
+		for (int row = firstRow, out = firstRow * outWidth * 3; row < lastRow; row++) {
+			int yLine = (row * luma.v / maxV) * luma.planeWidth;
+			int cbLine = (row * cb.v / maxV) * cb.planeWidth;
+			int crLine = (row * cr.v / maxV) * cr.planeWidth;
+			for (int col = 0; col < outWidth; col++) {
+				int y = luma.plane[yLine + col * luma.h / maxH] & 0xFF;
+				int blue = cb.plane[cbLine + col * cb.h / maxH] & 0xFF;
+				int red = cr.plane[crLine + col * cr.h / maxH] & 0xFF;
+				dest[out++] = (byte) clamp(y + CR_RED[red]);
+				dest[out++] = (byte) clamp(y + ((CB_GREEN[blue] + CR_GREEN[red]) >> 16));
+				dest[out++] = (byte) clamp(y + CB_BLUE[blue]);
+			}
+		}
+	}
+}
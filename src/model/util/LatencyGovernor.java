@@ -0,0 +1,81 @@
+package model.util;
+
+/*
+ * Keeps frames under a time budget by trading resolution for speed. Watches
+ * how long frames take and steps the processing scale between full, half and
+ * quarter size: down as soon as the recent average is over the budget, back up
+ * only once it looks like the finer size would fit with room to spare, so it
+ * doesn't flip back and forth every few frames. A target found a little less
+ * precisely is better than an answer that misses the control loop
+ */
+public class LatencyGovernor {
+
+	// the camera size over the processing size, finest first
+	public static final int[] SCALES = { 1, 2, 4 };
+
+	// going one step finer is taken to cost this many times as much, four times the pixels but some of the work doesn't grow with them
+	private static final double STEP_COST = 3.5;
+	// the finer step has to be predicted under this share of the budget
+	private static final double HEADROOM = .8;
+	// frames after a switch that aren't counted, the first one redoes the whole frame
+	private static final int SETTLE_FRAMES = 2;
+	// frames in a row the finer step has to look affordable before it is taken
+	private static final int CALM_FRAMES = 30;
+
+	private RollingTimer timer = new RollingTimer(.25);
+	private int level = 0;
+	private int settling = SETTLE_FRAMES;
+	private int calm = 0;
+
+	/**
+	 * Counts a frame and picks the scale for the next one
+	 *
+	 * @param milliseconds
+	 *            what the frame took, made at getScale()
+	 * @param budget
+	 *            what a frame may take, 0 or less always processes full size
+	 * @return the scale to process the next frame at
+	 */
+	public int update(long milliseconds, int budget) {
+		if (budget <= 0) {
+			if (level != 0)
+				switchTo(0);
+			return getScale();
+		}
+		if (settling > 0) {
+			// the average starts over at the new size instead of being dragged out of the old one
+			if (--settling == 0)
+				timer.setAverage(milliseconds);
+			return getScale();
+		}
+		timer.commitToAverage(milliseconds);
+		double average = timer.getAverage();
+		if ((average > budget || milliseconds > 2 * budget) && level < SCALES.length - 1) {
+			switchTo(level + 1);
+		} else if (level > 0 && average * STEP_COST < budget * HEADROOM) {
+			if (++calm >= CALM_FRAMES)
+				switchTo(level - 1);
+		} else {
+			calm = 0;
+		}
+		return getScale();
+	}
+
+	private void switchTo(int level) {
+		System.out.println("Frames averaging " + (int) timer.getAverage() + " ms, processing at 1/" + SCALES[level] + " size");
+		this.level = level;
+		settling = SETTLE_FRAMES;
+		calm = 0;
+	}
+
+	public int getScale() {
+		return SCALES[level];
+	}
+
+	/*
+	 * average milliseconds a frame takes at the current scale
+	 */
+	public double getAverage() {
+		return timer.getAverage();
+	}
+}
@@ -0,0 +1,283 @@
+package model.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/*
+ * Reads the JPEGs out of a multipart/x-mixed-replace HTTP stream (what IP
+ * cameras and mjpg-streamer serve) straight off the socket. The request is made
+ * with HTTP/1.0 so the body is never chunked, and every frame is read into the
+ * same buffer
+ */
+public class MjpegStream {
+
+	private String url;
+	private Socket socket;
+	private InputStream in;
+	private String boundary;
+
+	private byte[] buffer = new byte[64 * 1024];
+	private int bufferPos, bufferEnd;
+	private StringBuilder line = new StringBuilder();
+
+	// the last frame read, only the first frameLength bytes are part of it
+	private byte[] frame = new byte[256 * 1024];
+	private int frameLength;
+
+	private int timeout = 2000;
+
+	public MjpegStream(String url) throws IOException {
+		this.url = url;
+		connect();
+	}
+
+	/*
+	 * opens a new connection, closing the old one if there is one
+	 */
+	public void connect() throws IOException {
+		close();
+		URL parsed = new URL(url);
+		if (!parsed.getProtocol().equals("http"))
+			throw new IOException("Only http streams are supported: " + url);
+		int port = parsed.getPort() < 0 ? 80 : parsed.getPort();
+		String path = parsed.getFile().isEmpty() ? "/" : parsed.getFile();
+
+		socket = new Socket();
+		socket.connect(new InetSocketAddress(parsed.getHost(), port), timeout);
+		socket.setSoTimeout(timeout);
+		socket.setReceiveBufferSize(Math.max(socket.getReceiveBufferSize(), 256 * 1024));
+		in = socket.getInputStream();
+		bufferPos = 0;
+		bufferEnd = 0;
+
+		StringBuilder request = new StringBuilder();
+		request.append("GET ").append(path).append(" HTTP/1.0\r\n");
+		request.append("Host: ").append(parsed.getHost()).append("\r\n");
+		if (parsed.getUserInfo() != null) {
+			request.append("Authorization: Basic ").append(Base64.getEncoder().encodeToString(parsed.getUserInfo().getBytes(StandardCharsets.UTF_8))).append("\r\n");
+		}
+		request.append("\r\n");
+		OutputStream out = socket.getOutputStream();
+		out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+
+		String status = readLine();
+		if (status == null || !status.matches("HTTP/\\d\\.\\d 200.*")) {
+			close();
+			throw new IOException("Camera answered " + status);
+		}
+		boundary = null;
+		String header;
+		while ((header = readLine()) != null && !header.isEmpty()) {
+			if (header.toLowerCase().startsWith("content-type:")) {
+				String type = header.substring(13).trim();
+				if (!type.toLowerCase().startsWith("multipart/")) {
+					close();
+					throw new IOException("Not an MJPEG stream: " + type);
+				}
+				int index = type.toLowerCase().indexOf("boundary=");
+				if (index >= 0) {
+					boundary = type.substring(index + 9).split(";")[0].trim().replace("\"", "");
+					// some cameras put the dashes in the header too
+					if (boundary.startsWith("--"))
+						boundary = boundary.substring(2);
+				}
+			}
+		}
+	}
+
+	public void setTimeout(int milliseconds) throws IOException {
+		this.timeout = milliseconds;
+		if (socket != null)
+			socket.setSoTimeout(milliseconds);
+	}
+
+	/**
+	 * Blocks until the next whole JPEG has arrived
+	 *
+	 * @return the length of the JPEG, which is at the start of getFrame()
+	 */
+	public int readFrame() throws IOException {
+		if (in == null)
+			throw new IOException("Stream is closed");
+
+		// skip to the next part, the first one doesn't always start with a boundary
+		int contentLength = -1;
+		String header = readLine();
+		while (header != null && (header.isEmpty() || (boundary != null && header.contains(boundary))))
+			header = readLine();
+		while (header != null && !header.isEmpty()) {
+			if (header.toLowerCase().startsWith("content-length:")) {
+				try {
+					contentLength = Integer.parseInt(header.substring(15).trim());
+				} catch (NumberFormatException e) {
+					contentLength = -1;
+				}
+			}
+			header = readLine();
+		}
+		if (header == null)
+			throw new EOFException("Camera closed the stream");
+
+		if (contentLength >= 0) {
+			ensureCapacity(contentLength);
+			readFully(frame, 0, contentLength);
+			frameLength = contentLength;
+		} else {
+			readUntilEndOfImage();
+		}
+		return frameLength;
+	}
+
+	public byte[] getFrame() {
+		return frame;
+	}
+
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	public void close() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		socket = null;
+		in = null;
+	}
+
+	private void ensureCapacity(int length) {
+		if (frame.length < length)
+			frame = Arrays.copyOf(frame, Math.max(length, frame.length * 2));
+	}
+
+	private boolean fill() throws IOException {
+		bufferPos = 0;
+		bufferEnd = in.read(buffer, 0, buffer.length);
+		if (bufferEnd < 0) {
+			bufferEnd = 0;
+			return false;
+		}
+		return true;
+	}
+
+	private void readFully(byte[] dest, int offset, int length) throws IOException {
+		int copied = 0;
+		while (copied < length) {
+			if (bufferPos >= bufferEnd && !fill())
+				throw new EOFException("Camera closed the stream");
+			int count = Math.min(length - copied, bufferEnd - bufferPos);
+			System.arraycopy(buffer, bufferPos, dest, offset + copied, count);
+			bufferPos += count;
+			copied += count;
+		}
+	}
+
+	/*
+	 * for cameras that leave out the content length, copies from the start of
+	 * image marker up to the end of image marker. Segments are stepped over by
+	 * their length, an EXIF thumbnail in APP1 is a whole jpeg with its own end
+	 * marker. Only the data after a start of scan is searched for markers
+	 */
+	private void readUntilEndOfImage() throws IOException {
+		frameLength = 0;
+		int last = 0;
+		while (true) {
+			if (bufferPos >= bufferEnd && !fill())
+				throw new EOFException("Camera closed the stream");
+			int b = buffer[bufferPos++] & 0xFF;
+			if (last == 0xFF && b == 0xD8)
+				break;
+			last = b;
+		}
+		frame[0] = (byte) 0xFF;
+		frame[1] = (byte) 0xD8;
+		frameLength = 2;
+
+		int marker = nextMarker();
+		while (marker != 0xD9) {
+			// restart markers and TEM have no length
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+				marker = nextMarker();
+				continue;
+			}
+			int length = (copyByte() << 8) | copyByte();
+			if (length < 2)
+				throw new IOException("Bad segment length " + length);
+			ensureCapacity(frameLength + length - 2);
+			readFully(frame, frameLength, length - 2);
+			frameLength += length - 2;
+			marker = marker == 0xDA ? endOfScan() : nextMarker();
+		}
+	}
+
+	/*
+	 * copies the coded data after a start of scan up to and including the marker
+	 * that ends it and returns that marker. Stuffed zeros and restart markers are
+	 * part of the data
+	 */
+	private int endOfScan() throws IOException {
+		while (true) {
+			if (copyByte() != 0xFF)
+				continue;
+			int b = copyByte();
+			while (b == 0xFF)
+				b = copyByte();
+			if (b != 0 && (b < 0xD0 || b > 0xD7))
+				return b;
+		}
+	}
+
+	/*
+	 * copies up to and including the next marker, fill bytes and all, and
+	 * returns it
+	 */
+	private int nextMarker() throws IOException {
+		int b = copyByte();
+		while (b != 0xFF)
+			b = copyByte();
+		while (b == 0xFF)
+			b = copyByte();
+		return b;
+	}
+
+	private int copyByte() throws IOException {
+		if (bufferPos >= bufferEnd && !fill())
+			throw new EOFException("Camera closed the stream");
+		ensureCapacity(frameLength + 1);
+		int b = buffer[bufferPos++] & 0xFF;
+		frame[frameLength++] = (byte) b;
+		return b;
+	}
+
+	/*
+	 * one line of headers without the line break, null at the end of the stream
+	 */
+	private String readLine() throws IOException {
+		line.setLength(0);
+		while (true) {
+			if (bufferPos >= bufferEnd && !fill())
+				return line.length() > 0 ? line.toString() : null;
+			char c = (char) (buffer[bufferPos++] & 0xFF);
+			if (c == '\n')
+				break;
+			if (c != '\r')
+				line.append(c);
+			// a missing line break shouldn't make us read a whole jpeg into a string
+			if (line.length() > 8192)
+				throw new IOException("Header line too long");
+		}
+		return line.toString();
+	}
+}
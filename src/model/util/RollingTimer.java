@@ -39,6 +39,13 @@ public class RollingTimer {
 		average = average * (1.0 - responsivness) + ((double) ms * responsivness);
 	}
 	
+	/*
+	 * starts the average over from ms, after whatever was being timed changed
+	 */
+	public void setAverage(double ms) {
+		average = ms;
+	}
+
 	public long getLastTimeTaken() {
 		return lastTimeTaken;
 	}
@@ -0,0 +1,353 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * A black and white frame stored as one bit per pixel. Every row starts on a
+ * new long so whole rows can be worked on a word at a time, bit (col % 64) of
+ * word (row * wordsPerRow + col / 64) is pixel (row, col)
+ */
+public class BitMask {
+
+	private int width, height;
+	private int wordsPerRow;
+	private long[] words;
+
+	public BitMask(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long[wordsPerRow * height];
+	}
+
+	public BitMask(BitMask other) {
+		this.width = other.width;
+		this.height = other.height;
+		this.wordsPerRow = other.wordsPerRow;
+		this.words = other.words.clone();
+	}
+
+	/*
+	 * the pixels of classes (one byte per pixel, row major) that have the given
+	 * bit set
+	 */
+	public static BitMask fromClasses(byte[] classes, int bit, int width, int height) {
+		BitMask mask = new BitMask(width, height);
+		int flag = 1 << bit;
+		for (int row = 0; row < height; row++) {
+			int start = row * width;
+			int wordStart = row * mask.wordsPerRow;
+			for (int col = 0; col < width; col += 64) {
+				long word = 0;
+				int end = Math.min(64, width - col);
+				for (int i = 0; i < end; i++) {
+					if ((classes[start + col + i] & flag) != 0)
+						word |= 1L << i;
+				}
+				mask.words[wordStart + (col >>> 6)] = word;
+			}
+		}
+		return mask;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/*
+	 * the backing words, changes show up in the mask
+	 */
+	public long[] getWords() {
+		return words;
+	}
+
+	public boolean get(int row, int col) {
+		return (words[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+	}
+
+	public void set(int row, int col) {
+		words[row * wordsPerRow + (col >>> 6)] |= 1L << col;
+	}
+
+	public void clear(int row, int col) {
+		words[row * wordsPerRow + (col >>> 6)] &= ~(1L << col);
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * number of set pixels
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/*
+	 * number of set pixels inside the rectangle, bounds are inclusive and clipped
+	 * to the mask
+	 */
+	public int cardinality(int minRow, int minCol, int maxRow, int maxCol) {
+		int count = 0;
+		minRow = Math.max(0, minRow);
+		maxRow = Math.min(height - 1, maxRow);
+		minCol = Math.max(0, minCol);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minCol > maxCol)
+			return 0;
+		for (int row = minRow; row <= maxRow; row++) {
+			int start = row * wordsPerRow;
+			for (int w = minCol >>> 6; w <= maxCol >>> 6; w++) {
+				count += Long.bitCount(words[start + w] & rangeMask(w, minCol, maxCol));
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * the bits of word w that lie between minCol and maxCol
+	 */
+	private static long rangeMask(int w, int minCol, int maxCol) {
+		long mask = -1L;
+		if (minCol > w << 6)
+			mask &= -1L << (minCol & 63);
+		if (maxCol < (w << 6) + 63)
+			mask &= -1L >>> (63 - (maxCol & 63));
+		return mask;
+	}
+
+	/*
+	 * the bits of the last word of every row that are inside the frame
+	 */
+	long lastWordMask() {
+		return (width & 63) == 0 ? -1L : -1L >>> (64 - (width & 63));
+	}
+
+	public void setRect(int minRow, int minCol, int maxRow, int maxCol) {
+		minRow = Math.max(0, minRow);
+		maxRow = Math.min(height - 1, maxRow);
+		minCol = Math.max(0, minCol);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minCol > maxCol)
+			return;
+		for (int row = minRow; row <= maxRow; row++) {
+			int start = row * wordsPerRow;
+			for (int w = minCol >>> 6; w <= maxCol >>> 6; w++) {
+				words[start + w] |= rangeMask(w, minCol, maxCol);
+			}
+		}
+	}
+
+	public void clearRect(int minRow, int minCol, int maxRow, int maxCol) {
+		minRow = Math.max(0, minRow);
+		maxRow = Math.min(height - 1, maxRow);
+		minCol = Math.max(0, minCol);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minCol > maxCol)
+			return;
+		for (int row = minRow; row <= maxRow; row++) {
+			int start = row * wordsPerRow;
+			for (int w = minCol >>> 6; w <= maxCol >>> 6; w++) {
+				words[start + w] &= ~rangeMask(w, minCol, maxCol);
+			}
+		}
+	}
+
+	/*
+	 * moves the set pixels inside the rectangle from this mask to dest
+	 */
+	public void moveRect(BitMask dest, int minRow, int minCol, int maxRow, int maxCol) {
+		minRow = Math.max(0, minRow);
+		maxRow = Math.min(height - 1, maxRow);
+		minCol = Math.max(0, minCol);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minCol > maxCol)
+			return;
+		for (int row = minRow; row <= maxRow; row++) {
+			int start = row * wordsPerRow;
+			for (int w = minCol >>> 6; w <= maxCol >>> 6; w++) {
+				long moved = words[start + w] & rangeMask(w, minCol, maxCol);
+				dest.words[start + w] |= moved;
+				words[start + w] &= ~moved;
+			}
+		}
+	}
+
+	/*
+	 * clears the outermost rows and columns so neighbour lookups never leave the
+	 * frame
+	 */
+	public void clearBorder() {
+		clearRect(0, 0, 0, width - 1);
+		clearRect(height - 1, 0, height - 1, width - 1);
+		clearRect(0, 0, height - 1, 0);
+		clearRect(0, width - 1, height - 1, width - 1);
+	}
+
+	public void or(BitMask other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= other.words[i];
+		}
+	}
+
+	public void and(BitMask other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] &= other.words[i];
+		}
+	}
+
+	public void andNot(BitMask other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] &= ~other.words[i];
+		}
+	}
+
+	/*
+	 * the first set pixel at or after (row, col) in row major order as row *
+	 * width + col, -1 if there is none
+	 */
+	public int nextSet(int row, int col) {
+		if (col >= width) {
+			row++;
+			col = 0;
+		}
+		if (row >= height)
+			return -1;
+		int w = row * wordsPerRow + (col >>> 6);
+		long word = words[w] & (-1L << col);
+		while (true) {
+			if (word != 0) {
+				int foundRow = w / wordsPerRow;
+				int foundCol = ((w - foundRow * wordsPerRow) << 6) + Long.numberOfTrailingZeros(word);
+				return foundRow * width + foundCol;
+			}
+			if (++w >= words.length)
+				return -1;
+			word = words[w];
+		}
+	}
+
+	/*
+	 * the first set column at or after col in row, -1 if the rest of the row is
+	 * clear. Unlike nextSet it never looks past the row
+	 */
+	public int nextSetInRow(int row, int col) {
+		if (col >= width)
+			return -1;
+		int start = row * wordsPerRow;
+		int w = col >>> 6;
+		long word = words[start + w] & (-1L << col);
+		while (word == 0) {
+			if (++w >= wordsPerRow)
+				return -1;
+			word = words[start + w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/*
+	 * moves the 4-connected group of set pixels containing (row, col) from this
+	 * mask to dest, a row run at a time
+	 * 
+	 * @return {minRow, minCol, maxRow, maxCol, area} of the group
+	 */
+	public int[] moveComponent(int row, int col, BitMask dest) {
+		return moveComponent(row, col, dest, null);
+	}
+	
+	/*
+	 * same as moveComponent(row, col, dest) and adds every run moved to runs on
+	 * the way, so the group never has to be scanned again
+	 */
+	public int[] moveComponent(int row, int col, BitMask dest, RunLength runs) {
+		int[] bounds = new int[] { row, col, row, col, 0 };
+		int[] stack = new int[64];
+		int size = 0;
+		stack[size++] = row;
+		stack[size++] = col;
+		
+		while (size > 0) {
+			col = stack[--size];
+			row = stack[--size];
+			if (!get(row, col))
+				continue;
+			
+			int start = runStart(row, col);
+			int end = runEnd(row, col);
+			moveRect(dest, row, start, row, end);
+			if (runs != null)
+				runs.add(row, start, end);
+			bounds[0] = Math.min(bounds[0], row);
+			bounds[1] = Math.min(bounds[1], start);
+			bounds[2] = Math.max(bounds[2], row);
+			bounds[3] = Math.max(bounds[3], end);
+			bounds[4] += end - start + 1;
+			
+			// every run touching this one in the rows above and below
+			for (int next = row - 1; next <= row + 1; next += 2) {
+				if (next < 0 || next >= height)
+					continue;
+				int found = nextSet(next, start);
+				while (found >= 0 && found / width == next && found % width <= end) {
+					if (size + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[size++] = next;
+					stack[size++] = found % width;
+					found = nextSet(next, runEnd(next, found % width) + 1);
+				}
+			}
+		}
+		return bounds;
+	}
+	
+	/*
+	 * first column of the run of set pixels containing (row, col)
+	 */
+	public int runStart(int row, int col) {
+		int start = row * wordsPerRow;
+		int w = col >>> 6;
+		long gaps = ~words[start + w] & (-1L >>> (63 - (col & 63)));
+		while (gaps == 0) {
+			if (--w < 0)
+				return 0;
+			gaps = ~words[start + w];
+		}
+		return (w << 6) + 64 - Long.numberOfLeadingZeros(gaps);
+	}
+	
+	/*
+	 * last column of the run of set pixels containing (row, col)
+	 */
+	public int runEnd(int row, int col) {
+		int start = row * wordsPerRow;
+		int w = col >>> 6;
+		long gaps = ~words[start + w] & (-1L << col);
+		while (gaps == 0) {
+			if (++w >= wordsPerRow)
+				return width - 1;
+			gaps = ~words[start + w];
+		}
+		return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(gaps)) - 1;
+	}
+}
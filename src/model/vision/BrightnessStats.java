@@ -0,0 +1,143 @@
+package model.vision;
+
+/*
+ * Brightness and saturation histograms of one frame, filled in by
+ * VisionKernels.convert while it works out the HSV planes so nothing has to go
+ * over the frame again. Also keeps running levels carried over from the frame
+ * before, the isolate cutoffs follow those when the camera's exposure or the
+ * lighting changes
+ */
+public class BrightnessStats {
+
+	// one bin per 8 bit level, value bin n holds the pixels whose brightest channel is n
+	public static final int BINS = 256;
+	// how much of each new frame goes into the running levels
+	private static final float SMOOTHING = .2f;
+	// the value cutoff follows the median, the threshold how saturated the most colorful tenth is
+	private static final float VALUE_PERCENTILE = .5f;
+	private static final float SATURATION_PERCENTILE = .9f;
+	// however dark or washed out it gets, the cutoffs never drop below these
+	public static final float MIN_VALUE_CUTOFF = .1f;
+	public static final float MIN_THRESHOLD = .1f;
+
+	private final int[] valueHistogram = new int[BINS];
+	private final int[] saturationHistogram = new int[BINS];
+	private float valueLevel = -1, saturationLevel = -1;
+
+	public BrightnessStats() {
+		this(null);
+	}
+
+	/*
+	 * continues the running levels of previous, starts fresh if it is null
+	 */
+	public BrightnessStats(BrightnessStats previous) {
+		if (previous != null) {
+			valueLevel = previous.valueLevel;
+			saturationLevel = previous.saturationLevel;
+		}
+	}
+
+	/*
+	 * for the conversion to fill in, call update() once it has
+	 */
+	public int[] getValueHistogram() {
+		return valueHistogram;
+	}
+
+	public int[] getSaturationHistogram() {
+		return saturationHistogram;
+	}
+
+	/*
+	 * moves the running levels towards this frame's
+	 */
+	public void update() {
+		if (getCount() == 0)
+			return;
+		valueLevel = smooth(valueLevel, getValuePercentile(VALUE_PERCENTILE));
+		saturationLevel = smooth(saturationLevel, getSaturationPercentile(SATURATION_PERCENTILE));
+	}
+
+	private static float smooth(float level, float current) {
+		return level < 0 ? current : level * (1 - SMOOTHING) + current * SMOOTHING;
+	}
+
+	public int getCount() {
+		int count = 0;
+		for (int n : valueHistogram) {
+			count += n;
+		}
+		return count;
+	}
+
+	/*
+	 * from 0 to 1, exact since every pixel's value is a whole level
+	 */
+	public float getAverageBrightness() {
+		return average(valueHistogram);
+	}
+
+	public float getAverageSaturation() {
+		return average(saturationHistogram);
+	}
+
+	private static float average(int[] histogram) {
+		long total = 0, count = 0;
+		for (int bin = 0; bin < BINS; bin++) {
+			total += (long) bin * histogram[bin];
+			count += histogram[bin];
+		}
+		return count == 0 ? 0 : (float) total / count / (BINS - 1);
+	}
+
+	/*
+	 * the value fraction of the pixels are at or below, fraction from 0 to 1
+	 */
+	public float getValuePercentile(float fraction) {
+		return percentile(valueHistogram, fraction);
+	}
+
+	public float getSaturationPercentile(float fraction) {
+		return percentile(saturationHistogram, fraction);
+	}
+
+	private static float percentile(int[] histogram, float fraction) {
+		long count = 0;
+		for (int n : histogram) {
+			count += n;
+		}
+		long wanted = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int bin = 0; bin < BINS; bin++) {
+			seen += histogram[bin];
+			if (seen >= wanted && seen > 0)
+				return (float) bin / (BINS - 1);
+		}
+		return 0;
+	}
+
+	/*
+	 * the value cutoff to use for this frame. Follows the median brightness down
+	 * when the picture gets darker, but is never stricter than configured
+	 */
+	public float getValueCutoff(float configured) {
+		return valueLevel < 0 ? configured : clamp(valueLevel, Math.min(MIN_VALUE_CUTOFF, configured), configured);
+	}
+
+	/*
+	 * the saturation threshold to use for this frame. Drops when even the most
+	 * colorful pixels are washed out, but is never stricter than configured
+	 */
+	public float getThreshold(float configured) {
+		return saturationLevel < 0 ? configured : clamp(saturationLevel, Math.min(MIN_THRESHOLD, configured), configured);
+	}
+
+	private static float clamp(float level, float min, float max) {
+		return Math.max(min, Math.min(max, level));
+	}
+
+	public String toString() {
+		return "brightness=" + getAverageBrightness() + " saturation=" + getAverageSaturation();
+	}
+}
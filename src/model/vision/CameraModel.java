@@ -0,0 +1,255 @@
+package model.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * A calibrated pinhole camera: focal lengths and optical centre in pixels at
+ * the calibration resolution, two radial distortion terms and how the camera is
+ * mounted. The ray through every pixel is worked out once per frame size and
+ * kept, so turning a pixel into angles or a distance along the floor doesn't
+ * have to undo the distortion again. Never changes once made, a new calibration
+ * is a new model and new tables
+ */
+public class CameraModel {
+
+	// frame sizes whose tables are kept, enough for full, half and quarter size of one camera
+	private static final int KEPT_SIZES = 3;
+
+	private final int width, height;
+	private final double fx, fy, cx, cy;
+	private final double k1, k2;
+	// height of the lens above the floor in inches and how far it looks down in radians, 0 if unknown
+	private final double mountHeight, pitch;
+
+	// the tables of the sizes asked for lately, most recent first
+	private final List<Rays> rays = new ArrayList<Rays>();
+
+	public CameraModel(int width, int height, double fx, double fy, double cx, double cy, double k1, double k2, double mountHeight, double pitch) {
+		if (width <= 0 || height <= 0 || fx <= 0 || fy <= 0)
+			throw new IllegalArgumentException("Sizes and focal lengths have to be positive");
+		this.width = width;
+		this.height = height;
+		this.fx = fx;
+		this.fy = fy;
+		this.cx = cx;
+		this.cy = cy;
+		this.k1 = k1;
+		this.k2 = k2;
+		this.mountHeight = mountHeight;
+		this.pitch = pitch;
+	}
+
+	/*
+	 * the old assumption, 90 degrees across the picture, for cameras nobody has
+	 * calibrated. A new one every time, so each camera has its own tables
+	 */
+	public static CameraModel defaults() {
+		return withFieldOfView(640, 480, 90);
+	}
+
+	/*
+	 * square pixels, centred and no distortion, good enough until the camera is
+	 * calibrated
+	 */
+	public static CameraModel withFieldOfView(int width, int height, double horizontalDegrees) {
+		double f = width / 2.0 / Math.tan(Math.toRadians(horizontalDegrees) / 2);
+		return new CameraModel(width, height, f, f, (width - 1) / 2.0, (height - 1) / 2.0, 0, 0, 0, 0);
+	}
+
+	/*
+	 * reads prefix + width, height, fx, fy, cx, cy, k1, k2, mountHeight (inches)
+	 * and pitch (degrees down), or prefix + fov (horizontal degrees) in place of
+	 * the focal lengths. Anything missing comes from fallback
+	 */
+	public static CameraModel load(Properties properties, String prefix, CameraModel fallback) {
+		int width = (int) number(properties, prefix + "width", fallback.width);
+		int height = (int) number(properties, prefix + "height", fallback.height);
+		double scale = (double) width / fallback.width;
+		double fx = fallback.fx * scale, fy = fallback.fy * scale;
+		if (properties.getProperty(prefix + "fov") != null) {
+			fx = width / 2.0 / Math.tan(Math.toRadians(number(properties, prefix + "fov", 0)) / 2);
+			fy = fx;
+		}
+		return new CameraModel(width, height, number(properties, prefix + "fx", fx), number(properties, prefix + "fy", fy),
+				number(properties, prefix + "cx", fallback.cx * scale), number(properties, prefix + "cy", fallback.cy * scale), number(properties, prefix + "k1", fallback.k1),
+				number(properties, prefix + "k2", fallback.k2), number(properties, prefix + "mountHeight", fallback.mountHeight),
+				Math.toRadians(number(properties, prefix + "pitch", Math.toDegrees(fallback.pitch))));
+	}
+
+	private static double number(Properties properties, String name, double fallback) {
+		String value = properties.getProperty(name);
+		return value == null ? fallback : Double.parseDouble(value.trim());
+	}
+
+	public Properties toProperties(String prefix) {
+		Properties properties = new Properties();
+		properties.setProperty(prefix + "width", Integer.toString(width));
+		properties.setProperty(prefix + "height", Integer.toString(height));
+		properties.setProperty(prefix + "fx", Double.toString(fx));
+		properties.setProperty(prefix + "fy", Double.toString(fy));
+		properties.setProperty(prefix + "cx", Double.toString(cx));
+		properties.setProperty(prefix + "cy", Double.toString(cy));
+		properties.setProperty(prefix + "k1", Double.toString(k1));
+		properties.setProperty(prefix + "k2", Double.toString(k2));
+		properties.setProperty(prefix + "mountHeight", Double.toString(mountHeight));
+		properties.setProperty(prefix + "pitch", Double.toString(Math.toDegrees(pitch)));
+		return properties;
+	}
+
+	/*
+	 * true if the mounting is known, only then are there floor distances
+	 */
+	public boolean isMounted() {
+		return mountHeight > 0;
+	}
+
+	/*
+	 * the tables for a width by height frame, scaled from the calibration
+	 * resolution. The last few sizes are kept, so switching between them doesn't
+	 * build them again
+	 */
+	public synchronized Rays getRays(int frameWidth, int frameHeight) {
+		for (int i = 0; i < rays.size(); i++) {
+			Rays kept = rays.get(i);
+			if (kept.width == frameWidth && kept.height == frameHeight) {
+				rays.add(0, rays.remove(i));
+				return kept;
+			}
+		}
+		Rays made = new Rays(frameWidth, frameHeight);
+		rays.add(0, made);
+		if (rays.size() > KEPT_SIZES)
+			rays.remove(KEPT_SIZES);
+		return made;
+	}
+
+	/*
+	 * {right, up} in degrees off the optical axis for pixel (col, row) of a
+	 * frameWidth by frameHeight frame
+	 */
+	public double[] getAngles(int frameWidth, int frameHeight, int col, int row) {
+		return getRays(frameWidth, frameHeight).getAngles(col, row);
+	}
+
+	/*
+	 * inches along the floor to the point pixel (col, row) sees, NaN if the camera
+	 * isn't mounted or the pixel is above the horizon
+	 */
+	public double getFloorDistance(int frameWidth, int frameHeight, int col, int row) {
+		return getRays(frameWidth, frameHeight).getFloorDistance(col, row);
+	}
+
+	/*
+	 * where the ray through a point of a frameWidth by frameHeight frame meets the
+	 * plane one unit in front of the lens, {x right, y down}. For points between
+	 * pixels, like corners, without going through the tables
+	 */
+	public double[] normalize(int frameWidth, int frameHeight, double col, double row) {
+		double[] intrinsics = scaled(frameWidth, frameHeight);
+		return undistort((col - intrinsics[2]) / intrinsics[0], (row - intrinsics[3]) / intrinsics[1]);
+	}
+
+	/*
+	 * {fx, fy, cx, cy} for a frame of a different size than the calibration
+	 */
+	private double[] scaled(int frameWidth, int frameHeight) {
+		double scaleX = (double) frameWidth / width;
+		double scaleY = (double) frameHeight / height;
+		// pixel centres move with the scale, pixel 0 covers 0 to scale pixels of the calibration size
+		return new double[] { fx * scaleX, fy * scaleY, (cx + .5) * scaleX - .5, (cy + .5) * scaleY - .5 };
+	}
+
+	/*
+	 * the rays through every pixel of one frame size, where they meet the plane
+	 * one unit in front of the lens. Without distortion x only depends on the
+	 * column and y on the row, so a table of each is all it takes
+	 */
+	public class Rays {
+
+		private final int width, height;
+		private final boolean separable;
+		// x right and y down, row major, or one per column and one per row if separable
+		private final float[] x, y;
+
+		private Rays(int frameWidth, int frameHeight) {
+			this.width = frameWidth;
+			this.height = frameHeight;
+			double[] intrinsics = scaled(frameWidth, frameHeight);
+			double fx = intrinsics[0], fy = intrinsics[1], cx = intrinsics[2], cy = intrinsics[3];
+			separable = k1 == 0 && k2 == 0;
+			if (separable) {
+				x = new float[frameWidth];
+				y = new float[frameHeight];
+				for (int col = 0; col < frameWidth; col++)
+					x[col] = (float) ((col - cx) / fx);
+				for (int row = 0; row < frameHeight; row++)
+					y[row] = (float) ((row - cy) / fy);
+				return;
+			}
+			x = new float[frameWidth * frameHeight];
+			y = new float[frameWidth * frameHeight];
+			for (int row = 0; row < frameHeight; row++) {
+				for (int col = 0; col < frameWidth; col++) {
+					double[] ray = undistort((col - cx) / fx, (row - cy) / fy);
+					x[row * frameWidth + col] = (float) ray[0];
+					y[row * frameWidth + col] = (float) ray[1];
+				}
+			}
+		}
+
+		/*
+		 * {x right, y down} of the ray through pixel (col, row), clamped to the frame
+		 */
+		public double[] getRay(int col, int row) {
+			col = Math.max(0, Math.min(width - 1, col));
+			row = Math.max(0, Math.min(height - 1, row));
+			if (separable)
+				return new double[] { x[col], y[row] };
+			return new double[] { x[row * width + col], y[row * width + col] };
+		}
+
+		public double[] getAngles(int col, int row) {
+			double[] ray = getRay(col, row);
+			// yaw first, then how far the ray rises out of the horizontal plane of the camera
+			return new double[] { Math.toDegrees(Math.atan(ray[0])), Math.toDegrees(Math.atan2(-ray[1], Math.sqrt(1 + ray[0] * ray[0]))) };
+		}
+
+		public double getFloorDistance(int col, int row) {
+			if (!isMounted())
+				return Double.NaN;
+			double[] ray = getRay(col, row);
+			// the ray tilted down by the pitch, how fast it drops and how fast it goes forward
+			double drop = Math.sin(pitch) + ray[1] * Math.cos(pitch);
+			double forward = Math.cos(pitch) - ray[1] * Math.sin(pitch);
+			if (drop <= 0)
+				return Double.NaN;
+			double t = mountHeight / drop;
+			return t * Math.sqrt(ray[0] * ray[0] + forward * forward);
+		}
+	}
+
+	/*
+	 * the point on the normalised image plane a distorted point came from, by
+	 * fixed point iteration, which converges quickly for the small distortion of
+	 * ordinary lenses
+	 */
+	private double[] undistort(double x, double y) {
+		if (k1 == 0 && k2 == 0)
+			return new double[] { x, y };
+		double ux = x, uy = y;
+		for (int i = 0; i < 10; i++) {
+			double r2 = ux * ux + uy * uy;
+			double factor = 1 + k1 * r2 + k2 * r2 * r2;
+			ux = x / factor;
+			uy = y / factor;
+		}
+		return new double[] { ux, uy };
+	}
+
+	public String toString() {
+		return width + "x" + height + " f=" + (float) fx + "," + (float) fy + " c=" + (float) cx + "," + (float) cy + " k=" + k1 + "," + k2
+				+ (isMounted() ? " mounted " + mountHeight + "in up, " + (float) Math.toDegrees(pitch) + " degrees down" : "");
+	}
+}
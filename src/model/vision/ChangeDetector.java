@@ -0,0 +1,214 @@
+package model.vision;
+
+import java.awt.image.BufferedImage;
+
+import model.util.FastRGB;
+
+/*
+ * Compares each frame against the previous one tile by tile so the pipeline
+ * only has to redo work where the scene actually changed.
+ */
+public class ChangeDetector {
+
+	private int tileSize;
+	private int sampleStep;
+	private int threshold;
+
+	private int width, height;
+	private int tileRows, tileCols;
+
+	// subsampled copy of the frame the current results of each tile were made from
+	private int[] samples;
+	// subsampled copy of the newest frame, taken into samples a tile at a time as tiles are redone
+	private int[] latest;
+	private boolean[] dirty;
+	private int dirtyCount;
+	private boolean hasPrevious = false;
+
+	/**
+	 * @param tileSize
+	 *            width and height of a tile in pixels
+	 * @param sampleStep
+	 *            only every sampleStep'th pixel in each direction is compared
+	 * @param threshold
+	 *            mean absolute difference of the red, green and blue values added
+	 *            up (0-765) above which a tile counts as changed, keeps sensor
+	 *            noise from dirtying tiles
+	 */
+	public ChangeDetector(int tileSize, int sampleStep, int threshold) {
+		this.tileSize = tileSize;
+		this.sampleStep = sampleStep;
+		this.threshold = threshold;
+	}
+
+	public ChangeDetector() {
+		this(32, 4, 18);
+	}
+
+	/**
+	 * Compares the image against the previous one and updates the dirty tiles
+	 *
+	 * @return true if no tile changed
+	 */
+	public boolean update(BufferedImage image) {
+		return update(image, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Same as update(image) but only looks at rows firstRow up to lastRow, tiles
+	 * outside them never count as changed
+	 */
+	public boolean update(BufferedImage image, int firstRow, int lastRow) {
+		FastRGB img = new FastRGB(image);
+
+		if (samples == null || img.width != width || img.height != height) {
+			allocate(img.width, img.height);
+		}
+
+		boolean[] changed = new boolean[tileRows * tileCols];
+		int samplesPerRow = (width + sampleStep - 1) / sampleStep;
+
+		for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+			for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+				int difference = 0;
+				int count = 0;
+				for (int row = Math.max(tileRow * tileSize, firstRow); row < Math.min(Math.min((tileRow + 1) * tileSize, height), lastRow); row += sampleStep) {
+					for (int col = tileCol * tileSize; col < Math.min((tileCol + 1) * tileSize, width); col += sampleStep) {
+						int rgb = img.getRGB(col, row);
+						int index = (row / sampleStep) * samplesPerRow + (col / sampleStep);
+						int last = samples[index];
+						difference += Math.abs(((rgb >> 16) & 0xFF) - ((last >> 16) & 0xFF)) + Math.abs(((rgb >> 8) & 0xFF) - ((last >> 8) & 0xFF))
+								+ Math.abs((rgb & 0xFF) - (last & 0xFF));
+						latest[index] = rgb;
+						count++;
+					}
+				}
+				changed[tileRow * tileCols + tileCol] = count > 0 && (!hasPrevious || difference > threshold * count);
+			}
+		}
+
+		// grow the changed tiles by one so blur and objects crossing a tile edge are redone
+		dirtyCount = 0;
+		for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+			for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+				boolean isDirty = false;
+				for (int r = Math.max(0, tileRow - 1); r <= Math.min(tileRows - 1, tileRow + 1) && !isDirty; r++) {
+					for (int c = Math.max(0, tileCol - 1); c <= Math.min(tileCols - 1, tileCol + 1); c++) {
+						if (changed[r * tileCols + c]) {
+							isDirty = true;
+							break;
+						}
+					}
+				}
+				dirty[tileRow * tileCols + tileCol] = isDirty;
+				if (isDirty) {
+					dirtyCount++;
+					refresh(tileRow, tileCol);
+				}
+			}
+		}
+		hasPrevious = true;
+
+		return isStatic();
+	}
+
+	private void allocate(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.tileRows = (height + tileSize - 1) / tileSize;
+		this.tileCols = (width + tileSize - 1) / tileSize;
+		this.samples = new int[((height + sampleStep - 1) / sampleStep) * ((width + sampleStep - 1) / sampleStep)];
+		this.latest = new int[samples.length];
+		this.dirty = new boolean[tileRows * tileCols];
+		reset();
+	}
+
+	/**
+	 * Forgets the previous frame so that the next one is processed in full, used
+	 * when processing parameters change
+	 */
+	public void reset() {
+		hasPrevious = false;
+	}
+
+	/*
+	 * counts every tile overlapping the rectangle as changed until the next
+	 * update, for places something is expected to have moved
+	 */
+	public void markDirty(int minRow, int minCol, int maxRow, int maxCol) {
+		if (dirty == null)
+			return;
+		minRow = Math.max(0, minRow) / tileSize;
+		minCol = Math.max(0, minCol) / tileSize;
+		maxRow = Math.min(height - 1, maxRow) / tileSize;
+		maxCol = Math.min(width - 1, maxCol) / tileSize;
+		for (int tileRow = minRow; tileRow <= maxRow; tileRow++) {
+			for (int tileCol = minCol; tileCol <= maxCol; tileCol++) {
+				if (!dirty[tileRow * tileCols + tileCol]) {
+					dirty[tileRow * tileCols + tileCol] = true;
+					dirtyCount++;
+					refresh(tileRow, tileCol);
+				}
+			}
+		}
+	}
+
+	/*
+	 * a dirty tile is redone from the newest frame, so that is what it is
+	 * compared against from now on. Clean tiles keep comparing against the frame
+	 * their results came from, a slow drift adds up until it counts
+	 */
+	private void refresh(int tileRow, int tileCol) {
+		int samplesPerRow = (width + sampleStep - 1) / sampleStep;
+		int lastSampleRow = (Math.min((tileRow + 1) * tileSize, height) - 1) / sampleStep;
+		int lastSampleCol = (Math.min((tileCol + 1) * tileSize, width) - 1) / sampleStep;
+		for (int sampleRow = tileRow * tileSize / sampleStep; sampleRow <= lastSampleRow; sampleRow++) {
+			for (int sampleCol = tileCol * tileSize / sampleStep; sampleCol <= lastSampleCol; sampleCol++) {
+				samples[sampleRow * samplesPerRow + sampleCol] = latest[sampleRow * samplesPerRow + sampleCol];
+			}
+		}
+	}
+
+	public boolean isStatic() {
+		return dirtyCount == 0;
+	}
+
+	public int getDirtyTileCount() {
+		return dirtyCount;
+	}
+
+	public int getTileCount() {
+		return tileRows * tileCols;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public boolean isDirty(int row, int col) {
+		if (dirty == null)
+			return true;
+		if (row < 0 || col < 0 || row >= height || col >= width)
+			return false;
+		return dirty[(row / tileSize) * tileCols + (col / tileSize)];
+	}
+
+	/**
+	 * @return true if any tile overlapping the given rectangle changed
+	 */
+	public boolean isRegionDirty(int minRow, int minCol, int maxRow, int maxCol) {
+		if (dirty == null)
+			return true;
+		minRow = Math.max(0, minRow) / tileSize;
+		minCol = Math.max(0, minCol) / tileSize;
+		maxRow = Math.min(height - 1, maxRow) / tileSize;
+		maxCol = Math.min(width - 1, maxCol) / tileSize;
+		for (int tileRow = minRow; tileRow <= maxRow; tileRow++) {
+			for (int tileCol = minCol; tileCol <= maxCol; tileCol++) {
+				if (dirty[tileRow * tileCols + tileCol])
+					return true;
+			}
+		}
+		return false;
+	}
+}
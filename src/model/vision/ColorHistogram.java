@@ -0,0 +1,134 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * How often each hue and saturation came up in pixels known to be one target,
+ * learned from sample frames. Back projection classifies a pixel by how common
+ * its bin is here, which follows the real colors of a target under different
+ * lighting much better than a hue range and a saturation cutoff. Never changes
+ * once made, learning more makes a new one, so it can live in a VisionConfig
+ */
+public class ColorHistogram {
+
+	public static final int HUE_BINS = 64;
+	public static final int SATURATION_BINS = 32;
+
+	public static final ColorHistogram EMPTY = new ColorHistogram(new int[HUE_BINS * SATURATION_BINS]);
+
+	// hue bin * SATURATION_BINS + saturation bin
+	private final int[] counts;
+	private final long total;
+
+	private ColorHistogram(int[] counts) {
+		this.counts = counts;
+		long sum = 0;
+		for (int count : counts) {
+			sum += count;
+		}
+		this.total = sum;
+	}
+
+	public static int bin(float hue, float saturation) {
+		return Math.min((int) (hue * HUE_BINS), HUE_BINS - 1) * SATURATION_BINS + Math.min((int) (saturation * SATURATION_BINS), SATURATION_BINS - 1);
+	}
+
+	/*
+	 * this histogram with the pixels of runs added, from planes that are width
+	 * wide. Pixels no brighter than valueCutoff are left out, their hue is mostly
+	 * noise
+	 */
+	public ColorHistogram withSamples(float[] hue, float[] saturation, float[] value, RunLength runs, int width, float valueCutoff) {
+		int[] added = counts.clone();
+		for (int run = 0; run < runs.size(); run++) {
+			int start = runs.getRow(run) * width;
+			for (int i = start + runs.getStart(run); i <= start + runs.getEnd(run); i++) {
+				if (value[i] > valueCutoff)
+					added[bin(hue[i], saturation[i])]++;
+			}
+		}
+		return new ColorHistogram(added);
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public boolean isEmpty() {
+		return total == 0;
+	}
+
+	/*
+	 * how likely each bin is to be the target, from 0 to 1 for the most common
+	 * bin. Smoothed over the bins around it first so a few sample frames don't
+	 * leave holes, hue bins wrap around at red
+	 */
+	public float[] getLikelihoods() {
+		float[] smoothed = new float[counts.length];
+		float peak = 0;
+		for (int h = 0; h < HUE_BINS; h++) {
+			for (int s = 0; s < SATURATION_BINS; s++) {
+				float sum = 0;
+				for (int dh = -1; dh <= 1; dh++) {
+					int hueBin = (h + dh + HUE_BINS) % HUE_BINS;
+					for (int ds = -1; ds <= 1; ds++) {
+						int saturationBin = s + ds;
+						if (saturationBin >= 0 && saturationBin < SATURATION_BINS)
+							sum += counts[hueBin * SATURATION_BINS + saturationBin] * (dh == 0 && ds == 0 ? 4 : dh == 0 || ds == 0 ? 2 : 1);
+					}
+				}
+				smoothed[h * SATURATION_BINS + s] = sum;
+				peak = Math.max(peak, sum);
+			}
+		}
+		if (peak > 0) {
+			for (int i = 0; i < smoothed.length; i++) {
+				smoothed[i] /= peak;
+			}
+		}
+		return smoothed;
+	}
+
+	/*
+	 * the bins that aren't empty as "bin:count bin:count ...", what parse reads
+	 */
+	public String encode() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0)
+				continue;
+			if (text.length() > 0)
+				text.append(' ');
+			text.append(i).append(':').append(counts[i]);
+		}
+		return text.toString();
+	}
+
+	public static ColorHistogram parse(String text) {
+		int[] counts = new int[HUE_BINS * SATURATION_BINS];
+		for (String entry : text.trim().split("\\s+")) {
+			if (entry.isEmpty())
+				continue;
+			String[] parts = entry.split(":");
+			if (parts.length != 2)
+				throw new IllegalArgumentException("Not a bin:count pair: " + entry);
+			int bin = Integer.parseInt(parts[0]);
+			if (bin < 0 || bin >= counts.length)
+				throw new IllegalArgumentException("No bin " + bin);
+			counts[bin] = Integer.parseInt(parts[1]);
+		}
+		return new ColorHistogram(counts);
+	}
+
+	public boolean equals(Object other) {
+		return other instanceof ColorHistogram && Arrays.equals(counts, ((ColorHistogram) other).counts);
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(counts);
+	}
+
+	public String toString() {
+		return total + " samples";
+	}
+}
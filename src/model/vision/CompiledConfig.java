@@ -0,0 +1,170 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * What a VisionConfig turns into once it is worked out for the pipeline: the
+ * hue lookup table, the number of blur passes and the cutoffs. Built once per
+ * config version and shared by every frame made with it, so moving a slider
+ * costs one rebuild instead of anything per frame
+ */
+public class CompiledConfig {
+	
+	// entries in the hue table, hue h is looked up at (int) (h * HUE_STEPS)
+	public static final int HUE_STEPS = 4096;
+	// pixels darker than this never match, whatever the threshold. With an
+	// adaptive config it is only the most the cutoff can be
+	public static final float VALUE_CUTOFF = .4f;
+	
+	private final VisionConfig config;
+	private final float[] hues;
+	private final byte[] hueTable;
+	// bit n is set for the hue and saturation bins that count as hues[n], null unless back projecting
+	private final byte[] colorTable;
+	private final int blurPasses;
+	// frames are processed at 1/scale of the camera size
+	private final int scale;
+	
+	private CompiledConfig(VisionConfig config, float[] hues, int scale) {
+		this.config = config;
+		this.hues = hues.clone();
+		this.scale = scale;
+		// a smaller frame needs less blur for the same part of the scene, and averaging it down already smoothed it
+		this.blurPasses = Math.round((int) Math.sqrt(config.getBlur()) / (float) scale);
+		
+		// bit n of an entry is set if the middle of its slice of hues is within the spread of hues[n]
+		hueTable = new byte[HUE_STEPS];
+		int hueCount = Math.min(hues.length, 8);
+		for (int i = 0; i < HUE_STEPS; i++) {
+			float hue = (i + .5f) / HUE_STEPS;
+			int bits = 0;
+			for (int n = 0; n < hueCount; n++) {
+				if (Pixel.hueDistance(hue, hues[n]) < config.getHueSpread())
+					bits |= 1 << n;
+			}
+			hueTable[i] = (byte) bits;
+		}
+		
+		colorTable = config.isBackProjection() ? buildColorTable(hueCount) : null;
+	}
+	
+	/*
+	 * a color with a learned histogram takes the bins that are likely enough,
+	 * one without falls back on its hue range and the threshold, which then
+	 * doesn't adapt to the brightness
+	 */
+	private byte[] buildColorTable(int hueCount) {
+		byte[] table = new byte[ColorHistogram.HUE_BINS * ColorHistogram.SATURATION_BINS];
+		for (int n = 0; n < hueCount; n++) {
+			ColorHistogram histogram = config.getHistogram(n);
+			float[] likelihoods = histogram.isEmpty() ? null : histogram.getLikelihoods();
+			for (int h = 0; h < ColorHistogram.HUE_BINS; h++) {
+				for (int s = 0; s < ColorHistogram.SATURATION_BINS; s++) {
+					int bin = h * ColorHistogram.SATURATION_BINS + s;
+					boolean matches;
+					if (likelihoods != null) {
+						matches = likelihoods[bin] >= config.getConfidence();
+					} else {
+						float hue = (h + .5f) / ColorHistogram.HUE_BINS;
+						float saturation = (s + .5f) / ColorHistogram.SATURATION_BINS;
+						matches = Pixel.hueDistance(hue, hues[n]) < config.getHueSpread() && saturation > config.getThreshold();
+					}
+					if (matches)
+						table[bin] |= 1 << n;
+				}
+			}
+		}
+		return table;
+	}
+	
+	/*
+	 * previous if it was made from the same config version and hues, a new one
+	 * otherwise
+	 */
+	public static CompiledConfig compile(CompiledConfig previous, VisionConfig config, float[] hues) {
+		return compile(previous, config, hues, 1);
+	}
+	
+	/*
+	 * for frames scaled down to 1/scale of the camera size, see LatencyGovernor
+	 */
+	public static CompiledConfig compile(CompiledConfig previous, VisionConfig config, float[] hues, int scale) {
+		if (previous != null && previous.config.getVersion() == config.getVersion() && Arrays.equals(previous.hues, hues) && previous.scale == scale)
+			return previous;
+		return new CompiledConfig(config, hues, scale);
+	}
+	
+	public VisionConfig getConfig() {
+		return config;
+	}
+	
+	public long getVersion() {
+		return config.getVersion();
+	}
+	
+	public float[] getHues() {
+		return hues;
+	}
+	
+	/*
+	 * the filter objects of hues[index] have to pass, null if there is none
+	 */
+	public ShapeFilter getShape(int index) {
+		return config.getShape(index);
+	}
+	
+	/*
+	 * bit n is set for hues that match hues[n], see HUE_STEPS
+	 */
+	public byte[] getHueTable() {
+		return hueTable;
+	}
+	
+	/*
+	 * bit n is set for the bins of ColorHistogram.bin that count as hues[n], null
+	 * unless the config back projects
+	 */
+	public byte[] getColorTable() {
+		return colorTable;
+	}
+	
+	public boolean isBackProjection() {
+		return colorTable != null;
+	}
+	
+	public int getScale() {
+		return scale;
+	}
+	
+	public int getBlurPasses() {
+		return blurPasses;
+	}
+	
+	public float getThreshold() {
+		return config.getThreshold();
+	}
+	
+	public float getHueSpread() {
+		return config.getHueSpread();
+	}
+	
+	public float getValueCutoff() {
+		return VALUE_CUTOFF;
+	}
+	
+	/*
+	 * true if the threshold and value cutoff are adjusted every frame from its
+	 * BrightnessStats
+	 */
+	public boolean isAdaptive() {
+		return config.isAdaptive();
+	}
+	
+	public ProcessingMask getMask() {
+		return config.getMask();
+	}
+	
+	public boolean isIntegral() {
+		return config.isIntegral();
+	}
+}
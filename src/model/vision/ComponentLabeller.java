@@ -0,0 +1,167 @@
+package model.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Finds the 4-connected groups of a mask a band of rows at a time, so the bands
+ * can be worked on by different threads. Each band collects its row runs and
+ * joins the ones that touch with a union find, merge then joins the runs that
+ * touch across the borders between bands and hands back one RunLength per
+ * group. Every run is looked at once, however the groups are spread around
+ */
+public class ComponentLabeller {
+
+	private BitMask mask;
+	private Band[] bands;
+
+	/*
+	 * the bands of one labelling, run them all before merging
+	 */
+	public class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int firstRow, lastRow;
+		// row, first col, last col of each run in row major order
+		private int[] runs = new int[3 * 64];
+		private int size;
+		// run index of the first run of each row, rowStart[lastRow - firstRow] is size
+		private int[] rowStart;
+		// union find over the runs, a root is always the first run of its group
+		private int[] parent;
+
+		private Band(int firstRow, int lastRow) {
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+		}
+
+		protected void compute() {
+			rowStart = new int[lastRow - firstRow + 1];
+			for (int row = firstRow; row < lastRow; row++) {
+				rowStart[row - firstRow] = size;
+				int col = mask.nextSetInRow(row, 0);
+				while (col >= 0) {
+					int end = mask.runEnd(row, col);
+					if (size * 3 + 3 > runs.length)
+						runs = Arrays.copyOf(runs, runs.length * 2);
+					runs[size * 3] = row;
+					runs[size * 3 + 1] = col;
+					runs[size * 3 + 2] = end;
+					size++;
+					col = mask.nextSetInRow(row, end + 1);
+				}
+			}
+			rowStart[lastRow - firstRow] = size;
+			parent = new int[size];
+			for (int i = 0; i < size; i++)
+				parent[i] = i;
+			for (int row = firstRow + 1; row < lastRow; row++) {
+				joinRows(runs, parent, 0, rowStart[row - firstRow - 1], rowStart[row - firstRow], runs, 0, rowStart[row - firstRow], rowStart[row - firstRow + 1]);
+			}
+		}
+	}
+
+	/*
+	 * splits the mask into bands of bandRows rows
+	 */
+	public ComponentLabeller(BitMask mask, int bandRows) {
+		this.mask = mask;
+		int height = mask.getHeight();
+		bandRows = Math.max(1, bandRows);
+		bands = new Band[(height + bandRows - 1) / bandRows];
+		for (int i = 0; i < bands.length; i++)
+			bands[i] = new Band(i * bandRows, Math.min(height, (i + 1) * bandRows));
+	}
+
+	public Band[] getBands() {
+		return bands;
+	}
+
+	/*
+	 * joins the groups of every band across the borders once all the bands are
+	 * done
+	 *
+	 * @return one RunLength per group, in row major order of their first pixels,
+	 *         runs in row major order
+	 */
+	public List<RunLength> merge() {
+		// all the runs numbered through, band after band
+		int[] offsets = new int[bands.length + 1];
+		for (int i = 0; i < bands.length; i++)
+			offsets[i + 1] = offsets[i] + bands[i].size;
+		int[] parent = new int[offsets[bands.length]];
+		for (int i = 0; i < bands.length; i++) {
+			Band band = bands[i];
+			for (int run = 0; run < band.size; run++)
+				parent[offsets[i] + run] = offsets[i] + band.parent[run];
+		}
+		// the last row of each band against the first row of the next
+		for (int i = 1; i < bands.length; i++) {
+			Band above = bands[i - 1], below = bands[i];
+			int lastRow = above.lastRow - above.firstRow - 1;
+			joinRows(above.runs, parent, offsets[i - 1], above.rowStart[lastRow], above.rowStart[lastRow + 1], below.runs, offsets[i], below.rowStart[0], below.rowStart[1]);
+		}
+
+		List<RunLength> groups = new ArrayList<RunLength>();
+		// the group of each root, roots come before the rest of their group
+		int[] group = new int[parent.length];
+		for (int i = 0; i < bands.length; i++) {
+			Band band = bands[i];
+			for (int run = 0; run < band.size; run++) {
+				int index = offsets[i] + run;
+				int root = find(parent, index);
+				if (root == index) {
+					group[index] = groups.size();
+					groups.add(new RunLength());
+				}
+				groups.get(group[root]).add(band.runs[run * 3], band.runs[run * 3 + 1], band.runs[run * 3 + 2]);
+			}
+		}
+		return groups;
+	}
+
+	/*
+	 * joins every run from aFirst to aLast of row a with the runs from bFirst to
+	 * bLast of the row below it that share a column with it. Both rows are in
+	 * order, so they are walked through side by side. Run n of a set of runs is
+	 * n + offset in parent
+	 */
+	private static void joinRows(int[] aRuns, int[] parent, int aOffset, int aFirst, int aLast, int[] bRuns, int bOffset, int bFirst, int bLast) {
+		int a = aFirst, b = bFirst;
+		while (a < aLast && b < bLast) {
+			int aStart = aRuns[a * 3 + 1], aEnd = aRuns[a * 3 + 2];
+			int bStart = bRuns[b * 3 + 1], bEnd = bRuns[b * 3 + 2];
+			if (aStart <= bEnd && bStart <= aEnd)
+				union(parent, a + aOffset, b + bOffset);
+			// whichever ends first can't touch anything further along
+			if (aEnd < bEnd)
+				a++;
+			else
+				b++;
+		}
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			// halves the path on the way
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/*
+	 * the later root goes under the earlier one, so a root is always the first
+	 * run of its group
+	 */
+	private static void union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if (a < b)
+			parent[b] = a;
+		else if (b < a)
+			parent[a] = b;
+	}
+}
@@ -0,0 +1,126 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * The outline of one group of pixels as a Freeman chain code: a start pixel and
+ * one direction per step to the next pixel on the boundary, going around
+ * anticlockwise as the picture is seen. A byte a step, so an outline costs as
+ * much as its perimeter instead of as much as the frame
+ */
+public class Contour {
+
+	// direction 0 is towards increasing columns, every next one 45 degrees further anticlockwise
+	private static final int[] COL_STEP = { 1, 1, 0, -1, -1, -1, 0, 1 };
+	private static final int[] ROW_STEP = { 0, -1, -1, -1, 0, 1, 1, 1 };
+
+	private final int startRow, startCol;
+	private final byte[] codes;
+
+	public Contour(int startRow, int startCol, byte[] codes) {
+		this.startRow = startRow;
+		this.startCol = startCol;
+		this.codes = codes;
+	}
+
+	/*
+	 * follows the outer boundary of the group containing (startRow, startCol),
+	 * which has to be its first pixel in row major order. Every set pixel of mask
+	 * that touches the group, diagonals included, counts as part of it, so mask
+	 * should hold nothing else near it
+	 */
+	public static Contour trace(BitMask mask, int startRow, int startCol) {
+		int width = mask.getWidth(), height = mask.getHeight();
+		byte[] codes = new byte[16];
+		int length = 0;
+		int row = startRow, col = startCol;
+		// as if the start was reached going down and to the right, nothing is above or left of it
+		int direction = 7;
+		while (true) {
+			// look around anticlockwise, from just past the pixel we came from
+			int search = (direction + 7 - (direction & 1)) & 7;
+			int found = -1;
+			for (int k = 0; k < 8; k++) {
+				int d = (search + k) & 7;
+				int r = row + ROW_STEP[d], c = col + COL_STEP[d];
+				if (r >= 0 && r < height && c >= 0 && c < width && mask.get(r, c)) {
+					found = d;
+					break;
+				}
+			}
+			// a single pixel has no steps
+			if (found < 0)
+				break;
+			// back at the start about to take the first step again
+			if (length > 0 && row == startRow && col == startCol && found == codes[0])
+				break;
+			if (length == codes.length)
+				codes = Arrays.copyOf(codes, length * 2);
+			codes[length++] = (byte) found;
+			row += ROW_STEP[found];
+			col += COL_STEP[found];
+			direction = found;
+		}
+		return new Contour(startRow, startCol, Arrays.copyOf(codes, length));
+	}
+
+	/*
+	 * the outline of runs, which have to be one 4-connected group. They are drawn
+	 * into a mask just big enough for them so nothing else can touch them, which
+	 * lets objects of the same frame be traced at the same time
+	 */
+	public static Contour trace(RunLength runs) {
+		int[] bounds = runs.getBounds();
+		BitMask mask = new BitMask(bounds[3] - bounds[1] + 1, bounds[2] - bounds[0] + 1);
+		runs.paint(mask, -bounds[0], -bounds[1]);
+		int startCol = mask.nextSetInRow(0, 0);
+		Contour contour = trace(mask, 0, startCol);
+		return new Contour(bounds[0], bounds[1] + startCol, contour.codes);
+	}
+
+	public int getStartRow() {
+		return startRow;
+	}
+
+	public int getStartCol() {
+		return startCol;
+	}
+
+	/*
+	 * number of steps, also the number of boundary pixels visited
+	 */
+	public int getLength() {
+		return codes.length;
+	}
+
+	public int getCode(int step) {
+		return codes[step];
+	}
+
+	/*
+	 * the boundary pixels in order as {col, row}, the start only once
+	 */
+	public int[][] getPoints() {
+		int[][] points = new int[Math.max(1, codes.length)][];
+		int row = startRow, col = startCol;
+		points[0] = new int[] { col, row };
+		for (int i = 0; i + 1 < codes.length; i++) {
+			row += ROW_STEP[codes[i]];
+			col += COL_STEP[codes[i]];
+			points[i + 1] = new int[] { col, row };
+		}
+		return points;
+	}
+
+	/*
+	 * length of the outline through the pixel centres, diagonal steps count
+	 * sqrt(2)
+	 */
+	public double getPerimeter() {
+		int diagonal = 0;
+		for (byte code : codes) {
+			diagonal += code & 1;
+		}
+		return codes.length - diagonal + diagonal * Math.sqrt(2);
+	}
+}
@@ -28,6 +28,12 @@ public class Frame extends Thread {
 	
 	/////////////////////// Constructors /////////////////////////
 	
+	/*
+	 * for subclasses that keep their pixels somewhere else
+	 */
+	protected Frame() {
+	}
+	
 	/**
 	 * A Constructor that takes a file name and uses the file to create a picture
 	 * 
@@ -237,7 +243,7 @@ public class Frame extends Thread {
 	
 	public void colorIsolate(float hue, float hueSpread, float threshold) {
 		
-		Color color = Color.getHSBColor(hue, 1f, 1f);
+		int color = Pixel.hsbToRGB(hue, 1f, 1f);
 		
 		int blockSize = 2;
 		int thisRow;
@@ -246,11 +252,11 @@ public class Frame extends Thread {
 			thisRow = row * blockSize;
 			for (int col = 0; col < (pixels[0].length) / blockSize; col++) {
 				thisCol = col * blockSize;
-				if (pixels[thisRow][thisCol].getSaturation() > threshold && pixels[thisRow][thisCol].getValue() > 0.4 && Math.abs(pixels[thisRow][thisCol].getHue() - hue) < hueSpread) {
+				if (pixels[thisRow][thisCol].getSaturation() > threshold && pixels[thisRow][thisCol].getValue() > 0.4 && Pixel.hueDistance(pixels[thisRow][thisCol].getHue(), hue) < hueSpread) {
 					this.drawBox(thisCol, thisRow, color, blockSize);
 				} else {
 					// pixels[row][col].setColor(Color.BLACK);
-					this.drawBox(thisCol, thisRow, Color.BLACK, blockSize);
+					this.drawBox(thisCol, thisRow, 0, blockSize);
 				}
 			}
 		}
@@ -259,20 +265,20 @@ public class Frame extends Thread {
 	public void cutoffBottom(int numOfPixels) {
 		for (int row = pixels.length - numOfPixels; row < pixels.length; row++) {
 			for (int col = 0; col < pixels[0].length; col++) {
-				pixels[row][col].setColor(Color.BLACK);
+				pixels[row][col].setColor(0);
 			}
 		}
 	}
 	
 	public void drawBlackBorder() {
 		for (int row = 0; row < pixels.length; row++) {
-			pixels[row][0].setColor(Color.black);
-			pixels[row][pixels[0].length - 1].setColor(Color.black);
+			pixels[row][0].setColor(0);
+			pixels[row][pixels[0].length - 1].setColor(0);
 		}
 		
 		for (int col = 0; col < pixels[0].length; col++) {
-			pixels[0][col].setColor(Color.black);
-			pixels[pixels.length - 1][col].setColor(Color.black);
+			pixels[0][col].setColor(0);
+			pixels[pixels.length - 1][col].setColor(0);
 		}
 	}
 	
@@ -299,19 +305,21 @@ public class Frame extends Thread {
 	
 	public double[] getAngle(double FOV) {
 		double[] angles = new double[2];
+		int[] com = getCOM();
 		
-		angles[0] = ((double) getCOM()[0] * FOV) / (double) getWidth();
-		angles[1] = ((double) getCOM()[1] * FOV) / (double) getHeight();
+		angles[0] = ((double) com[0] * FOV) / (double) getWidth();
+		angles[1] = ((double) com[1] * FOV) / (double) getHeight();
 		
 		return angles;
 	}
 	
 	public double[] getAngleOffCenter(double FOV) {
-		double[] angles = getAngle(FOV);
-		
-		if (getCOM()[0] == 0 && getCOM()[1] == 0)
+		int[] com = getCOM();
+		if (com[0] == 0 && com[1] == 0)
 			return new double[] { 0, 0 };
 		
+		double[] angles = getAngle(FOV);
+		
 		angles[0] -= FOV / 2;
 		angles[1] -= FOV / 2;
 		angles[1] *= -1;
@@ -385,6 +393,10 @@ public class Frame extends Thread {
 	}
 	
 	public void drawBox(int x, int y, Color color, int radius) {
+		drawBox(x, y, color.getRGB(), radius);
+	}
+	
+	public void drawBox(int x, int y, int color, int radius) {
 		try {
 			for (int row = y - radius; row < y + radius; row++) {
 				for (int col = x - radius; col < x + radius; col++) {
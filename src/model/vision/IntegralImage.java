@@ -0,0 +1,107 @@
+package model.vision;
+
+/*
+ * A summed area table: entry (row, col) is the sum of every pixel above and to
+ * the left of (row, col), so the sum over any rectangle is four lookups. Row
+ * and column 0 are all zeros, which saves checking for the frame edge. Filled
+ * in two steps so both can be split into bands, sums along each row first and
+ * then down the columns
+ */
+public class IntegralImage {
+
+	private final int width, height;
+	// (width + 1) by (height + 1), pixel (row, col) is added in from (row + 1, col + 1) on
+	private final int[] sums;
+
+	public IntegralImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.sums = new int[(width + 1) * (height + 1)];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * running sums along row of plane (row major, width wide), each pixel
+	 * scaled and rounded to an int
+	 */
+	public void sumRow(int row, float[] plane, float scale) {
+		int total = 0;
+		int in = row * width, out = (row + 1) * (width + 1) + 1;
+		for (int col = 0; col < width; col++) {
+			total += (int) (plane[in + col] * scale + .5f);
+			sums[out + col] = total;
+		}
+	}
+
+	/*
+	 * running counts along row of the pixels of classes (one byte per pixel, row
+	 * major) that have the given bit set
+	 */
+	public void sumRow(int row, byte[] classes, int bit) {
+		int total = 0;
+		int in = row * width, out = (row + 1) * (width + 1) + 1;
+		for (int col = 0; col < width; col++) {
+			total += (classes[in + col] >> bit) & 1;
+			sums[out + col] = total;
+		}
+	}
+
+	/*
+	 * the running sums along row as previous, which has to be the same size and
+	 * filled in, has them. Its table holds them added up down the columns, so
+	 * they are the difference to the row above
+	 */
+	public void copyRow(int row, IntegralImage previous) {
+		int out = (row + 1) * (width + 1) + 1, above = row * (width + 1) + 1;
+		for (int col = 0; col < width; col++) {
+			sums[out + col] = previous.sums[out + col] - previous.sums[above + col];
+		}
+	}
+	
+	/*
+	 * adds each row into the one below for columns fromCol to toCol, once every
+	 * row has been through sumRow. Rows that were never summed count as zeros
+	 */
+	public void sumColumns(int fromCol, int toCol) {
+		for (int row = 2; row <= height; row++) {
+			int above = (row - 1) * (width + 1) + 1, out = row * (width + 1) + 1;
+			for (int col = fromCol; col < toCol; col++) {
+				sums[out + col] += sums[above + col];
+			}
+		}
+	}
+
+	/*
+	 * the sum over the rectangle, corners included and clipped to the frame
+	 */
+	public long getSum(int minRow, int minCol, int maxRow, int maxCol) {
+		minRow = Math.max(0, minRow);
+		minCol = Math.max(0, minCol);
+		maxRow = Math.min(height - 1, maxRow);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minRow > maxRow || minCol > maxCol)
+			return 0;
+		int top = minRow * (width + 1), bottom = (maxRow + 1) * (width + 1);
+		// int differences wrap back to the right answer even if the corner sums overflowed
+		return (sums[bottom + maxCol + 1] - sums[bottom + minCol] - sums[top + maxCol + 1] + sums[top + minCol]) & 0xFFFFFFFFL;
+	}
+
+	/*
+	 * the sum over the rectangle divided by the number of pixels in it, 0 if none
+	 * of it is in the frame
+	 */
+	public double getMean(int minRow, int minCol, int maxRow, int maxCol) {
+		long rows = Math.min(height - 1, maxRow) - Math.max(0, minRow) + 1;
+		long cols = Math.min(width - 1, maxCol) - Math.max(0, minCol) + 1;
+		if (rows <= 0 || cols <= 0)
+			return 0;
+		return (double) getSum(minRow, minCol, maxRow, maxCol) / (rows * cols);
+	}
+}
@@ -0,0 +1,126 @@
+package model.vision;
+
+/*
+ * Raw image moments of a group of pixels, added up a row run at a time while
+ * the group is traced, and what follows from them: centre, orientation and an
+ * oriented box. m(p, q) is the sum of col^p * row^q over the pixels
+ */
+public class Moments {
+
+	private long m00, m10, m01, m20, m11, m02;
+
+	/*
+	 * adds the pixels from startCol to endCol in row
+	 */
+	public void addRun(int row, int startCol, int endCol) {
+		long count = endCol - startCol + 1;
+		long cols = (long) (startCol + endCol) * count / 2;
+		long squares = sumOfSquares(endCol) - sumOfSquares(startCol - 1);
+		m00 += count;
+		m10 += cols;
+		m01 += count * row;
+		m20 += squares;
+		m11 += cols * row;
+		m02 += count * row * row;
+	}
+
+	private static long sumOfSquares(long n) {
+		return n < 0 ? 0 : n * (n + 1) * (2 * n + 1) / 6;
+	}
+
+	public long getArea() {
+		return m00;
+	}
+
+	public long getM10() {
+		return m10;
+	}
+
+	public long getM01() {
+		return m01;
+	}
+
+	public double getCentroidCol() {
+		return m00 == 0 ? 0 : (double) m10 / m00;
+	}
+
+	public double getCentroidRow() {
+		return m00 == 0 ? 0 : (double) m01 / m00;
+	}
+
+	/*
+	 * central moments divided by the area, the variances and covariance of the
+	 * pixel positions
+	 */
+	public double getMu20() {
+		return m00 == 0 ? 0 : (double) m20 / m00 - getCentroidCol() * getCentroidCol();
+	}
+
+	public double getMu11() {
+		return m00 == 0 ? 0 : (double) m11 / m00 - getCentroidCol() * getCentroidRow();
+	}
+
+	public double getMu02() {
+		return m00 == 0 ? 0 : (double) m02 / m00 - getCentroidRow() * getCentroidRow();
+	}
+
+	/*
+	 * angle of the long axis in radians, 0 along the columns and positive towards
+	 * increasing rows, from -pi / 2 to pi / 2
+	 */
+	public double getOrientation() {
+		return .5 * Math.atan2(2 * getMu11(), getMu20() - getMu02());
+	}
+
+	private double[] eigenvalues() {
+		double mu20 = getMu20(), mu11 = getMu11(), mu02 = getMu02();
+		double mean = (mu20 + mu02) / 2;
+		double spread = Math.sqrt((mu20 - mu02) * (mu20 - mu02) / 4 + mu11 * mu11);
+		return new double[] { mean + spread, Math.max(0, mean - spread) };
+	}
+
+	/*
+	 * length in pixels of the long side of the rectangle with the same moments,
+	 * exact for a filled rectangle of whole pixels
+	 */
+	public double getMajorAxis() {
+		return Math.sqrt(12 * eigenvalues()[0] + 1);
+	}
+
+	public double getMinorAxis() {
+		return Math.sqrt(12 * eigenvalues()[1] + 1);
+	}
+
+	/*
+	 * long side over short side, 1 for a square or a circle
+	 */
+	public double getAspectRatio() {
+		return getMajorAxis() / getMinorAxis();
+	}
+
+	/*
+	 * how much of the oriented box is filled, 1 for a rectangle, about .79 for an
+	 * ellipse
+	 */
+	public double getExtent() {
+		return m00 == 0 ? 0 : m00 / (getMajorAxis() * getMinorAxis());
+	}
+
+	/*
+	 * corners of the oriented box as {col, row}, going around it
+	 */
+	public double[][] getOrientedBox() {
+		double angle = getOrientation();
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		double halfMajor = getMajorAxis() / 2, halfMinor = getMinorAxis() / 2;
+		double col = getCentroidCol(), row = getCentroidRow();
+		double[][] corners = new double[4][];
+		double[] majorSigns = { -1, 1, 1, -1 };
+		double[] minorSigns = { -1, -1, 1, 1 };
+		for (int i = 0; i < 4; i++) {
+			double along = majorSigns[i] * halfMajor, across = minorSigns[i] * halfMinor;
+			corners[i] = new double[] { col + along * cos - across * sin, row + along * sin + across * cos };
+		}
+		return corners;
+	}
+}
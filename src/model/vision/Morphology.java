@@ -0,0 +1,189 @@
+package model.vision;
+
+/*
+ * Erode, dilate, open and close on bit masks. Rows are shifted and combined a
+ * whole word (64 pixels) at a time, horizontally in log2(width) steps and
+ * vertically with the van Herk/Gil-Werman running min/max, which costs the same
+ * three word operations per row no matter how tall the element is. Pixels off
+ * the frame count as black when dilating and white when eroding, so an object
+ * touching the edge isn't eaten away there and close never takes pixels away
+ */
+public class Morphology {
+	
+	public static BitMask dilate(BitMask mask, StructuringElement element) {
+		return apply(mask, element, false);
+	}
+	
+	public static BitMask erode(BitMask mask, StructuringElement element) {
+		return apply(mask, element, true);
+	}
+	
+	/*
+	 * erode then dilate, removes specks smaller than the element
+	 */
+	public static BitMask open(BitMask mask, StructuringElement element) {
+		return dilate(erode(mask, element), element);
+	}
+	
+	/*
+	 * dilate then erode, fills gaps and holes smaller than the element
+	 */
+	public static BitMask close(BitMask mask, StructuringElement element) {
+		return erode(dilate(mask, element), element);
+	}
+	
+	private static BitMask apply(BitMask mask, StructuringElement element, boolean erode) {
+		if (element.getShape() == StructuringElement.Shape.CROSS) {
+			BitMask horizontal = horizontal(mask, element.getWidth(), erode);
+			BitMask vertical = vertical(mask, element.getHeight(), erode);
+			if (erode)
+				horizontal.and(vertical);
+			else
+				horizontal.or(vertical);
+			return horizontal;
+		}
+		return vertical(horizontal(mask, element.getWidth(), erode), element.getHeight(), erode);
+	}
+	
+	/*
+	 * every pixel becomes the and (erode) or or (dilate) of the length pixels
+	 * centered on it in its row
+	 */
+	static BitMask horizontal(BitMask mask, int length, boolean erode) {
+		BitMask result = new BitMask(mask);
+		if (length <= 1)
+			return result;
+		int wordsPerRow = mask.getWordsPerRow();
+		long[] words = result.getWords();
+		long[] right = new long[wordsPerRow];
+		long[] left = new long[wordsPerRow];
+		long[] shifted = new long[wordsPerRow];
+		long lastWord = mask.lastWordMask();
+		int extent = length / 2 + 1;
+		
+		for (int start = 0; start < words.length; start += wordsPerRow) {
+			// c to c + length / 2 and c - length / 2 to c, together the whole element
+			window(words, start, wordsPerRow, extent, erode, true, lastWord, right, shifted);
+			window(words, start, wordsPerRow, extent, erode, false, lastWord, left, shifted);
+			for (int w = 0; w < wordsPerRow; w++) {
+				words[start + w] = erode ? right[w] & left[w] : right[w] | left[w];
+			}
+			words[start + wordsPerRow - 1] &= lastWord;
+		}
+		return result;
+	}
+	
+	/*
+	 * dest bit c becomes the and or or of the row bits c to c + extent - 1
+	 * (forward) or c - extent + 1 to c, the window doubles every step. Bits past
+	 * the right edge of the frame are left however they come out, the caller
+	 * clears them
+	 */
+	private static void window(long[] words, int start, int wordsPerRow, int extent, boolean erode, boolean forward, long lastWord, long[] dest, long[] shifted) {
+		System.arraycopy(words, start, dest, 0, wordsPerRow);
+		// off the frame is white when eroding, including the unused end of the last word
+		long outside = erode ? -1L : 0;
+		dest[wordsPerRow - 1] |= outside & ~lastWord;
+		int span = 1;
+		while (span < extent) {
+			int step = Math.min(span, extent - span);
+			if (forward)
+				shiftDown(dest, 0, wordsPerRow, step, outside, shifted);
+			else
+				shiftUp(dest, 0, wordsPerRow, step, outside, shifted);
+			for (int w = 0; w < wordsPerRow; w++) {
+				dest[w] = erode ? dest[w] & shifted[w] : dest[w] | shifted[w];
+			}
+			span += step;
+		}
+	}
+	
+	/*
+	 * every pixel becomes the and (erode) or or (dilate) of the length pixels
+	 * centered on it in its column
+	 */
+	static BitMask vertical(BitMask mask, int length, boolean erode) {
+		if (length <= 1)
+			return new BitMask(mask);
+		int wordsPerRow = mask.getWordsPerRow();
+		int height = mask.getHeight();
+		long[] words = mask.getWords();
+		int radius = length / 2;
+		
+		// rows -radius to height + radius, the ones off the frame are black when dilating and white when eroding
+		int rows = height + 2 * radius;
+		long lastWord = mask.lastWordMask();
+		long[] prefix = new long[rows * wordsPerRow];
+		long[] suffix = new long[rows * wordsPerRow];
+		
+		for (int blockStart = 0; blockStart < rows; blockStart += length) {
+			int blockEnd = Math.min(rows, blockStart + length);
+			for (int i = blockStart; i < blockEnd; i++) {
+				int source = (i - radius) * wordsPerRow;
+				boolean inside = i - radius >= 0 && i - radius < height;
+				for (int w = 0; w < wordsPerRow; w++) {
+					long word = inside ? words[source + w] : outside(erode, w == wordsPerRow - 1, lastWord);
+					prefix[i * wordsPerRow + w] = i == blockStart ? word : (erode ? prefix[(i - 1) * wordsPerRow + w] & word : prefix[(i - 1) * wordsPerRow + w] | word);
+				}
+			}
+			for (int i = blockEnd - 1; i >= blockStart; i--) {
+				int source = (i - radius) * wordsPerRow;
+				boolean inside = i - radius >= 0 && i - radius < height;
+				for (int w = 0; w < wordsPerRow; w++) {
+					long word = inside ? words[source + w] : outside(erode, w == wordsPerRow - 1, lastWord);
+					suffix[i * wordsPerRow + w] = i == blockEnd - 1 ? word : (erode ? suffix[(i + 1) * wordsPerRow + w] & word : suffix[(i + 1) * wordsPerRow + w] | word);
+				}
+			}
+		}
+		
+		// the window for row r is padded rows r to r + length - 1
+		BitMask result = new BitMask(mask.getWidth(), height);
+		long[] out = result.getWords();
+		for (int row = 0; row < height; row++) {
+			int first = row * wordsPerRow;
+			int last = (row + length - 1) * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				out[first + w] = erode ? suffix[first + w] & prefix[last + w] : suffix[first + w] | prefix[last + w];
+			}
+		}
+		return result;
+	}
+	
+	/*
+	 * a word of a padding row, only the bits inside the frame set when eroding
+	 */
+	private static long outside(boolean erode, boolean last, long lastWord) {
+		if (!erode)
+			return 0;
+		return last ? lastWord : -1L;
+	}
+	
+	/*
+	 * dest bit c = row bit c + bits, bits past the end of the row come from outside
+	 */
+	private static void shiftDown(long[] words, int start, int wordsPerRow, int bits, long outside, long[] dest) {
+		int wordShift = bits >>> 6;
+		int bitShift = bits & 63;
+		for (int w = 0; w < wordsPerRow; w++) {
+			int source = w + wordShift;
+			long low = source < wordsPerRow ? words[start + source] : outside;
+			long high = source + 1 < wordsPerRow ? words[start + source + 1] : outside;
+			dest[w] = bitShift == 0 ? low : (low >>> bitShift) | (high << (64 - bitShift));
+		}
+	}
+	
+	/*
+	 * dest bit c = row bit c - bits, bits before the start of the row come from
+	 * outside
+	 */
+	private static void shiftUp(long[] words, int start, int wordsPerRow, int bits, long outside, long[] dest) {
+		int wordShift = bits >>> 6;
+		int bitShift = bits & 63;
+		for (int w = 0; w < wordsPerRow; w++) {
+			int source = w - wordShift;
+			long high = source >= 0 ? words[start + source] : outside;
+			long low = source - 1 >= 0 ? words[start + source - 1] : outside;
+			dest[w] = bitShift == 0 ? high : (high << bitShift) | (low >>> (64 - bitShift));
+		}
+	}
+}
@@ -54,6 +54,13 @@ public class Pixel {
 		
 	}
 	
+	/*
+	 * same as setRGB, for code that used to pass a Color around
+	 */
+	public void setColor(int RGB) {
+		setRGB(RGB);
+	}
+	
 	public boolean isBlack() {
 		if (value == 0)
 			return true;
@@ -61,7 +68,66 @@ public class Pixel {
 	}
 	
 	public int getRGB() {
-		return Color.HSBtoRGB(hue, saturation, value);
+		return hsbToRGB(hue, saturation, value);
+	}
+	
+	/*
+	 * how far apart two hues are around the color wheel, from 0 to .5. Red is
+	 * at both 0 and 1, so .98 and .02 are only .04 apart
+	 */
+	public static float hueDistance(float a, float b) {
+		float distance = Math.abs(a - b) % 1;
+		return Math.min(distance, 1 - distance);
+	}
+	
+	/*
+	 * same as Color.HSBtoRGB, here so the pipeline never has to load Color (and
+	 * the awt native libraries with it) when running headless
+	 */
+	public static int hsbToRGB(float hue, float saturation, float brightness) {
+		int r = 0, g = 0, b = 0;
+		if (saturation == 0) {
+			r = g = b = (int) (brightness * 255.0f + 0.5f);
+		} else {
+			float h = (hue - (float) Math.floor(hue)) * 6.0f;
+			float f = h - (float) Math.floor(h);
+			float p = brightness * (1.0f - saturation);
+			float q = brightness * (1.0f - saturation * f);
+			float t = brightness * (1.0f - (saturation * (1.0f - f)));
+			switch ((int) h) {
+				case 0:
+					r = (int) (brightness * 255.0f + 0.5f);
+					g = (int) (t * 255.0f + 0.5f);
+					b = (int) (p * 255.0f + 0.5f);
+					break;
+				case 1:
+					r = (int) (q * 255.0f + 0.5f);
+					g = (int) (brightness * 255.0f + 0.5f);
+					b = (int) (p * 255.0f + 0.5f);
+					break;
+				case 2:
+					r = (int) (p * 255.0f + 0.5f);
+					g = (int) (brightness * 255.0f + 0.5f);
+					b = (int) (t * 255.0f + 0.5f);
+					break;
+				case 3:
+					r = (int) (p * 255.0f + 0.5f);
+					g = (int) (q * 255.0f + 0.5f);
+					b = (int) (brightness * 255.0f + 0.5f);
+					break;
+				case 4:
+					r = (int) (t * 255.0f + 0.5f);
+					g = (int) (p * 255.0f + 0.5f);
+					b = (int) (brightness * 255.0f + 0.5f);
+					break;
+				case 5:
+					r = (int) (brightness * 255.0f + 0.5f);
+					g = (int) (p * 255.0f + 0.5f);
+					b = (int) (q * 255.0f + 0.5f);
+					break;
+			}
+		}
+		return 0xff000000 | (r << 16) | (g << 8) | (b << 0);
 	}
 	
 	public void setRGB(int RGB) {
@@ -0,0 +1,120 @@
+package model.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Closed polygons as {col, row} points in order. Works on outlines, so it costs
+ * as much as the number of points and never looks at pixels
+ */
+public class Polygon {
+
+	/*
+	 * the convex hull by the monotone chain, the same way around as a traced
+	 * contour, no three points in a row
+	 */
+	public static int[][] convexHull(int[][] points) {
+		if (points.length < 3)
+			return points.clone();
+		int[][] sorted = points.clone();
+		Arrays.sort(sorted, (a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+		int[][] hull = new int[sorted.length * 2][];
+		int size = 0;
+		// lower half left to right, then upper half back
+		for (int i = 0; i < sorted.length; i++) {
+			while (size >= 2 && cross(hull[size - 2], hull[size - 1], sorted[i]) <= 0)
+				size--;
+			hull[size++] = sorted[i];
+		}
+		for (int i = sorted.length - 2, lower = size + 1; i >= 0; i--) {
+			while (size >= lower && cross(hull[size - 2], hull[size - 1], sorted[i]) <= 0)
+				size--;
+			hull[size++] = sorted[i];
+		}
+		// the last point is the first one again
+		return Arrays.copyOf(hull, Math.max(1, size - 1));
+	}
+
+	/*
+	 * twice the signed area of the triangle a, b, c, positive when c is
+	 * anticlockwise of a to b with rows going down
+	 */
+	private static long cross(int[] a, int[] b, int[] c) {
+		return (long) (b[0] - a[0]) * (a[1] - c[1]) - (long) (a[1] - b[1]) * (c[0] - a[0]);
+	}
+
+	/*
+	 * Douglas-Peucker: the fewest points of the closed polygon that keep every
+	 * dropped point within epsilon pixels of the outline
+	 */
+	public static int[][] simplify(int[][] points, double epsilon) {
+		if (points.length < 3)
+			return points.clone();
+		// split at the point furthest from the first, the closed outline becomes two open ones
+		int far = 0;
+		long farthest = -1;
+		for (int i = 1; i < points.length; i++) {
+			long dc = points[i][0] - points[0][0], dr = points[i][1] - points[0][1];
+			if (dc * dc + dr * dr > farthest) {
+				farthest = dc * dc + dr * dr;
+				far = i;
+			}
+		}
+		boolean[] keep = new boolean[points.length + 1];
+		keep[0] = true;
+		keep[far] = true;
+		simplify(points, 0, far, epsilon, keep);
+		simplify(points, far, points.length, epsilon, keep);
+		List<int[]> kept = new ArrayList<int[]>();
+		for (int i = 0; i < points.length; i++) {
+			if (keep[i])
+				kept.add(points[i]);
+		}
+		return kept.toArray(new int[kept.size()][]);
+	}
+
+	/*
+	 * points from first to last, last may be points.length for the first point
+	 * again
+	 */
+	private static void simplify(int[][] points, int first, int last, double epsilon, boolean[] keep) {
+		if (last - first < 2)
+			return;
+		int[] a = points[first], b = points[last % points.length];
+		double length = Math.hypot(b[0] - a[0], b[1] - a[1]);
+		int worst = -1;
+		double worstDistance = epsilon;
+		for (int i = first + 1; i < last; i++) {
+			double distance = length == 0 ? Math.hypot(points[i][0] - a[0], points[i][1] - a[1]) : Math.abs(cross(a, b, points[i])) / length;
+			if (distance > worstDistance) {
+				worstDistance = distance;
+				worst = i;
+			}
+		}
+		if (worst < 0)
+			return;
+		keep[worst] = true;
+		simplify(points, first, worst, epsilon, keep);
+		simplify(points, worst, last, epsilon, keep);
+	}
+
+	public static double perimeter(int[][] points) {
+		double total = 0;
+		for (int i = 0, j = points.length - 1; i < points.length; j = i++) {
+			total += Math.hypot(points[i][0] - points[j][0], points[i][1] - points[j][1]);
+		}
+		return total;
+	}
+
+	/*
+	 * area enclosed, the same whichever way around the points go
+	 */
+	public static double area(int[][] points) {
+		long twice = 0;
+		for (int i = 0, j = points.length - 1; i < points.length; j = i++) {
+			twice += (long) points[j][0] * points[i][1] - (long) points[i][0] * points[j][1];
+		}
+		return Math.abs(twice) / 2.0;
+	}
+}
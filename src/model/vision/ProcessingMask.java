@@ -0,0 +1,229 @@
+package model.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The parts of the picture that are never looked at, like the bumper along the
+ * bottom. Everything is in fractions of the width and height so the same mask
+ * works at any decode scale. Rows that are excluded across the whole width are
+ * never decoded, converted or classified, pixels in the excluded regions between
+ * them just never get a class
+ */
+public class ProcessingMask {
+
+	public static final ProcessingMask NONE = new ProcessingMask(0, 0, new float[0][]);
+
+	// frame sizes whose masks are kept, enough for full, half and quarter size of two cameras sharing the config
+	private static final int KEPT_SIZES = 6;
+
+	// fraction of the rows excluded at the top and at the bottom
+	private final float top, bottom;
+	// x0, y0, x1, y1, ... of each excluded polygon
+	private final float[][] regions;
+
+	// the masks of the sizes asked for lately, most recent first
+	private final List<Raster> rasters = new ArrayList<Raster>();
+
+	public ProcessingMask(float top, float bottom, float[][] regions) {
+		if (top < 0 || bottom < 0 || top + bottom > 1)
+			throw new IllegalArgumentException("Excluded rows have to be fractions of the height, not " + top + " and " + bottom);
+		for (float[] region : regions) {
+			if (region.length < 6 || region.length % 2 != 0)
+				throw new IllegalArgumentException("A region needs at least three x,y points");
+		}
+		this.top = top;
+		this.bottom = bottom;
+		this.regions = regions;
+	}
+
+	public ProcessingMask withTop(float top) {
+		return new ProcessingMask(top, bottom, regions);
+	}
+
+	public ProcessingMask withBottom(float bottom) {
+		return new ProcessingMask(top, bottom, regions);
+	}
+
+	/*
+	 * polygons as "x,y x,y x,y; x,y ...", points are fractions of the width and
+	 * height and polygons are split by semicolons
+	 */
+	public ProcessingMask withRegions(String regions) {
+		return new ProcessingMask(top, bottom, parseRegions(regions));
+	}
+
+	public static float[][] parseRegions(String text) {
+		List<float[]> regions = new ArrayList<float[]>();
+		for (String polygon : text.split(";")) {
+			if (polygon.trim().isEmpty())
+				continue;
+			String[] points = polygon.trim().split("\\s+");
+			float[] region = new float[points.length * 2];
+			for (int i = 0; i < points.length; i++) {
+				String[] xy = points[i].split(",");
+				if (xy.length != 2)
+					throw new IllegalArgumentException("Not an x,y point: " + points[i]);
+				region[i * 2] = Float.parseFloat(xy[0]);
+				region[i * 2 + 1] = Float.parseFloat(xy[1]);
+			}
+			regions.add(region);
+		}
+		return regions.toArray(new float[regions.size()][]);
+	}
+
+	public float getTop() {
+		return top;
+	}
+
+	public float getBottom() {
+		return bottom;
+	}
+
+	/*
+	 * in the format withRegions reads
+	 */
+	public String getRegions() {
+		StringBuilder text = new StringBuilder();
+		for (float[] region : regions) {
+			if (text.length() > 0)
+				text.append("; ");
+			for (int i = 0; i < region.length; i += 2) {
+				if (i > 0)
+					text.append(' ');
+				text.append(region[i]).append(',').append(region[i + 1]);
+			}
+		}
+		return text.toString();
+	}
+
+	public boolean isEmpty() {
+		return top == 0 && bottom == 0 && regions.length == 0;
+	}
+
+	/*
+	 * the mask for a width by height frame. The last few sizes are kept, so
+	 * cameras of different sizes or a changing scale don't build them again
+	 */
+	public synchronized Raster rasterize(int width, int height) {
+		for (int i = 0; i < rasters.size(); i++) {
+			Raster kept = rasters.get(i);
+			if (kept.width == width && kept.height == height) {
+				rasters.add(0, rasters.remove(i));
+				return kept;
+			}
+		}
+		Raster made = new Raster(width, height);
+		rasters.add(0, made);
+		if (rasters.size() > KEPT_SIZES)
+			rasters.remove(KEPT_SIZES);
+		return made;
+	}
+
+	/*
+	 * a ProcessingMask for one frame size
+	 */
+	public class Raster {
+
+		private final int width, height;
+		// rows from firstRow up to lastRow are processed
+		private int firstRow, lastRow;
+		// pixels between those rows that still never get a class, null if there are none
+		private BitMask excluded;
+
+		private Raster(int width, int height) {
+			this.width = width;
+			this.height = height;
+			firstRow = Math.min(height, Math.round(top * height));
+			lastRow = Math.max(firstRow, height - Math.round(bottom * height));
+			if (regions.length == 0)
+				return;
+
+			excluded = new BitMask(width, height);
+			for (float[] region : regions) {
+				fill(region);
+			}
+			// rows the regions cover all the way across are dropped like the excluded rows
+			while (firstRow < lastRow && excluded.cardinality(firstRow, 0, firstRow, width - 1) == width)
+				firstRow++;
+			while (lastRow > firstRow && excluded.cardinality(lastRow - 1, 0, lastRow - 1, width - 1) == width)
+				lastRow--;
+		}
+
+		/*
+		 * even-odd scanline fill of a polygon, a pixel is in it if its centre is
+		 */
+		private void fill(float[] region) {
+			int points = region.length / 2;
+			float[] crossings = new float[points];
+			for (int row = 0; row < height; row++) {
+				float y = (row + .5f) / height;
+				int count = 0;
+				for (int i = 0, j = points - 1; i < points; j = i++) {
+					float y0 = region[j * 2 + 1], y1 = region[i * 2 + 1];
+					if ((y0 <= y) != (y1 <= y)) {
+						float x0 = region[j * 2], x1 = region[i * 2];
+						crossings[count++] = (x0 + (y - y0) / (y1 - y0) * (x1 - x0)) * width;
+					}
+				}
+				Arrays.sort(crossings, 0, count);
+				for (int k = 0; k + 1 < count; k += 2) {
+					int minCol = Math.max(0, (int) Math.ceil(crossings[k] - .5f));
+					int maxCol = Math.min(width - 1, (int) Math.ceil(crossings[k + 1] - .5f) - 1);
+					if (minCol <= maxCol)
+						excluded.setRect(row, minCol, row, maxCol);
+				}
+			}
+		}
+
+		public int getFirstRow() {
+			return firstRow;
+		}
+
+		/*
+		 * one past the last row that is processed
+		 */
+		public int getLastRow() {
+			return lastRow;
+		}
+
+		public boolean isExcluded(int row, int col) {
+			return row < firstRow || row >= lastRow || (excluded != null && excluded.get(row, col));
+		}
+
+		/*
+		 * clears the classes (one byte per pixel, row major) of the excluded
+		 * pixels between firstRow and lastRow, the rows outside are never
+		 * classified to begin with
+		 */
+		public void apply(byte[] classes) {
+			if (excluded == null)
+				return;
+			for (int row = firstRow; row < lastRow; row++) {
+				int found = excluded.nextSet(row, 0);
+				while (found >= 0 && found / width == row) {
+					int col = found % width;
+					int end = excluded.runEnd(row, col);
+					Arrays.fill(classes, row * width + col, row * width + end + 1, (byte) 0);
+					found = excluded.nextSet(row, end + 1);
+				}
+			}
+		}
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof ProcessingMask))
+			return false;
+		ProcessingMask mask = (ProcessingMask) other;
+		return top == mask.top && bottom == mask.bottom && Arrays.deepEquals(regions, mask.regions);
+	}
+
+	public int hashCode() {
+		return Float.hashCode(top) * 31 + Float.hashCode(bottom) * 17 + Arrays.deepHashCode(regions);
+	}
+
+	public String toString() {
+		return "top=" + top + " bottom=" + bottom + " regions=" + getRegions();
+	}
+}
@@ -0,0 +1,91 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * The pixels of one object as the row runs it was traced in, three ints a run
+ * instead of a frame sized mask. Moments are added up as runs are added, so
+ * area, centre and shape come for free
+ */
+public class RunLength {
+
+	// row, first col, last col of each run
+	private int[] runs = new int[3 * 8];
+	private int size;
+	private Moments moments = new Moments();
+	private int minRow = Integer.MAX_VALUE, minCol = Integer.MAX_VALUE, maxRow = -1, maxCol = -1;
+
+	public void add(int row, int startCol, int endCol) {
+		if (size * 3 + 3 > runs.length)
+			runs = Arrays.copyOf(runs, runs.length * 2);
+		runs[size * 3] = row;
+		runs[size * 3 + 1] = startCol;
+		runs[size * 3 + 2] = endCol;
+		size++;
+		moments.addRun(row, startCol, endCol);
+		minRow = Math.min(minRow, row);
+		minCol = Math.min(minCol, startCol);
+		maxRow = Math.max(maxRow, row);
+		maxCol = Math.max(maxCol, endCol);
+	}
+
+	/*
+	 * number of runs
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getRow(int run) {
+		return runs[run * 3];
+	}
+
+	public int getStart(int run) {
+		return runs[run * 3 + 1];
+	}
+
+	public int getEnd(int run) {
+		return runs[run * 3 + 2];
+	}
+
+	public long getArea() {
+		return moments.getArea();
+	}
+
+	public Moments getMoments() {
+		return moments;
+	}
+
+	/*
+	 * {minRow, minCol, maxRow, maxCol} of every run so far
+	 */
+	public int[] getBounds() {
+		return new int[] { minRow, minCol, maxRow, maxCol };
+	}
+
+	/*
+	 * sets the pixels of every run in mask
+	 */
+	public void paint(BitMask mask) {
+		paint(mask, 0, 0);
+	}
+
+	/*
+	 * sets the pixels of every run moved by rowOffset and colOffset
+	 */
+	public void paint(BitMask mask, int rowOffset, int colOffset) {
+		for (int i = 0; i < size; i++) {
+			mask.setRect(runs[i * 3] + rowOffset, runs[i * 3 + 1] + colOffset, runs[i * 3] + rowOffset, runs[i * 3 + 2] + colOffset);
+		}
+	}
+
+	/*
+	 * clears the pixels of every run from mask, quicker than clearing the whole
+	 * mask when the runs are a small part of it
+	 */
+	public void erase(BitMask mask) {
+		for (int i = 0; i < size; i++) {
+			mask.clearRect(runs[i * 3], runs[i * 3 + 1], runs[i * 3], runs[i * 3 + 2]);
+		}
+	}
+}
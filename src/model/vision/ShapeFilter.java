@@ -0,0 +1,80 @@
+package model.vision;
+
+/*
+ * Tells objects that are the right color but the wrong shape apart, going by
+ * the oriented box from the object's moments, so it costs nothing per pixel.
+ * Off for every color unless the config sets shape0, shape1, ...
+ */
+public class ShapeFilter {
+
+	// power cubes are about as long as they are wide from any side
+	public static final ShapeFilter CUBE = new ShapeFilter(1, 2.5, .45);
+	// tape strips are long and thin, 2 by 15.3 inches
+	public static final ShapeFilter TAPE = new ShapeFilter(2, Double.MAX_VALUE, .5);
+
+	private final double minAspect, maxAspect;
+	private final double minExtent;
+
+	/**
+	 * @param minAspect
+	 *            smallest long side over short side of the oriented box
+	 * @param maxAspect
+	 *            largest long side over short side of the oriented box
+	 * @param minExtent
+	 *            how much of the oriented box has to be filled, from 0 to 1
+	 */
+	public ShapeFilter(double minAspect, double maxAspect, double minExtent) {
+		this.minAspect = minAspect;
+		this.maxAspect = maxAspect;
+		this.minExtent = minExtent;
+	}
+
+	/*
+	 * "cube", "tape", "minAspect,maxAspect,minExtent" or "off", which is null
+	 * and lets everything through
+	 */
+	public static ShapeFilter parse(String text) {
+		text = text.trim();
+		if (text.isEmpty() || text.equalsIgnoreCase("off"))
+			return null;
+		if (text.equalsIgnoreCase("cube"))
+			return CUBE;
+		if (text.equalsIgnoreCase("tape"))
+			return TAPE;
+		String[] parts = text.split(",");
+		if (parts.length != 3)
+			throw new IllegalArgumentException("A shape is cube, tape, off or minAspect,maxAspect,minExtent, not " + text);
+		return new ShapeFilter(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim()));
+	}
+
+	/*
+	 * in the format parse reads
+	 */
+	public String encode() {
+		if (equals(CUBE))
+			return "cube";
+		if (equals(TAPE))
+			return "tape";
+		return minAspect + "," + maxAspect + "," + minExtent;
+	}
+
+	public boolean accepts(Moments moments) {
+		double aspect = moments.getAspectRatio();
+		return aspect >= minAspect && aspect <= maxAspect && moments.getExtent() >= minExtent;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof ShapeFilter))
+			return false;
+		ShapeFilter shape = (ShapeFilter) other;
+		return minAspect == shape.minAspect && maxAspect == shape.maxAspect && minExtent == shape.minExtent;
+	}
+
+	public int hashCode() {
+		return Double.hashCode(minAspect) * 31 + Double.hashCode(maxAspect) * 17 + Double.hashCode(minExtent);
+	}
+
+	public String toString() {
+		return "aspect " + minAspect + " to " + maxAspect + ", extent over " + minExtent;
+	}
+}
@@ -0,0 +1,53 @@
+package model.vision;
+
+/*
+ * The neighbourhood used by Morphology. Both shapes can be split into a
+ * horizontal and a vertical line, which is what keeps erode and dilate cheap
+ */
+public class StructuringElement {
+	
+	public enum Shape {
+		RECTANGLE, CROSS
+	}
+	
+	private int width, height;
+	private Shape shape;
+	
+	/**
+	 * @param width
+	 *            width in pixels, odd so the element has a center
+	 * @param height
+	 *            height in pixels, odd so the element has a center
+	 */
+	public StructuringElement(int width, int height, Shape shape) {
+		if (width < 1 || height < 1 || width % 2 == 0 || height % 2 == 0)
+			throw new IllegalArgumentException("structuring element must have odd positive sides, got " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.shape = shape;
+	}
+	
+	public static StructuringElement rectangle(int width, int height) {
+		return new StructuringElement(width, height, Shape.RECTANGLE);
+	}
+	
+	public static StructuringElement cross(int width, int height) {
+		return new StructuringElement(width, height, Shape.CROSS);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public Shape getShape() {
+		return shape;
+	}
+	
+	public String toString() {
+		return shape + " " + width + "x" + height;
+	}
+}
@@ -0,0 +1,185 @@
+package model.vision;
+
+import java.util.Arrays;
+
+/*
+ * Corners and pose of a flat rectangular target, like a strip of
+ * retroreflective tape, from its traced outline. Everything works on the points
+ * of the outline, a target costs microseconds and the picture is never looked
+ * at again
+ */
+public class TargetGeometry {
+
+	// the hull is simplified with this fraction of its perimeter first, growing until four points are left
+	private static final double FIRST_EPSILON = .02;
+	private static final double EPSILON_GROWTH = 1.5;
+	private static final int MAX_TRIES = 8;
+
+	/*
+	 * the four corners of the outline as {col, row} on the outside edges of the
+	 * corner pixels, top left, top right, bottom right then bottom left, null if
+	 * it has no area
+	 */
+	public static double[][] findCorners(Contour contour) {
+		int[][] hull = Polygon.convexHull(contour.getPoints());
+		if (hull.length < 3 || Polygon.area(hull) == 0)
+			return null;
+		int[][] quad = null;
+		if (hull.length == 4) {
+			quad = hull;
+		} else if (hull.length > 4) {
+			double epsilon = FIRST_EPSILON * Polygon.perimeter(hull);
+			for (int i = 0; i < MAX_TRIES; i++, epsilon *= EPSILON_GROWTH) {
+				int[][] simplified = Polygon.simplify(hull, epsilon);
+				if (simplified.length == 4)
+					quad = simplified;
+				if (simplified.length <= 4)
+					break;
+			}
+		}
+		// a hull that jumps past four, or a triangle, falls back on the furthest points along the diagonals
+		if (quad == null)
+			quad = extremes(hull);
+		return order(quad);
+	}
+
+	private static int[][] extremes(int[][] points) {
+		int[][] quad = { points[0], points[0], points[0], points[0] };
+		for (int[] point : points) {
+			if (point[0] + point[1] < quad[0][0] + quad[0][1])
+				quad[0] = point;
+			if (point[0] - point[1] > quad[1][0] - quad[1][1])
+				quad[1] = point;
+			if (point[0] + point[1] > quad[2][0] + quad[2][1])
+				quad[2] = point;
+			if (point[1] - point[0] > quad[3][1] - quad[3][0])
+				quad[3] = point;
+		}
+		return quad;
+	}
+
+	/*
+	 * clockwise as the picture is seen, starting from the corner nearest the top
+	 * left
+	 */
+	private static double[][] order(int[][] quad) {
+		double centerCol = 0, centerRow = 0;
+		for (int[] point : quad) {
+			centerCol += point[0] / 4.0;
+			centerRow += point[1] / 4.0;
+		}
+		double[] angles = new double[4];
+		Integer[] indices = new Integer[4];
+		for (int i = 0; i < 4; i++) {
+			angles[i] = Math.atan2(quad[i][1] - centerRow, quad[i][0] - centerCol);
+			indices[i] = i;
+		}
+		Arrays.sort(indices, (a, b) -> Double.compare(angles[a], angles[b]));
+		int first = 0;
+		for (int i = 1; i < 4; i++) {
+			int[] point = quad[indices[i]], best = quad[indices[first]];
+			if (point[0] + point[1] < best[0] + best[1])
+				first = i;
+		}
+		// the outline goes through pixel centres, the corners of the target are half a pixel further out
+		double[][] corners = new double[4][];
+		for (int i = 0; i < 4; i++) {
+			int[] point = quad[indices[(first + i) % 4]];
+			corners[i] = new double[] { point[0] + .5 * Math.signum(point[0] - centerCol), point[1] + .5 * Math.signum(point[1] - centerRow) };
+		}
+		return corners;
+	}
+
+	/**
+	 * Where a targetWidth by targetHeight rectangle is relative to the camera,
+	 * from its corners through the homography between the target and the image
+	 *
+	 * @param corners
+	 *            from findCorners, in a frameWidth by frameHeight frame
+	 * @return {x right, y down, z forward} of the centre of the target in the
+	 *         units of the target size, then in degrees how far its right edge
+	 *         is turned away from the camera, how far its top edge is and how far
+	 *         it is turned clockwise, all 0 facing the camera squarely. null if
+	 *         the corners can't be a rectangle
+	 */
+	public static double[] solvePose(double[][] corners, CameraModel camera, int frameWidth, int frameHeight, double targetWidth, double targetHeight) {
+		double[][] model = { { -targetWidth / 2, -targetHeight / 2 }, { targetWidth / 2, -targetHeight / 2 }, { targetWidth / 2, targetHeight / 2 },
+				{ -targetWidth / 2, targetHeight / 2 } };
+		// h11 h12 h13 h21 h22 h23 h31 h32 with h33 = 1, two equations a corner
+		double[][] a = new double[8][9];
+		for (int i = 0; i < 4; i++) {
+			double[] image = camera.normalize(frameWidth, frameHeight, corners[i][0], corners[i][1]);
+			double X = model[i][0], Y = model[i][1];
+			a[i * 2] = new double[] { X, Y, 1, 0, 0, 0, -image[0] * X, -image[0] * Y, image[0] };
+			a[i * 2 + 1] = new double[] { 0, 0, 0, X, Y, 1, -image[1] * X, -image[1] * Y, image[1] };
+		}
+		double[] h = solve(a);
+		if (h == null)
+			return null;
+
+		// the columns of the homography are the target's x and y axes and its centre, up to scale
+		double[] r1 = { h[0], h[3], h[6] };
+		double[] r2 = { h[1], h[4], h[7] };
+		double[] t = { h[2], h[5], 1 };
+		double scale = 2 / (length(r1) + length(r2));
+		for (int i = 0; i < 3; i++) {
+			r1[i] *= scale;
+			r2[i] *= scale;
+			t[i] *= scale;
+		}
+		// the closest rotation, x kept and y made square to it
+		normalize(r1);
+		double along = r1[0] * r2[0] + r1[1] * r2[1] + r1[2] * r2[2];
+		for (int i = 0; i < 3; i++)
+			r2[i] -= along * r1[i];
+		normalize(r2);
+
+		double yaw = Math.toDegrees(Math.atan2(r1[2], Math.hypot(r1[0], r1[1])));
+		double pitch = Math.toDegrees(Math.atan2(-r2[2], Math.hypot(r2[0], r2[1])));
+		double roll = Math.toDegrees(Math.atan2(r1[1], r1[0]));
+		return new double[] { t[0], t[1], t[2], yaw, pitch, roll };
+	}
+
+	private static double length(double[] v) {
+		return Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+	}
+
+	private static void normalize(double[] v) {
+		double length = length(v);
+		for (int i = 0; i < 3; i++)
+			v[i] /= length;
+	}
+
+	/*
+	 * Gaussian elimination with partial pivoting on an augmented n by n + 1
+	 * matrix, null if it is singular
+	 */
+	private static double[] solve(double[][] a) {
+		int n = a.length;
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < n; row++) {
+				if (Math.abs(a[row][col]) > Math.abs(a[pivot][col]))
+					pivot = row;
+			}
+			if (Math.abs(a[pivot][col]) < 1e-12)
+				return null;
+			double[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			for (int row = col + 1; row < n; row++) {
+				double factor = a[row][col] / a[col][col];
+				for (int k = col; k <= n; k++)
+					a[row][k] -= factor * a[col][k];
+			}
+		}
+		double[] x = new double[n];
+		for (int row = n - 1; row >= 0; row--) {
+			double sum = a[row][n];
+			for (int k = row + 1; k < n; k++)
+				sum -= a[row][k] * x[k];
+			x[row] = sum / a[row][row];
+		}
+		return x;
+	}
+}
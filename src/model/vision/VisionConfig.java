@@ -0,0 +1,342 @@
+package model.vision;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The tuning parameters of the pipeline. Never changes once made, so a frame
+ * can hold on to one while the preview or a client swaps in a new one. Every
+ * config gets a new version number, CompiledConfig uses it to tell when it has
+ * to be rebuilt
+ */
+public class VisionConfig {
+	
+	private static final AtomicLong versions = new AtomicLong();
+	
+	private final long version = versions.incrementAndGet();
+	private final float hueSpread;
+	private final float threshold;
+	private final int blur;
+	private final int framerate;
+	// lets the threshold and value cutoff drop with the frame's brightness, see BrightnessStats. Off unless adaptive=true
+	private final boolean adaptive;
+	// the parts of the picture that are skipped
+	private final ProcessingMask mask;
+	// builds summed area tables of the brightness and the colors of every frame, see IntegralImage
+	private final boolean integral;
+	// classifies by the learned histogram of each color instead of its hue range, see ColorHistogram
+	private final boolean backProjection;
+	// how likely a bin has to be, from 0 to 1, for its pixels to count as the color
+	private final float confidence;
+	// one per color in the order of the hues, empty ones haven't been learned
+	private final ColorHistogram[] histograms;
+	// one per color in the order of the hues, objects of that color have to pass it. Null or missing ones let everything through
+	private final ShapeFilter[] shapes;
+	// milliseconds a frame may take before the pipeline drops to a coarser resolution, 0 never does, see LatencyGovernor
+	private final int latencyBudget;
+	
+	public VisionConfig(float hueSpread, float threshold, int blur, int framerate) {
+		this(new Builder(hueSpread, threshold, blur, framerate));
+	}
+	
+	private VisionConfig(Builder builder) {
+		this.hueSpread = builder.hueSpread;
+		this.threshold = builder.threshold;
+		this.blur = builder.blur;
+		this.framerate = builder.framerate;
+		this.adaptive = builder.adaptive;
+		this.mask = builder.mask;
+		this.integral = builder.integral;
+		this.backProjection = builder.backProjection;
+		this.confidence = builder.confidence;
+		this.histograms = builder.histograms.clone();
+		this.shapes = builder.shapes.clone();
+		this.latencyBudget = builder.latencyBudget;
+	}
+	
+	/*
+	 * the parameters of a config that is being made, the with methods copy this
+	 * config into one and change only their own parameter
+	 */
+	private static class Builder {
+		private float hueSpread;
+		private float threshold;
+		private int blur;
+		private int framerate;
+		private boolean adaptive;
+		private ProcessingMask mask = ProcessingMask.NONE;
+		private boolean integral;
+		private boolean backProjection;
+		private float confidence = .1f;
+		private ColorHistogram[] histograms = new ColorHistogram[0];
+		private ShapeFilter[] shapes = new ShapeFilter[0];
+		private int latencyBudget;
+		
+		private Builder(float hueSpread, float threshold, int blur, int framerate) {
+			this.hueSpread = hueSpread;
+			this.threshold = threshold;
+			this.blur = blur;
+			this.framerate = framerate;
+		}
+		
+		private Builder(VisionConfig config) {
+			hueSpread = config.hueSpread;
+			threshold = config.threshold;
+			blur = config.blur;
+			framerate = config.framerate;
+			adaptive = config.adaptive;
+			mask = config.mask;
+			integral = config.integral;
+			backProjection = config.backProjection;
+			confidence = config.confidence;
+			histograms = config.histograms;
+			shapes = config.shapes;
+			latencyBudget = config.latencyBudget;
+		}
+	}
+	
+	public static VisionConfig defaults() {
+		return new VisionConfig(.05f, .4f, 10, 24);
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public float getHueSpread() {
+		return hueSpread;
+	}
+	
+	public float getThreshold() {
+		return threshold;
+	}
+	
+	public int getBlur() {
+		return blur;
+	}
+	
+	public int getFramerate() {
+		return framerate;
+	}
+	
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+	
+	public ProcessingMask getMask() {
+		return mask;
+	}
+	
+	public boolean isIntegral() {
+		return integral;
+	}
+	
+	public boolean isBackProjection() {
+		return backProjection;
+	}
+	
+	public float getConfidence() {
+		return confidence;
+	}
+	
+	public int getLatencyBudget() {
+		return latencyBudget;
+	}
+	
+	/*
+	 * what was learned for hues[index], EMPTY if nothing was
+	 */
+	public ColorHistogram getHistogram(int index) {
+		return index < histograms.length && histograms[index] != null ? histograms[index] : ColorHistogram.EMPTY;
+	}
+	
+	/*
+	 * the filter objects of hues[index] have to pass, null if there is none
+	 */
+	public ShapeFilter getShape(int index) {
+		return index < shapes.length ? shapes[index] : null;
+	}
+	
+	public VisionConfig withHueSpread(float hueSpread) {
+		Builder builder = new Builder(this);
+		builder.hueSpread = hueSpread;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withThreshold(float threshold) {
+		Builder builder = new Builder(this);
+		builder.threshold = threshold;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withBlur(int blur) {
+		Builder builder = new Builder(this);
+		builder.blur = blur;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withFramerate(int framerate) {
+		Builder builder = new Builder(this);
+		builder.framerate = framerate;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withAdaptive(boolean adaptive) {
+		Builder builder = new Builder(this);
+		builder.adaptive = adaptive;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withMask(ProcessingMask mask) {
+		Builder builder = new Builder(this);
+		builder.mask = mask;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withIntegral(boolean integral) {
+		Builder builder = new Builder(this);
+		builder.integral = integral;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withBackProjection(boolean backProjection) {
+		Builder builder = new Builder(this);
+		builder.backProjection = backProjection;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withConfidence(float confidence) {
+		Builder builder = new Builder(this);
+		builder.confidence = confidence;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withLatencyBudget(int latencyBudget) {
+		Builder builder = new Builder(this);
+		builder.latencyBudget = latencyBudget;
+		return new VisionConfig(builder);
+	}
+	
+	public VisionConfig withHistogram(int index, ColorHistogram histogram) {
+		Builder builder = new Builder(this);
+		builder.histograms = Arrays.copyOf(histograms, Math.max(histograms.length, index + 1));
+		builder.histograms[index] = histogram;
+		return new VisionConfig(builder);
+	}
+	
+	/*
+	 * null turns the filter of hues[index] off
+	 */
+	public VisionConfig withShape(int index, ShapeFilter shape) {
+		Builder builder = new Builder(this);
+		builder.shapes = Arrays.copyOf(shapes, Math.max(shapes.length, index + 1));
+		builder.shapes[index] = shape;
+		return new VisionConfig(builder);
+	}
+	
+	/*
+	 * sets a parameter by name, used for config files and the network
+	 * 
+	 * @throws IllegalArgumentException if the name is unknown or the value
+	 *             isn't a number or a boolean
+	 */
+	public VisionConfig with(String name, String value) {
+		value = value.trim();
+		switch (name.trim()) {
+			case "hueSpread":
+				return withHueSpread(Float.parseFloat(value));
+			case "threshold":
+				return withThreshold(Float.parseFloat(value));
+			case "blur":
+				return withBlur(Integer.parseInt(value));
+			case "framerate":
+				return withFramerate(Integer.parseInt(value));
+			case "adaptive":
+				if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+					throw new IllegalArgumentException("adaptive has to be true or false, not " + value);
+				return withAdaptive(Boolean.parseBoolean(value));
+			case "integral":
+				if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+					throw new IllegalArgumentException("integral has to be true or false, not " + value);
+				return withIntegral(Boolean.parseBoolean(value));
+			case "backProjection":
+				if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+					throw new IllegalArgumentException("backProjection has to be true or false, not " + value);
+				return withBackProjection(Boolean.parseBoolean(value));
+			case "confidence":
+				return withConfidence(Float.parseFloat(value));
+			case "latencyBudget":
+				return withLatencyBudget(Integer.parseInt(value));
+			case "excludeTop":
+				return withMask(mask.withTop(Float.parseFloat(value)));
+			case "excludeBottom":
+				return withMask(mask.withBottom(Float.parseFloat(value)));
+			case "excludeRegions":
+				return withMask(mask.withRegions(value));
+			default:
+				// histogram0, histogram1, ... for each color
+				if (name.trim().matches("histogram\\d+"))
+					return withHistogram(Integer.parseInt(name.trim().substring("histogram".length())), ColorHistogram.parse(value));
+				// shape0, shape1, ... the same way, see ShapeFilter.parse
+				if (name.trim().matches("shape\\d+"))
+					return withShape(Integer.parseInt(name.trim().substring("shape".length())), ShapeFilter.parse(value));
+				throw new IllegalArgumentException("Unknown parameter " + name);
+		}
+	}
+	
+	/*
+	 * the parameters in properties, anything missing is taken from this config
+	 */
+	public VisionConfig with(Properties properties) {
+		VisionConfig config = this;
+		for (String name : properties.stringPropertyNames()) {
+			try {
+				config = config.with(name, properties.getProperty(name));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Ignoring " + name + "=" + properties.getProperty(name) + ": " + e.getMessage());
+			}
+		}
+		return config;
+	}
+	
+	public Properties toProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("hueSpread", Float.toString(hueSpread));
+		properties.setProperty("threshold", Float.toString(threshold));
+		properties.setProperty("blur", Integer.toString(blur));
+		properties.setProperty("framerate", Integer.toString(framerate));
+		properties.setProperty("adaptive", Boolean.toString(adaptive));
+		properties.setProperty("integral", Boolean.toString(integral));
+		properties.setProperty("backProjection", Boolean.toString(backProjection));
+		properties.setProperty("confidence", Float.toString(confidence));
+		properties.setProperty("latencyBudget", Integer.toString(latencyBudget));
+		for (int i = 0; i < histograms.length; i++) {
+			if (!getHistogram(i).isEmpty())
+				properties.setProperty("histogram" + i, histograms[i].encode());
+		}
+		for (int i = 0; i < shapes.length; i++) {
+			if (shapes[i] != null)
+				properties.setProperty("shape" + i, shapes[i].encode());
+		}
+		properties.setProperty("excludeTop", Float.toString(mask.getTop()));
+		properties.setProperty("excludeBottom", Float.toString(mask.getBottom()));
+		properties.setProperty("excludeRegions", mask.getRegions());
+		return properties;
+	}
+	
+	/*
+	 * true if frames processed with either config give the same results, the
+	 * framerate, the summed area tables and the latency budget don't change
+	 * those. The resolution the budget picks is checked by the pipeline itself
+	 */
+	public boolean sameProcessing(VisionConfig other) {
+		return other != null && hueSpread == other.hueSpread && threshold == other.threshold && blur == other.blur && adaptive == other.adaptive && mask.equals(other.mask)
+				&& backProjection == other.backProjection && confidence == other.confidence && Arrays.equals(histograms, other.histograms)
+				&& Arrays.equals(shapes, other.shapes);
+	}
+	
+	public String toString() {
+		return "v" + version + " hueSpread=" + hueSpread + " threshold=" + threshold + " blur=" + blur + " framerate=" + framerate + " adaptive=" + adaptive + (integral ? " integral" : "") + (latencyBudget > 0 ? " latencyBudget=" + latencyBudget : "") + (backProjection ? " backProjection confidence=" + confidence + " " + Arrays.toString(histograms) : "") + (mask.isEmpty() ? "" : " mask " + mask) + (shapes.length > 0 ? " shapes " + Arrays.toString(shapes) : "");
+	}
+}
@@ -1,19 +1,47 @@
 package model.vision.hsvIsolate;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.TimeUnit;
-
-import com.github.sarxos.webcam.Webcam;
+import java.util.ArrayList;
+import java.util.List;
 
+import model.util.FastRGB;
+import model.vision.BitMask;
+import model.vision.BrightnessStats;
+import model.vision.ChangeDetector;
+import model.vision.ColorHistogram;
+import model.vision.CompiledConfig;
 import model.vision.Frame;
+import model.vision.IntegralImage;
+import model.vision.Pixel;
+import model.vision.ProcessingMask;
+import model.vision.kernel.VisionKernels;
 
 public class HSVIsolateController extends Frame {
 	float[] hues;
 	HSVIsolateFrame[] colorFrames;
 	int blurAmount;
-	private float thresholdCoeff;
-	private float hueSpread;
+	private HSVIsolateController previous;
+	private ChangeDetector changes;
+	private VisionKernels kernels;
+	private CompiledConfig config;
+	
+	// the frame as planes, pixel (row, col) is at row * width + col
+	private int width, height;
+	private int[] rgb;
+	private float[] hue, saturation, value;
+	// bit n is set where the pixel matched hues[n]
+	private byte[] classes;
+	// filled in by the conversion
+	private BrightnessStats stats;
+	// summed area tables of the value (0-255) and of each color, null unless the config asks for them
+	private IntegralImage valueSums;
+	private IntegralImage[] classSums;
+	// only rows firstRow up to lastRow are converted and classified
+	private ProcessingMask.Raster mask;
+	private int firstRow, lastRow;
+	// the rows worked out again as {from, to} stretches and per row, the others are copied from previous. Null when the whole frame is
+	private List<int[]> stretches;
+	private boolean[] redo;
 	
 //	public VisionFrameController(String file, float[] hues, int blurAmount, float thresholdCoeff, float hueSpread) {
 //		super(file);
@@ -36,76 +64,372 @@ public class HSVIsolateController extends Frame {
 //		
 //	}
 	
-	public HSVIsolateController(BufferedImage image, float[] hues, int blurAmount, float thresholdCoeff, float hueSpread) {
-		super(image);
-		this.hues = hues;
+	public HSVIsolateController(BufferedImage image, CompiledConfig config, VisionKernels kernels) {
+		this(image, config, null, null, kernels);
+	}
+	
+	/*
+	 * reuses the results of previous in tiles changes reports as unchanged,
+	 * previous must have been made with the same parameters. Conversion, blur,
+	 * isolation and the summed area tables redo the rows of changed tiles and
+	 * copy the rest, morphology and labelling only redo the changed tiles and
+	 * carry over the objects that lie entirely outside them
+	 */
+	public HSVIsolateController(BufferedImage image, CompiledConfig config, HSVIsolateController previous, ChangeDetector changes, VisionKernels kernels) {
+		super();
+		this.config = config;
+		this.hues = config.getHues();
 		this.colorFrames = new HSVIsolateFrame[hues.length];
-		this.blurAmount = blurAmount;
-		this.thresholdCoeff = thresholdCoeff;
-		this.hueSpread = hueSpread;
+		this.blurAmount = config.getConfig().getBlur();
+		this.previous = previous;
+		this.changes = changes;
+		this.kernels = kernels;
+		
+		convert(image);
 		
 		// filters
 		
-		if (blurAmount > 0) {
-			//			blur(blurAmount);
-			fastBlur(blurAmount);
-			
+		if (config.getBlurPasses() > 0) {
+			long startTime = System.currentTimeMillis();
+			if (stretches == null) {
+				kernels.blur(saturation, value, width, firstRow, lastRow, config.getBlurPasses());
+			} else {
+				for (int[] stretch : stretches)
+					kernels.blur(saturation, value, width, firstRow, lastRow, config.getBlurPasses(), stretch[0], stretch[1]);
+			}
+			System.out.println("Blurred\n" + (System.currentTimeMillis() - startTime));
+		}
+		// after the blur, which scrambles the rows around the stretches
+		copyUnchanged(hue, previous == null ? null : previous.hue);
+		copyUnchanged(saturation, previous == null ? null : previous.saturation);
+		copyUnchanged(value, previous == null ? null : previous.value);
+		if (config.isIntegral()) {
+			valueSums = new IntegralImage(width, height);
+			kernels.integrate(valueSums, value, 255, firstRow, lastRow, previous == null ? null : previous.valueSums, redo);
 		}
 		
+		isolate();
 		populateVisionFrames();
 		process();
-		concatenateColors();
 		
 	}
 	
+	private void convert(BufferedImage image) {
+		long startTime = System.currentTimeMillis();
+		FastRGB img = new FastRGB(image);
+		width = img.width;
+		height = img.height;
+		// the rows the mask leaves out are never even unpacked, they stay black
+		mask = config.getMask().rasterize(width, height);
+		firstRow = mask.getFirstRow();
+		lastRow = mask.getLastRow();
+		// all of it, the preview shows the picture as it is now
+		rgb = img.getRGB(null, firstRow * width, lastRow * width);
+		hue = new float[rgb.length];
+		saturation = new float[rgb.length];
+		value = new float[rgb.length];
+		findChangedRows();
+		if (stretches == null) {
+			// carries on the running levels from the frame before
+			stats = new BrightnessStats(previous == null ? null : previous.stats);
+			kernels.convert(rgb, hue, saturation, value, stats, firstRow * width, lastRow * width);
+		} else {
+			// the brightness of part of the frame is no guide to all of it, and the copied classes were made with the old cutoffs
+			stats = previous.stats;
+			BrightnessStats unused = new BrightnessStats();
+			int reach = config.getBlurPasses() * config.getBlurPasses();
+			for (int[] stretch : stretches) {
+				int from = Math.max(firstRow, stretch[0] - reach), to = Math.min(lastRow, stretch[1] + reach);
+				kernels.convert(rgb, hue, saturation, value, unused, from * width, to * width);
+			}
+		}
+		System.out.println("Read image\n" + (System.currentTimeMillis() - startTime));
+	}
+	
+	/*
+	 * the rows of tiles changes has as changed, stretches that are less than two
+	 * blur reaches apart are joined so blurring one doesn't scramble what the
+	 * next one reads. Leaves stretches null if the whole frame has to be done
+	 */
+	private void findChangedRows() {
+		if (previous == null || changes == null || previous.width != width || previous.height != height || previous.firstRow != firstRow
+				|| previous.lastRow != lastRow)
+			return;
+		if (config.isIntegral() && (previous.valueSums == null || previous.classSums == null || previous.classSums.length != hues.length))
+			return;
+		int tileSize = changes.getTileSize();
+		int reach = config.getBlurPasses() * config.getBlurPasses();
+		// changed tiles are grown by a tile, so the blur of an unchanged row only reaches changed pixels if it reaches further
+		if (reach > tileSize)
+			return;
+		List<int[]> found = new ArrayList<int[]>();
+		for (int row = firstRow - firstRow % tileSize; row < lastRow; row += tileSize) {
+			int from = Math.max(firstRow, row), to = Math.min(lastRow, row + tileSize);
+			if (!changes.isRegionDirty(from, 0, to - 1, width - 1))
+				continue;
+			int[] last = found.isEmpty() ? null : found.get(found.size() - 1);
+			if (last != null && from - last[1] <= 2 * reach)
+				last[1] = to;
+			else
+				found.add(new int[] { from, to });
+		}
+		if (found.size() == 1 && found.get(0)[0] == firstRow && found.get(0)[1] == lastRow)
+			return;
+		stretches = found;
+		redo = new boolean[height];
+		for (int[] stretch : stretches) {
+			for (int row = stretch[0]; row < stretch[1]; row++)
+				redo[row] = true;
+		}
+	}
+	
+	/*
+	 * the rows between firstRow and lastRow that weren't redone, from the same
+	 * plane of previous
+	 */
+	private void copyUnchanged(Object plane, Object previousPlane) {
+		if (stretches == null)
+			return;
+		int from = firstRow;
+		for (int[] stretch : stretches) {
+			System.arraycopy(previousPlane, from * width, plane, from * width, (stretch[0] - from) * width);
+			from = stretch[1];
+		}
+		System.arraycopy(previousPlane, from * width, plane, from * width, (lastRow - from) * width);
+	}
+	
+	private void isolate() {
+		long startTime = System.currentTimeMillis();
+		classes = new byte[rgb.length];
+		float threshold = config.getThreshold();
+		float valueCutoff = config.getValueCutoff();
+		if (config.isAdaptive()) {
+			threshold = stats.getThreshold(threshold);
+			valueCutoff = stats.getValueCutoff(valueCutoff);
+		}
+		List<int[]> rows = stretches;
+		if (rows == null) {
+			rows = new ArrayList<int[]>();
+			rows.add(new int[] { firstRow, lastRow });
+		}
+		for (int[] stretch : rows) {
+			if (config.isBackProjection()) {
+				// the learned histograms already cover saturation, only the value cutoff is left
+				kernels.backProject(hue, saturation, value, classes, config.getColorTable(), ColorHistogram.HUE_BINS, ColorHistogram.SATURATION_BINS, valueCutoff,
+						stretch[0] * width, stretch[1] * width);
+			} else {
+				kernels.isolate(hue, saturation, value, classes, config.getHueTable(), threshold, valueCutoff, stretch[0] * width, stretch[1] * width);
+			}
+		}
+		copyUnchanged(classes, previous == null ? null : previous.classes);
+		mask.apply(classes);
+		if (config.isIntegral()) {
+			classSums = new IntegralImage[hues.length];
+			for (int i = 0; i < classSums.length; i++)
+				classSums[i] = new IntegralImage(width, height);
+			kernels.integrate(classSums, classes, firstRow, lastRow, previous == null ? null : previous.classSums, redo);
+		}
+		System.out.println("Isolated colors\n" + (System.currentTimeMillis() - startTime));
+	}
+	
 	private void populateVisionFrames() {
 		long startTime = System.currentTimeMillis();
 		for (int i = 0; i < colorFrames.length; i++) {
-			colorFrames[i] = new HSVIsolateFrame(pixels, hues[i], thresholdCoeff, hueSpread);
+			if (previous != null && changes != null) {
+				colorFrames[i] = new HSVIsolateFrame(classes, i, width, height, hues[i], previous.colorFrames[i], changes);
+			} else {
+				colorFrames[i] = new HSVIsolateFrame(classes, i, width, height, hues[i]);
+			}
+			colorFrames[i].setShapeFilter(config.getShape(i));
 		}
+		previous = null;
 		System.out.println("Populated frames");
 		System.out.println(System.currentTimeMillis() - startTime);
 	}
 	
 	private void process() {
 		long startTime = System.currentTimeMillis();
-		// assign threads
-		for (int i = 0; i < colorFrames.length; i++) {
-			colorFrames[i].start();
+		// one task per color on the workers every camera shares, returns once all are done.
+		// Each color splits into more tasks, a worker that runs out takes them from the busiest color
+		kernels.runAll(colorFrames);
+		System.out.println("Processed Color frames");
+		System.out.println(System.currentTimeMillis() - startTime);
+	}
+	
+	/*
+	 * the pixels are only needed for the preview, so they are made on the first
+	 * call instead of every frame
+	 */
+	@Override
+	public synchronized Pixel[][] getPixels2D() {
+		if (pixels == null) {
+			pixels = new Pixel[height][width];
+			for (int row = 0; row < height; row++) {
+				for (int col = 0; col < width; col++) {
+					int i = row * width + col;
+					pixels[row][col] = new Pixel(hue[i], saturation[i], value[i]);
+				}
+			}
+			concatenateColors();
 		}
-		
-		// wait till all threads complete
-		for (int i = 0; i < colorFrames.length; i++) {
-			while (colorFrames[i].isAlive()) {
-				
+		return pixels;
+	}
+	
+	/*
+	 * the camera image as 0xRRGGBB, row major
+	 */
+	public int[] getRGB() {
+		return rgb;
+	}
+	
+	public HSVIsolateFrame[] getColorFrames() {
+		return colorFrames;
+	}
+	
+	/*
+	 * the camera frame over the size this was processed at, pixel positions
+	 * times this are camera pixels
+	 */
+	public int getScale() {
+		return config.getScale();
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public float getAverageBrightness() {
+		return stats.getAverageBrightness();
+	}
+	
+	public BrightnessStats getBrightnessStats() {
+		return stats;
+	}
+	
+	/*
+	 * histogram with the pixels of object added, as this frame saw them after the
+	 * blur, which is what gets classified
+	 */
+	public ColorHistogram sampleColors(HSVIsolateObject object, ColorHistogram histogram) {
+		float valueCutoff = config.isAdaptive() ? stats.getValueCutoff(config.getValueCutoff()) : config.getValueCutoff();
+		return histogram.withSamples(hue, saturation, value, object.getRuns(), width, valueCutoff);
+	}
+	
+	/*
+	 * null unless the config builds summed area tables
+	 */
+	public IntegralImage getValueSums() {
+		return valueSums;
+	}
+	
+	public IntegralImage getClassSums(int hueIndex) {
+		return classSums == null ? null : classSums[hueIndex];
+	}
+	
+	/*
+	 * mean value (0-1) over the rectangle, corners included, after the blur.
+	 * Four lookups with summed area tables, a scan of the rectangle without
+	 */
+	public double getBrightness(int minRow, int minCol, int maxRow, int maxCol) {
+		if (valueSums != null)
+			return valueSums.getMean(minRow, minCol, maxRow, maxCol) / 255;
+		minRow = Math.max(0, minRow);
+		minCol = Math.max(0, minCol);
+		maxRow = Math.min(height - 1, maxRow);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minRow > maxRow || minCol > maxCol)
+			return 0;
+		double total = 0;
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				total += value[row * width + col];
 			}
 		}
-		System.out.println("Processed Color frames");
-		System.out.println(System.currentTimeMillis() - startTime);
+		return total / ((maxRow - minRow + 1) * (maxCol - minCol + 1));
+	}
+	
+	/*
+	 * mean value over the bounding box of the object
+	 */
+	public double getBrightness(HSVIsolateObject object) {
+		int[] bounds = object.getBounds();
+		return getBrightness(bounds[0], bounds[1], bounds[2], bounds[3]);
+	}
+	
+	/*
+	 * fraction of the pixels in the rectangle that matched hues[hueIndex] before
+	 * the objects were cleaned up, a quick check of how full a region of interest
+	 * is
+	 */
+	public double getDensity(int hueIndex, int minRow, int minCol, int maxRow, int maxCol) {
+		if (classSums != null)
+			return classSums[hueIndex].getMean(minRow, minCol, maxRow, maxCol);
+		minRow = Math.max(0, minRow);
+		minCol = Math.max(0, minCol);
+		maxRow = Math.min(height - 1, maxRow);
+		maxCol = Math.min(width - 1, maxCol);
+		if (minRow > maxRow || minCol > maxCol)
+			return 0;
+		int count = 0;
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				count += (classes[row * width + col] >> hueIndex) & 1;
+			}
+		}
+		return (double) count / ((maxRow - minRow + 1) * (maxCol - minCol + 1));
 	}
 	
 	private void concatenateColors() {
 		long startTime = System.currentTimeMillis();
-		for (Frame frame : colorFrames) {
-			for (int row = 0; row < pixels.length; row++) {
-				for (int col = 0; col < pixels[0].length; col++) {
-					if (!frame.pixels[row][col].isBlack()) {
-						pixels[row][col] = frame.pixels[row][col];
+		for (HSVIsolateFrame frame : colorFrames) {
+			BitMask mask = frame.getObjectMask();
+			long[] words = mask.getWords();
+			int wordsPerRow = mask.getWordsPerRow();
+			for (int row = 0; row < height; row++) {
+				for (int w = 0; w < wordsPerRow; w++) {
+					long word = words[row * wordsPerRow + w];
+					while (word != 0) {
+						int col = (w << 6) + Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+						pixels[row][col] = new Pixel(frame.getHue(), 1f, 1f);
 					}
 				}
 			}
+			for (HSVIsolateObject object : frame.getObjects()) {
+				int[] com = object.getCOM();
+				drawBox(com[0], com[1], 0xFF00FF, (int) (.25 * Math.sqrt(object.getArea()) / 2));
+			}
 		}
 		System.out.println("Concatenated Color frames");
 		System.out.println(System.currentTimeMillis() - startTime);
 	}
 	
-	public HSVIsolateFrame getColoredFrame(float hue) {
-		for (int i = 0; i < colorFrames.length; i++) {
-			if (hue == hues[i]) {
-				return colorFrames[i];
-			}
+	/*
+	 * every object of every color in one mask
+	 */
+	public BitMask getObjectMask() {
+		BitMask mask = new BitMask(width, height);
+		for (HSVIsolateFrame frame : colorFrames) {
+			mask.or(frame.getObjectMask());
 		}
-		return new HSVIsolateFrame(getWidth(), getHeight(), hue, thresholdCoeff, hueSpread);
+		return mask;
+	}
+	
+	/*
+	 * the objects of hues[hueIndex], by position so a hue that was changed since
+	 * this frame was made still finds its color. Empty if there is no such color
+	 */
+	public HSVIsolateFrame getColoredFrame(int hueIndex) {
+		if (hueIndex >= 0 && hueIndex < colorFrames.length)
+			return colorFrames[hueIndex];
+		return new HSVIsolateFrame(getHeight(), getWidth(), 0);
 	}
 	
 }
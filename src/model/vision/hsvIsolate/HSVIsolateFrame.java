@@ -1,14 +1,31 @@
 package model.vision.hsvIsolate;
 
-import java.awt.Color;
-import java.awt.color.ColorSpace;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
-import model.vision.Frame;
+import model.vision.BitMask;
+import model.vision.ChangeDetector;
+import model.vision.ComponentLabeller;
+import model.vision.Contour;
+import model.vision.Morphology;
 import model.vision.Pixel;
+import model.vision.RunLength;
+import model.vision.ShapeFilter;
+import model.vision.StructuringElement;
 
-public class HSVIsolateFrame extends Frame {
+/*
+ * Finds the objects of one color. Runs as a task on a work stealing pool, and
+ * splits its own work into more tasks there: the mask is labelled a band of
+ * rows at a time and every object is traced on its own, so idle workers help
+ * out whichever color has the most to do
+ */
+public class HSVIsolateFrame extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	
+	// rows labelled by one task
+	private static final int BAND_ROWS = 32;
 	
 	private List<HSVIsolateObject> objects;
 	
@@ -16,162 +33,165 @@ public class HSVIsolateFrame extends Frame {
 	
 	protected float hueToIsolate;
 	
-	private float threshold;
-	private float hueSpread;
+	// output of the threshold kernel, bit hueIndex is this frame's color
+	private byte[] classes;
+	private int hueIndex;
+	private int width, height;
+	
+	// pixels of this color that are not part of an object yet
+	private BitMask mask;
+	// all objects found in this frame
+	private BitMask objectMask;
+	
+	private StructuringElement closeElement = StructuringElement.rectangle(5, 5);
+	private StructuringElement openElement = StructuringElement.rectangle(3, 3);
+	// objects that don't pass are dropped, null keeps everything big enough
+	private ShapeFilter shape;
+	
+	// results of the last frame, only used when the scene changed in some tiles
+	private HSVIsolateFrame previous;
+	private ChangeDetector changes;
+	private List<HSVIsolateObject> redoneObjects;
+	// the pixels of the carried over objects, null when everything is redone
+	private BitMask carried;
 	
-	public HSVIsolateFrame(Pixel[][] pixels, float hueToIsolate, float threshold, float hueSpread) {
-		super(pixels);
+	public HSVIsolateFrame(byte[] classes, int hueIndex, int width, int height, float hueToIsolate) {
+		this.classes = classes;
+		this.hueIndex = hueIndex;
+		this.width = width;
+		this.height = height;
 		this.hueToIsolate = hueToIsolate;
 		this.objects = new ArrayList<HSVIsolateObject>();
-		this.threshold = threshold;
-		this.hueSpread = hueSpread;
 	}
 	
-	public HSVIsolateFrame(int rows, int cols, float hueToIsolate, float threshold, float hueSpread) {
-		super(rows, cols);
+	/*
+	 * only traces the tiles that changed since previous, objects that lie
+	 * entirely in unchanged tiles are carried over
+	 */
+	public HSVIsolateFrame(byte[] classes, int hueIndex, int width, int height, float hueToIsolate, HSVIsolateFrame previous, ChangeDetector changes) {
+		this(classes, hueIndex, width, height, hueToIsolate);
+		this.previous = previous;
+		this.changes = changes;
+	}
+	
+	public HSVIsolateFrame(int rows, int cols, float hueToIsolate) {
+		this.width = cols;
+		this.height = rows;
 		this.hueToIsolate = hueToIsolate;
 		this.objects = new ArrayList<HSVIsolateObject>();
-		this.threshold = threshold;
-		this.hueSpread = hueSpread;
+		this.mask = new BitMask(cols, rows);
+		this.objectMask = new BitMask(cols, rows);
 	}
 	
 	// entry point
-	public void run() {
-		this.colorIsolate(hueToIsolate, hueSpread, threshold);
-		this.drawBlackBorder();
+	protected void compute() {
+		if (previous != null && changes != null) {
+			this.reuseUnchangedObjects();
+		}
+		this.maskFromClasses();
+		this.cleanUpMask();
 		this.breakIntoObjects(.0005);
 		this.concatenateObjects();
-		
-		// this.colorIsolate(colorToIsolate, .7, 1.2);
-		// this.drawCOM(Color.MAGENTA, .25);
-		// System.out.println(this.getArea());
 	}
 	
 	private void concatenateObjects() {
-		for (HSVIsolateObject frame : objects) {
-			
-			for (int row = 0; row < pixels.length; row++) {
-				for (int col = 0; col < pixels[0].length; col++) {
-					if (!frame.pixels[row][col].isBlack()) {
-						this.pixels[row][col] = frame.pixels[row][col];
-					}
-				}
+		objectMask = new BitMask(width, height);
+		for (HSVIsolateObject object : objects) {
+			object.getRuns().paint(objectMask);
+		}
+	}
+	
+	private void reuseUnchangedObjects() {
+		redoneObjects = new ArrayList<HSVIsolateObject>();
+		for (HSVIsolateObject object : previous.getObjects()) {
+			int[] bounds = object.getBounds();
+			if (changes.isRegionDirty(bounds[0], bounds[1], bounds[2], bounds[3])) {
+				redoneObjects.add(object);
+			} else {
+				objects.add(object);
 			}
 		}
+		// nothing else needs the last frame, don't keep a chain of them alive
+		previous = null;
 	}
 	
-	private void breakIntoObjects(double minimumArea) {
-		HSVIsolateObject object;
-		for (int row = 0; row < pixels.length; row++) {
-			for (int col = 0; col < pixels[0].length; col++) {
-				try {
-					if (!pixels[row][col].isBlack()) {
-						object = findObject(row, col, getHeight() / 20);
-						if (((double) pixels.length * (double) pixels[0].length) * minimumArea < ((double) object.getArea())) {
-							object.drawCOM(Color.MAGENTA, .25);
-							objects.add(object);
-							
-						}
-					}
-				} catch (NullPointerException e) {
+	/*
+	 * picks this color out of the isolated pixels. With a change detector only
+	 * changed tiles and objects from the last frame that have to be traced again
+	 * are kept, everything else is either a carried over object or was too small
+	 * to be one last frame
+	 */
+	private void maskFromClasses() {
+		mask = BitMask.fromClasses(classes, hueIndex, width, height);
+		carried = null;
+		if (redoneObjects != null) {
+			BitMask changed = new BitMask(width, height);
+			int tileSize = changes.getTileSize();
+			for (int row = 0; row < height; row += tileSize) {
+				for (int col = 0; col < width; col += tileSize) {
+					if (changes.isDirty(row, col))
+						changed.setRect(row, col, row + tileSize - 1, col + tileSize - 1);
 				}
 			}
+			for (HSVIsolateObject object : redoneObjects) {
+				int[] bounds = object.getBounds();
+				changed.setRect(bounds[0], bounds[1], bounds[2], bounds[3]);
+			}
+			// the box of a redone object can reach over a carried one, which mustn't be found a second time
+			carried = new BitMask(width, height);
+			for (HSVIsolateObject object : objects) {
+				object.getRuns().paint(carried);
+			}
+			changed.andNot(carried);
+			mask.and(changed);
+			redoneObjects = null;
 		}
 	}
 	
-	private HSVIsolateObject findObject(int startRow, int startCol, int fudgeFactor) {
-		int col = startCol;
-		int row = startRow;
-		int maxRow = startRow;
-		int maxCol = startCol;
-		int minCol = startCol;
-		int minRow = startRow;
-		// new empty VisionObject
-		HSVIsolateObject object = new HSVIsolateObject(pixels.length, pixels[0].length, new Color(hueToIsolate, 1f, 1f));
-		/*
-		 * 0: north, 1: East, 2: South, 3: West
-		 */
-		int direction = 1;
-		
-		// find boundingBox, an algorithm that always follows the left wall until
-		// it comes back to it's original position
-		// for my later self: https://github.com/jackrzhang/maze-solver
-		do {
-			/*
-			 * row - 1 = North, row + 1 = South, col + 1 = East, col - 1 = West
-			 */
-			switch (direction) {
-				case 0: // North
-					if (!pixels[row][col - 1].isBlack()) {// turn left
-						direction = 3;
-						col--;
-					} else if (!pixels[row - 1][col].isBlack()) {// go straight
-						row--;
-					} else {
-						direction++;
-					}
-					break;
-				case 1: // East
-					if (!pixels[row - 1][col].isBlack()) {// turn left
-						direction--;
-						row--;
-					} else if (!pixels[row][col + 1].isBlack()) {// go straight
-						col++;
-					} else {
-						direction++;
-					}
-					break;
-				case 2: // South
-					if (!pixels[row][col + 1].isBlack()) {// turn left
-						direction--;
-						col++;
-					} else if (!pixels[row + 1][col].isBlack()) {// go straight
-						row++;
-					} else {
-						direction++;
-					}
-					break;
-				case 3: // West
-					if (!pixels[row + 1][col].isBlack()) {// turn left
-						direction--;
-						row++;
-					} else if (!pixels[row][col - 1].isBlack()) {// go straight
-						col--;
-					} else {
-						direction = 0;
-					}
-					break;
-			}
-			
-			if (minRow > row)
-				minRow = row;
-			if (maxRow < row)
-				maxRow = row;
-			if (minCol > col)
-				minCol = col;
-			if (maxCol < col)
-				maxCol = col;
-			
-		} while ((col != startCol) || (row != startRow));
-		Color color = Color.getHSBColor(hueToIsolate, 1f, 1f);
-		
-		// find pixels within bounding box
-		for (row = minRow - fudgeFactor; row < maxRow + fudgeFactor; row++) {
-			for (col = minCol - fudgeFactor; col < maxCol + fudgeFactor; col++) {
-				try {
-					if (!pixels[row][col].isBlack()) {
-						pixels[row][col].setColor(Color.black);
-						object.pixels[row][col].setColor(color);
-					}
-				} catch (ArrayIndexOutOfBoundsException e) {
-				}
+	/*
+	 * closing bridges the gaps noise leaves in an object, opening then removes
+	 * the specks that are too small to be anything
+	 */
+	private void cleanUpMask() {
+		if (closeElement != null)
+			mask = Morphology.close(mask, closeElement);
+		if (openElement != null)
+			mask = Morphology.open(mask, openElement);
+		// closing can grow the redone pixels back into a carried object
+		if (carried != null)
+			mask.andNot(carried);
+	}
+	
+	public void setMorphology(StructuringElement closeElement, StructuringElement openElement) {
+		this.closeElement = closeElement;
+		this.openElement = openElement;
+	}
+	
+	public void setShapeFilter(ShapeFilter shape) {
+		this.shape = shape;
+	}
+	
+	/*
+	 * labels the mask in bands and joins them, area, centre and shape of each
+	 * group are added up from its runs on the way. Only the groups that are kept
+	 * get their outlines traced
+	 */
+	private void breakIntoObjects(double minimumArea) {
+		ComponentLabeller labeller = new ComponentLabeller(mask, BAND_ROWS);
+		invokeAll(labeller.getBands());
+		List<HSVIsolateObject> found = new ArrayList<HSVIsolateObject>();
+		List<ForkJoinTask<?>> outlines = new ArrayList<ForkJoinTask<?>>();
+		for (RunLength runs : labeller.merge()) {
+			if (((double) width * (double) height) * minimumArea < ((double) runs.getArea()) && (shape == null || shape.accepts(runs.getMoments()))) {
+				HSVIsolateObject object = new HSVIsolateObject(runs, height, width, Pixel.hsbToRGB(hueToIsolate, 1f, 1f));
+				int[] bounds = runs.getBounds();
+				object.setBounds(bounds[0], bounds[1], bounds[2], bounds[3]);
+				found.add(object);
+				outlines.add(ForkJoinTask.adapt(() -> object.setContour(Contour.trace(runs))));
 			}
 		}
-		
-		int[] center = new int[] { (maxRow + minRow) / 2, (maxCol + minCol) / 2 };
-		
-		return object;
-		
+		invokeAll(outlines);
+		objects.addAll(found);
 	}
 	
 	public HSVIsolateObject getLargestObject() {
@@ -188,7 +208,7 @@ public class HSVIsolateFrame extends Frame {
 			}
 			return objects.get(largestIndex);
 		} catch (IndexOutOfBoundsException e) {
-			return new HSVIsolateObject(pixels.length, pixels[0].length, new Color(hueToIsolate, 1, 1));
+			return new HSVIsolateObject(height, width, Pixel.hsbToRGB(hueToIsolate, 1f, 1f));
 		}
 	}
 	
@@ -196,4 +216,15 @@ public class HSVIsolateFrame extends Frame {
 		return objects;
 	}
 	
+	/*
+	 * all objects of this color in one mask
+	 */
+	public BitMask getObjectMask() {
+		return objectMask;
+	}
+	
+	public float getHue() {
+		return hueToIsolate;
+	}
+	
 }
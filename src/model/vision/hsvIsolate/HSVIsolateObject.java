@@ -1,38 +1,220 @@
 package model.vision.hsvIsolate;
 
-import java.awt.Color;
+import model.vision.BitMask;
+import model.vision.CameraModel;
+import model.vision.Contour;
+import model.vision.Moments;
+import model.vision.RunLength;
+import model.vision.TargetGeometry;
 
-import model.vision.Frame;
-import model.vision.Pixel;
+public class HSVIsolateObject {
 
-public class HSVIsolateObject extends Frame{
-
-	private Color color;
+	// 0xRRGGBB
+	private int color;
 	
 	private final double cameraCoeff = 1.1; // used to calibrate distance
+	
+	// size of the frame it was found in
+	private int width, height;
+	// the pixels of the object as row runs, with their moments
+	private RunLength runs;
+	// the outer boundary, null if it wasn't traced
+	private Contour contour;
+	
+	// bounding box of the object, the exact bounds of its runs
+	private int minRow, minCol, maxRow, maxCol;
+	
+	private int[] com;
+	// worked out from the contour the first time they are asked for
+	private double[][] corners;
 
 	/*
-	 * the default constructor for an object, assumes that pixels is a continuous object
+	 * the default constructor for an object, assumes that runs are a continuous
+	 * object
 	 * 
-	 * @param pixels the black and white image with white being the image
-	 * @param color the color of the object
+	 * @param runs the rows the object covers
+	 * @param color the color of the object as 0xRRGGBB
 	 */
-	public HSVIsolateObject(Pixel[][] pixels, Color color) {
-		super(pixels);
+	public HSVIsolateObject(RunLength runs, int rows, int cols, int color) {
+		this.runs = runs;
+		this.height = rows;
+		this.width = cols;
 		this.color = color;
 	}
-	public HSVIsolateObject(int rows, int cols, Color color) {
-		super(rows, cols);
-		this.color = color;
+	public HSVIsolateObject(int rows, int cols, int color) {
+		this(new RunLength(), rows, cols, color);
 	}
-	public Color getColor() {
+	public int getColor() {
 		return color;
 	}
 	
+	public RunLength getRuns() {
+		return runs;
+	}
+	
+	/*
+	 * the object drawn into a mask the size of the frame, made every time it is
+	 * asked for
+	 */
+	public BitMask getMask() {
+		BitMask mask = new BitMask(width, height);
+		runs.paint(mask);
+		return mask;
+	}
+	
+	public void setContour(Contour contour) {
+		this.contour = contour;
+	}
+	
+	/*
+	 * the outline, null for an object that was never traced
+	 */
+	public Contour getContour() {
+		return contour;
+	}
+	
+	/*
+	 * the four corners of the outline as {col, row}, top left first and going
+	 * clockwise, null if the object wasn't traced or has no area
+	 */
+	public synchronized double[][] getCorners() {
+		if (corners == null && contour != null)
+			corners = TargetGeometry.findCorners(contour);
+		return corners;
+	}
+	
+	/*
+	 * {x right, y down, z forward, yaw, pitch, roll} of the object taken as a
+	 * targetWidth by targetHeight rectangle, see TargetGeometry.solvePose. null if
+	 * it has no corners
+	 */
+	public double[] getPose(CameraModel camera, double targetWidth, double targetHeight) {
+		double[][] corners = getCorners();
+		return corners == null ? null : TargetGeometry.solvePose(corners, camera, width, height, targetWidth, targetHeight);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public void setBounds(int minRow, int minCol, int maxRow, int maxCol) {
+		this.minRow = minRow;
+		this.minCol = minCol;
+		this.maxRow = maxRow;
+		this.maxCol = maxCol;
+	}
+	
+	/*
+	 * added up from the runs while the object was traced
+	 */
+	public Moments getMoments() {
+		return runs.getMoments();
+	}
+	
+	/*
+	 * angle of the long axis in radians, 0 along the columns and positive towards
+	 * increasing rows
+	 */
+	public double getOrientation() {
+		return getMoments().getOrientation();
+	}
+	
+	/*
+	 * long side over short side of the oriented box
+	 */
+	public double getAspectRatio() {
+		return getMoments().getAspectRatio();
+	}
+	
+	/*
+	 * the rectangle with the same moments as the object, corners as {col, row}
+	 */
+	public double[][] getOrientedBox() {
+		return getMoments().getOrientedBox();
+	}
+	
+	public int[] getBounds() {
+		return new int[] { minRow, minCol, maxRow, maxCol };
+	}
+	
+	public boolean boundsContain(int row, int col) {
+		return row >= minRow && row <= maxRow && col >= minCol && col <= maxCol;
+	}
+	
+	/*
+	 * number of pixels in the object
+	 */
+	public int getArea() {
+		return (int) runs.getArea();
+	}
+	
+	/*
+	 * center of mass as {col, row}, {0, 0} for an empty object
+	 */
+	public int[] getCOM() {
+		if (com == null) {
+			Moments moments = getMoments();
+			if (moments.getArea() == 0) {
+				com = new int[] { 0, 0 };
+			} else {
+				com = new int[] { (int) (moments.getM10() / moments.getArea()), (int) (moments.getM01() / moments.getArea()) };
+			}
+		}
+		return new int[] { com[0], com[1] };
+	}
+	
+	public double[] getAngle(double FOV) {
+		int[] com = getCOM();
+		double[] angles = new double[2];
+		
+		angles[0] = ((double) com[0] * FOV) / (double) getWidth();
+		angles[1] = ((double) com[1] * FOV) / (double) getHeight();
+		
+		return angles;
+	}
+	
+	public double[] getAngleOffCenter(double FOV) {
+		int[] com = getCOM();
+		if (com[0] == 0 && com[1] == 0)
+			return new double[] { 0, 0 };
+		
+		double[] angles = getAngle(FOV);
+		angles[0] -= FOV / 2;
+		angles[1] -= FOV / 2;
+		angles[1] *= -1;
+		
+		return angles;
+	}
+	
+	/*
+	 * {right, up} in degrees from the centre of the camera to the centre of
+	 * mass, {0, 0} for an empty object
+	 */
+	public double[] getAngleOffCenter(CameraModel camera) {
+		int[] com = getCOM();
+		if (com[0] == 0 && com[1] == 0)
+			return new double[] { 0, 0 };
+		return camera.getAngles(getWidth(), getHeight(), com[0], com[1]);
+	}
+	
+	/*
+	 * inches along the floor to where the bottom of the object touches it, NaN if
+	 * the camera's mounting isn't known or nothing was found
+	 */
+	public double getFloorDistance(CameraModel camera) {
+		if (getArea() == 0)
+			return Double.NaN;
+		return camera.getFloorDistance(getWidth(), getHeight(), getCOM()[0], maxRow);
+	}
+	
 	public double getDistanceFeet(double widthInches, double heightInches) {
-		return (Math.sqrt(pixels[0].length * pixels.length) / Math.sqrt(getArea()) * ((widthInches + heightInches) / 2)
+		return (Math.sqrt(getWidth() * getHeight()) / Math.sqrt(getArea()) * ((widthInches + heightInches) / 2)
 				* .095 * cameraCoeff);
 	}
 	
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package model.vision.hsvIsolate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.vision.ChangeDetector;
+
+/*
+ * Follows the objects of each color across frames so a target keeps its id and
+ * the "nearest" one doesn't flip between two that are about the same size.
+ * Objects are matched to the tracks' predicted positions greedily, closest pair
+ * first, and every matched track runs an alpha-beta filter on its centre of
+ * mass. One per camera, updated by its pipeline and read by clients
+ */
+public class TargetTracker {
+
+	// how far each new position and the velocity it implies pull the filter
+	private static final double ALPHA = .6;
+	private static final double BETA = .3;
+	// found this many times before it is reported
+	private static final int CONFIRM_HITS = 3;
+	// dropped after this many frames in a row without a match
+	private static final int MAX_MISSES = 5;
+	// an object further than this many target sizes from a prediction starts a new track
+	private static final double GATE = 1.5;
+	private static final double MIN_GATE = 20;
+	// another target has to be this much bigger to take over as the primary one
+	private static final double SWITCH_RATIO = 1.3;
+	// how far around a moving target's predicted bounds gets looked at again
+	private static final int SEARCH_MARGIN = 8;
+	// pixels, a target predicted to move less than this in a frame counts as standing still
+	private static final double MIN_MOVE = 1;
+
+	private List<Track> tracks = new ArrayList<Track>();
+	// per color, the track the primary target belongs to
+	private Track[] primary = new Track[0];
+	private int nextId = 1;
+
+	/**
+	 * Matches the objects of result to the tracks
+	 *
+	 * @param time
+	 *            System.nanoTime() when the camera frame behind result arrived
+	 */
+	public synchronized void update(HSVIsolateController result, long time) {
+		HSVIsolateFrame[] frames = result.getColorFrames();
+		if (primary.length != frames.length)
+			primary = new Track[frames.length];
+
+		List<Track> kept = new ArrayList<Track>();
+		for (int hueIndex = 0; hueIndex < frames.length; hueIndex++) {
+			List<Track> hueTracks = new ArrayList<Track>();
+			for (Track track : tracks) {
+				if (track.getHueIndex() == hueIndex)
+					hueTracks.add(track);
+			}
+			match(hueIndex, hueTracks, frames[hueIndex].getObjects(), time);
+			for (Track track : hueTracks) {
+				if (track.misses <= MAX_MISSES)
+					kept.add(track);
+			}
+			choosePrimary(hueIndex, hueTracks);
+		}
+		tracks = kept;
+	}
+
+	private void match(int hueIndex, List<Track> hueTracks, List<HSVIsolateObject> objects, long time) {
+		// every pair inside the gate, closest first
+		List<double[]> pairs = new ArrayList<double[]>();
+		for (int t = 0; t < hueTracks.size(); t++) {
+			Track track = hueTracks.get(t);
+			double[] predicted = track.predict(time);
+			double gate = Math.max(MIN_GATE, GATE * Math.sqrt(track.object.getArea()));
+			for (int o = 0; o < objects.size(); o++) {
+				int[] com = objects.get(o).getCOM();
+				double distance = Math.hypot(com[0] - predicted[0], com[1] - predicted[1]);
+				if (distance <= gate)
+					pairs.add(new double[] { distance, t, o });
+			}
+		}
+		Collections.sort(pairs, (a, b) -> Double.compare(a[0], b[0]));
+
+		boolean[] trackMatched = new boolean[hueTracks.size()];
+		boolean[] objectMatched = new boolean[objects.size()];
+		for (double[] pair : pairs) {
+			int t = (int) pair[1], o = (int) pair[2];
+			if (trackMatched[t] || objectMatched[o])
+				continue;
+			trackMatched[t] = true;
+			objectMatched[o] = true;
+			correct(hueTracks.get(t), objects.get(o), time);
+		}
+
+		for (int t = 0; t < hueTracks.size(); t++) {
+			if (!trackMatched[t])
+				hueTracks.get(t).misses++;
+		}
+		for (int o = 0; o < objects.size(); o++) {
+			if (!objectMatched[o])
+				hueTracks.add(new Track(nextId++, hueIndex, objects.get(o), time));
+		}
+	}
+
+	/*
+	 * the alpha-beta step, a frame processed again without a new camera frame
+	 * only moves the position
+	 */
+	private static void correct(Track track, HSVIsolateObject object, long time) {
+		int[] com = object.getCOM();
+		double seconds = (time - track.time) / 1e9;
+		double[] predicted = track.predict(time);
+		double errorX = com[0] - predicted[0];
+		double errorY = com[1] - predicted[1];
+		track.x = predicted[0] + ALPHA * errorX;
+		track.y = predicted[1] + ALPHA * errorY;
+		if (seconds > 0) {
+			track.velocityX += BETA * errorX / seconds;
+			track.velocityY += BETA * errorY / seconds;
+			// the centre of mass jitters by a pixel or so, which would otherwise keep
+			// a target that stands still moving a little forever
+			if (Math.hypot(track.velocityX, track.velocityY) * seconds < MIN_MOVE) {
+				track.velocityX = 0;
+				track.velocityY = 0;
+			}
+		}
+		track.time = time;
+		track.object = object;
+		track.hits++;
+		track.misses = 0;
+	}
+
+	/*
+	 * the biggest confirmed target seen this frame, but the one from last frame
+	 * stays until another is clearly bigger
+	 */
+	private void choosePrimary(int hueIndex, List<Track> hueTracks) {
+		Track current = primary[hueIndex];
+		Track biggest = null;
+		for (Track track : hueTracks) {
+			if (track.hits >= CONFIRM_HITS && track.misses == 0 && (biggest == null || track.object.getArea() > biggest.object.getArea()))
+				biggest = track;
+		}
+		boolean currentAlive = current != null && current.misses <= MAX_MISSES && hueTracks.contains(current);
+		if (!currentAlive || (biggest != null && biggest.object.getArea() > current.object.getArea() * SWITCH_RATIO))
+			primary[hueIndex] = biggest;
+	}
+
+	/*
+	 * marks the tiles where moving targets should be at time as changed, so they
+	 * are traced again even when they moved too little for the change detector
+	 * to notice. Targets predicted to move less than a pixel are left alone, or
+	 * a frame with targets in view would never count as static
+	 */
+	public synchronized void markPredicted(ChangeDetector changes, long time) {
+		for (Track track : tracks) {
+			double seconds = (time - track.time) / 1e9;
+			if (track.hits < CONFIRM_HITS || Math.hypot(track.velocityX, track.velocityY) * seconds < MIN_MOVE)
+				continue;
+			int[] region = track.getSearchRegion(time, SEARCH_MARGIN);
+			changes.markDirty(region[0], region[1], region[2], region[3]);
+		}
+	}
+
+	/*
+	 * copies of the confirmed tracks
+	 */
+	public synchronized List<Track> getTracks() {
+		List<Track> confirmed = new ArrayList<Track>();
+		for (Track track : tracks) {
+			if (track.hits >= CONFIRM_HITS)
+				confirmed.add(new Track(track));
+		}
+		return confirmed;
+	}
+
+	/*
+	 * a copy of the track of the primary target of that color, null if there is
+	 * none
+	 */
+	public synchronized Track getPrimary(int hueIndex) {
+		if (hueIndex < 0 || hueIndex >= primary.length || primary[hueIndex] == null)
+			return null;
+		return new Track(primary[hueIndex]);
+	}
+
+	public synchronized void clear() {
+		tracks.clear();
+		primary = new Track[0];
+	}
+}
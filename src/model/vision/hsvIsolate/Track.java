@@ -0,0 +1,114 @@
+package model.vision.hsvIsolate;
+
+/*
+ * One target followed from frame to frame by a TargetTracker. Position and
+ * velocity come from an alpha-beta filter on the centre of mass, in pixels and
+ * pixels per second as {col, row}. The tracker hands out copies, so one of
+ * these never changes once a client has it
+ */
+public class Track {
+
+	private final int id;
+	private final int hueIndex;
+
+	// as of time, the System.nanoTime() the camera frame it was last updated with arrived
+	double x, y;
+	double velocityX, velocityY;
+	long time;
+
+	// frames it was found in and frames in a row it wasn't
+	int hits, misses;
+	// what it matched in the last frame it was found in
+	HSVIsolateObject object;
+
+	Track(int id, int hueIndex, HSVIsolateObject object, long time) {
+		this.id = id;
+		this.hueIndex = hueIndex;
+		int[] com = object.getCOM();
+		this.x = com[0];
+		this.y = com[1];
+		this.time = time;
+		this.object = object;
+		this.hits = 1;
+	}
+
+	Track(Track other) {
+		this.id = other.id;
+		this.hueIndex = other.hueIndex;
+		this.x = other.x;
+		this.y = other.y;
+		this.velocityX = other.velocityX;
+		this.velocityY = other.velocityY;
+		this.time = other.time;
+		this.hits = other.hits;
+		this.misses = other.misses;
+		this.object = other.object;
+	}
+
+	/*
+	 * stays the same for as long as the target is followed
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public int getHueIndex() {
+		return hueIndex;
+	}
+
+	/*
+	 * where the target should be at the given System.nanoTime(), {col, row}
+	 */
+	public double[] predict(long when) {
+		double seconds = (when - time) / 1e9;
+		return new double[] { x + velocityX * seconds, y + velocityY * seconds };
+	}
+
+	public double[] getPosition() {
+		return new double[] { x, y };
+	}
+
+	/*
+	 * pixels per second, {col, row}
+	 */
+	public double[] getVelocity() {
+		return new double[] { velocityX, velocityY };
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	/*
+	 * the object it matched last, from an older frame if it was missed since
+	 */
+	public HSVIsolateObject getObject() {
+		return object;
+	}
+
+	/*
+	 * the bounds of the last object moved to where the target should be at when,
+	 * together with where it was, {minRow, minCol, maxRow, maxCol}
+	 */
+	public int[] getSearchRegion(long when, int margin) {
+		int[] bounds = object.getBounds();
+		double[] predicted = predict(when);
+		int[] com = object.getCOM();
+		int shiftCol = (int) Math.round(predicted[0] - com[0]);
+		int shiftRow = (int) Math.round(predicted[1] - com[1]);
+		return new int[] { bounds[0] + Math.min(0, shiftRow) - margin, bounds[1] + Math.min(0, shiftCol) - margin, bounds[2] + Math.max(0, shiftRow) + margin,
+				bounds[3] + Math.max(0, shiftCol) + margin };
+	}
+
+	public String toString() {
+		return "track " + id + " at " + (int) x + "," + (int) y + " moving " + (int) velocityX + "," + (int) velocityY + " px/s";
+	}
+}
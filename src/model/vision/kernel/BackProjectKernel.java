@@ -0,0 +1,50 @@
+package model.vision.kernel;
+
+import com.amd.aparapi.Kernel;
+
+/*
+ * Colour isolation by back projection, one lookup of the pixel's hue and
+ * saturation bin in the table CompiledConfig builds from the learned
+ * histograms. Bit n of classes is set when the pixel counts as hues[n]
+ */
+public class BackProjectKernel extends Kernel {
+	
+	private float[] hue, saturation, value;
+	private byte[] classes;
+	private byte[] colorTable = new byte[1];
+	private int hueBins, saturationBins;
+	private float valueCutoff;
+	// work item 0 is this pixel
+	private int first;
+	
+	public void setArrays(float[] hue, float[] saturation, float[] value, byte[] classes) {
+		this.hue = hue;
+		this.saturation = saturation;
+		this.value = value;
+		this.classes = classes;
+	}
+	
+	public void setFirst(int first) {
+		this.first = first;
+	}
+	
+	public void setParameters(byte[] colorTable, int hueBins, int saturationBins, float valueCutoff) {
+		this.colorTable = colorTable;
+		this.hueBins = hueBins;
+		this.saturationBins = saturationBins;
+		this.valueCutoff = valueCutoff;
+	}
+	
+	@Override
+	public void run() {
+		int i = first + getGlobalId();
+		
+		byte bits = 0;
+		if (value[i] > valueCutoff) {
+			int hueBin = min((int) (hue[i] * hueBins), hueBins - 1);
+			int saturationBin = min((int) (saturation[i] * saturationBins), saturationBins - 1);
+			bits = colorTable[hueBin * saturationBins + saturationBin];
+		}
+		classes[i] = bits;
+	}
+}
@@ -0,0 +1,57 @@
+package model.vision.kernel;
+
+import com.amd.aparapi.Kernel;
+
+/*
+ * One pass of Frame.fastBlur over the saturation and value planes. Reads from
+ * the source planes and writes to the destination planes so passes can run in
+ * parallel, pixels whose neighbours are off the frame are copied as they are.
+ * Only rows firstRow to lastRow are blurred, as if they were the whole frame,
+ * and of those only the ones from fromRow on that there are work items for
+ */
+public class BlurKernel extends Kernel {
+	
+	private float[] saturationIn, valueIn, saturationOut, valueOut;
+	private int width, firstRow, lastRow, offset, fromRow;
+	
+	public void setArrays(float[] saturationIn, float[] valueIn, float[] saturationOut, float[] valueOut) {
+		this.saturationIn = saturationIn;
+		this.valueIn = valueIn;
+		this.saturationOut = saturationOut;
+		this.valueOut = valueOut;
+	}
+	
+	/*
+	 * run with (lastRow - firstRow) * width work items
+	 */
+	public void setSize(int width, int firstRow, int lastRow, int offset) {
+		this.width = width;
+		this.firstRow = firstRow;
+		this.lastRow = lastRow;
+		this.offset = offset;
+		this.fromRow = firstRow;
+	}
+	
+	/*
+	 * run with (toRow - fromRow) * width work items to do rows fromRow to toRow
+	 */
+	public void setFromRow(int fromRow) {
+		this.fromRow = fromRow;
+	}
+	
+	@Override
+	public void run() {
+		int i = fromRow * width + getGlobalId();
+		int row = i / width;
+		int col = i - row * width;
+		
+		if (row - offset < firstRow || row + offset >= lastRow || col - offset < 0 || col + offset >= width) {
+			saturationOut[i] = saturationIn[i];
+			valueOut[i] = valueIn[i];
+		} else {
+			int step = offset * width;
+			saturationOut[i] = (saturationIn[i - step] + saturationIn[i + step] + saturationIn[i - offset] + saturationIn[i + offset] + saturationIn[i]) / 5;
+			valueOut[i] = (valueIn[i - step] + valueIn[i + step] + valueIn[i - offset] + valueIn[i + offset] + valueIn[i]) / 5;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package model.vision.kernel;
+
+import com.amd.aparapi.Kernel;
+
+/*
+ * RGB to HSV, one work item per pixel. Gives the same values as Pixel.setRGB.
+ * Also counts every pixel into the brightness and saturation histograms, bin n
+ * is a brightest channel of n or a saturation from n / 255 to (n + 1) / 255
+ */
+public class HSVConvertKernel extends Kernel {
+	
+	private int[] rgb;
+	private float[] hue, saturation, value;
+	private int[] valueHistogram, saturationHistogram;
+	// work item 0 is this pixel
+	private int first;
+	
+	public void setArrays(int[] rgb, float[] hue, float[] saturation, float[] value) {
+		this.rgb = rgb;
+		this.hue = hue;
+		this.saturation = saturation;
+		this.value = value;
+	}
+	
+	public void setFirst(int first) {
+		this.first = first;
+	}
+	
+	/*
+	 * BrightnessStats.BINS long, the kernel only adds to them
+	 */
+	public void setHistograms(int[] valueHistogram, int[] saturationHistogram) {
+		this.valueHistogram = valueHistogram;
+		this.saturationHistogram = saturationHistogram;
+	}
+	
+	@Override
+	public void run() {
+		int i = first + getGlobalId();
+		int r = (rgb[i] >> 16) & 0xFF;
+		int g = (rgb[i] >> 8) & 0xFF;
+		int b = rgb[i] & 0xFF;
+		
+		float cmax = max(max(r, g), b);
+		float cmin = min(min(r, g), b);
+		
+		float s = .5f;
+		if (cmax != 0)
+			s = (cmax - cmin) / cmax;
+		
+		float h = 0;
+		if (s != 0) {
+			float redc = (cmax - r) / (cmax - cmin);
+			float greenc = (cmax - g) / (cmax - cmin);
+			float bluec = (cmax - b) / (cmax - cmin);
+			if (r == cmax)
+				h = bluec - greenc;
+			else if (g == cmax)
+				h = 2.0f + redc - bluec;
+			else
+				h = 4.0f + greenc - redc;
+			h = h / 6.0f;
+			if (h < 0)
+				h = h + 1.0f;
+		}
+		// Pixel.setHue keeps hue below 1
+		if (h >= 1.0f)
+			h = h - 1.0f;
+		
+		hue[i] = h;
+		saturation[i] = s;
+		value[i] = cmax / 255.0f;
+		atomicAdd(valueHistogram, (int) cmax, 1);
+		atomicAdd(saturationHistogram, (int) (s * 255), 1);
+	}
+}
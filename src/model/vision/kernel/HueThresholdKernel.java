@@ -0,0 +1,49 @@
+package model.vision.kernel;
+
+import com.amd.aparapi.Kernel;
+
+/*
+ * Colour isolation for every target hue at once. Bit n of classes is set when
+ * the pixel matches hues[n], which hues match comes from the table in
+ * CompiledConfig
+ */
+public class HueThresholdKernel extends Kernel {
+	
+	private float[] hue, saturation, value;
+	private byte[] classes;
+	private byte[] hueTable = new byte[1];
+	private int hueSteps;
+	private float threshold, valueCutoff;
+	// work item 0 is this pixel
+	private int first;
+	
+	public void setArrays(float[] hue, float[] saturation, float[] value, byte[] classes) {
+		this.hue = hue;
+		this.saturation = saturation;
+		this.value = value;
+		this.classes = classes;
+	}
+	
+	public void setFirst(int first) {
+		this.first = first;
+	}
+	
+	public void setParameters(byte[] hueTable, float threshold, float valueCutoff) {
+		this.hueTable = hueTable;
+		this.hueSteps = hueTable.length;
+		this.threshold = threshold;
+		this.valueCutoff = valueCutoff;
+	}
+	
+	@Override
+	public void run() {
+		int i = first + getGlobalId();
+		
+		byte bits = 0;
+		if (saturation[i] > threshold && value[i] > valueCutoff) {
+			int step = (int) (hue[i] * hueSteps);
+			bits = hueTable[min(step, hueSteps - 1)];
+		}
+		classes[i] = bits;
+	}
+}
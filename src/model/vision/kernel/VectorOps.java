@@ -0,0 +1,128 @@
+package model.vision.kernel;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/*
+ * Plain loop versions of the kernels for a range of pixels. The loops are kept
+ * free of calls and early exits, and pick between results instead of branching,
+ * so HotSpot's superword pass can turn convert and blur into SIMD instructions.
+ * The table lookups in isolate and backProject and the histogram counting can't
+ * be vectorized, those are just tight scalar loops run in bands on the worker
+ * threads. Every method gives exactly the same values as the matching kernel,
+ * VectorOpsTest checks that
+ */
+public class VectorOps {
+
+	private static Boolean available;
+
+	/*
+	 * true when the jvm has a server compiler with superword enabled, otherwise
+	 * these loops are no faster than the kernels
+	 */
+	public static synchronized boolean isAvailable() {
+		if (available == null) {
+			try {
+				HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+				available = System.getProperty("java.vm.name", "").contains("Server") && Boolean.parseBoolean(hotspot.getVMOption("UseSuperWord").getValue());
+			} catch (Throwable e) {
+				available = false;
+			}
+		}
+		return available;
+	}
+
+	public static void convert(int[] rgb, float[] hue, float[] saturation, float[] value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int r = (rgb[i] >> 16) & 0xFF;
+			int g = (rgb[i] >> 8) & 0xFF;
+			int b = rgb[i] & 0xFF;
+
+			float cmax = Math.max(Math.max(r, g), b);
+			float cmin = Math.min(Math.min(r, g), b);
+			float delta = cmax - cmin;
+
+			float s = cmax != 0 ? delta / cmax : .5f;
+
+			float redc = (cmax - r) / delta;
+			float greenc = (cmax - g) / delta;
+			float bluec = (cmax - b) / delta;
+			float h = r == cmax ? bluec - greenc : (g == cmax ? 2.0f + redc - bluec : 4.0f + greenc - redc);
+			h = h / 6.0f;
+			h = h < 0 ? h + 1.0f : h;
+			h = h >= 1.0f ? h - 1.0f : h;
+
+			hue[i] = s != 0 ? h : 0;
+			saturation[i] = s;
+			value[i] = cmax / 255.0f;
+		}
+	}
+
+	/*
+	 * one blur pass for rows from to to of the stretch firstRow to lastRow, same
+	 * as BlurKernel
+	 */
+	public static void blur(float[] saturationIn, float[] valueIn, float[] saturationOut, float[] valueOut, int width, int firstRow, int lastRow, int offset, int fromRow, int toRow) {
+		int step = offset * width;
+		for (int row = fromRow; row < toRow; row++) {
+			int start = row * width;
+			if (row - offset < firstRow || row + offset >= lastRow || width <= 2 * offset) {
+				System.arraycopy(saturationIn, start, saturationOut, start, width);
+				System.arraycopy(valueIn, start, valueOut, start, width);
+				continue;
+			}
+
+			System.arraycopy(saturationIn, start, saturationOut, start, offset);
+			System.arraycopy(valueIn, start, valueOut, start, offset);
+			for (int i = start + offset; i < start + width - offset; i++) {
+				saturationOut[i] = (saturationIn[i - step] + saturationIn[i + step] + saturationIn[i - offset] + saturationIn[i + offset] + saturationIn[i]) / 5;
+			}
+			for (int i = start + offset; i < start + width - offset; i++) {
+				valueOut[i] = (valueIn[i - step] + valueIn[i + step] + valueIn[i - offset] + valueIn[i + offset] + valueIn[i]) / 5;
+			}
+			System.arraycopy(saturationIn, start + width - offset, saturationOut, start + width - offset, offset);
+			System.arraycopy(valueIn, start + width - offset, valueOut, start + width - offset, offset);
+		}
+	}
+
+	/*
+	 * same as HueThresholdKernel for pixels from to to
+	 */
+	public static void isolate(float[] hue, float[] saturation, float[] value, byte[] classes, byte[] hueTable, float threshold, float valueCutoff, int from, int to) {
+		int hueSteps = hueTable.length;
+		for (int i = from; i < to; i++) {
+			boolean bright = saturation[i] > threshold & value[i] > valueCutoff;
+			byte bits = hueTable[Math.min((int) (hue[i] * hueSteps), hueSteps - 1)];
+			classes[i] = bright ? bits : 0;
+		}
+	}
+	
+	/*
+	 * same as BackProjectKernel for pixels from to to
+	 */
+	public static void backProject(float[] hue, float[] saturation, float[] value, byte[] classes, byte[] colorTable, int hueBins, int saturationBins, float valueCutoff,
+			int from, int to) {
+		for (int i = from; i < to; i++) {
+			boolean bright = value[i] > valueCutoff;
+			int bin = Math.min((int) (hue[i] * hueBins), hueBins - 1) * saturationBins + Math.min((int) (saturation[i] * saturationBins), saturationBins - 1);
+			byte bits = colorTable[bin];
+			classes[i] = bright ? bits : 0;
+		}
+	}
+	
+	/*
+	 * adds pixels from to to to the histograms, bins as in HSVConvertKernel. This
+	 * one is scalar, it is kept apart from convert so that loop still vectorizes,
+	 * call it on a stretch convert just did while it is still in the cache
+	 */
+	public static void histograms(int[] rgb, float[] saturation, int[] valueHistogram, int[] saturationHistogram, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int r = (rgb[i] >> 16) & 0xFF;
+			int g = (rgb[i] >> 8) & 0xFF;
+			int b = rgb[i] & 0xFF;
+			valueHistogram[Math.max(Math.max(r, g), b)]++;
+			saturationHistogram[(int) (saturation[i] * 255)]++;
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package model.vision.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.amd.aparapi.Kernel;
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+
+import model.vision.BrightnessStats;
+import model.vision.IntegralImage;
+
+/*
+ * Owns the per pixel kernels so they are only set up once, and runs them all in
+ * the same execution mode. JTP (a java thread pool) is the default so it works
+ * without OpenCL, GPU or CPU move the same kernels to an OpenCL device.
+ * 
+ * When the kernels would run on the cpu anyway and the jvm can vectorize loops,
+ * the VectorOps loops are used instead, split into bands of rows over a thread
+ * pool. Both give the same output.
+ * 
+ * One instance can be shared by several pipelines, they take turns on the
+ * kernels in the order they asked and share one work stealing pool of worker
+ * threads
+ */
+public class VisionKernels {
+
+	private HSVConvertKernel convertKernel = new HSVConvertKernel();
+	private BlurKernel blurKernel = new BlurKernel();
+	private HueThresholdKernel thresholdKernel = new HueThresholdKernel();
+	private BackProjectKernel backProjectKernel = new BackProjectKernel();
+
+	private volatile EXECUTION_MODE executionMode;
+	private volatile boolean vectorized;
+	
+	private int bands = Runtime.getRuntime().availableProcessors();
+	private ForkJoinPool bandPool;
+	// fair so one camera can't keep the kernels from another
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	// pixels converted at a time before counting them, small enough to still be in the cache
+	private static final int HISTOGRAM_STRETCH = 4096;
+
+	// scratch planes for the blur, swapped with the frame's planes every pass
+	private float[] saturationBuffer = new float[0];
+	private float[] valueBuffer = new float[0];
+
+	public VisionKernels() {
+		this(getDefaultExecutionMode());
+	}
+
+	public VisionKernels(EXECUTION_MODE executionMode) {
+		setExecutionMode(executionMode);
+	}
+
+	/*
+	 * uses the mode passed to the jvm with -Dcom.amd.aparapi.executionMode if it is
+	 * valid, JTP otherwise
+	 */
+	public static EXECUTION_MODE getDefaultExecutionMode() {
+		return parseExecutionMode(System.getProperty("com.amd.aparapi.executionMode"), EXECUTION_MODE.JTP);
+	}
+
+	public static EXECUTION_MODE parseExecutionMode(String mode, EXECUTION_MODE fallback) {
+		if (mode == null)
+			return fallback;
+		try {
+			return EXECUTION_MODE.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown execution mode " + mode + ", using " + fallback);
+			return fallback;
+		}
+	}
+
+	/*
+	 * also switches to the vectorized loops if the mode runs on the cpu and they
+	 * are available
+	 */
+	public void setExecutionMode(EXECUTION_MODE executionMode) {
+		this.executionMode = executionMode;
+		this.vectorized = !executionMode.isOpenCL() && VectorOps.isAvailable();
+	}
+	
+	public void setVectorized(boolean vectorized) {
+		this.vectorized = vectorized && VectorOps.isAvailable();
+	}
+	
+	public boolean isVectorized() {
+		return vectorized;
+	}
+
+	public EXECUTION_MODE getExecutionMode() {
+		return executionMode;
+	}
+
+	private void execute(Kernel kernel, int range) {
+		if (range <= 0)
+			return;
+		if (kernel.getExecutionMode() != executionMode) {
+			kernel.setExecutionMode(executionMode);
+		}
+		kernel.execute(range);
+	}
+
+	private interface Band {
+		void run(int from, int to);
+	}
+	
+	/*
+	 * splits first to last into one band per core and waits for all of them
+	 */
+	private void runBands(int first, int last, Band band) {
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		int size = Math.max(1, (last - first + bands - 1) / bands);
+		for (int from = first; from < last; from += size) {
+			final int start = from;
+			final int end = Math.min(last, from + size);
+			results.add(getPool().submit(() -> {
+				band.run(start, end);
+				return null;
+			}));
+		}
+		waitFor(results);
+	}
+	
+	/*
+	 * work stealing, so tasks that split into more tasks keep every worker busy.
+	 * Tasks handed in from outside are taken first in first out, so no pipeline
+	 * can starve another. The workers are daemons
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if (bandPool == null) {
+			bandPool = new ForkJoinPool(bands, pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("VisionWorker-" + thread.getPoolIndex());
+				return thread;
+			}, null, true);
+		}
+		return bandPool;
+	}
+	
+	/*
+	 * runs the tasks on the worker pool shared by every pipeline using these
+	 * kernels and waits for all of them. Doesn't take the kernel lock
+	 */
+	public void runAll(ForkJoinTask<?>... tasks) {
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (ForkJoinTask<?> task : tasks) {
+			results.add(getPool().submit(task));
+		}
+		waitFor(results);
+	}
+	
+	private static void waitFor(List<? extends Future<?>> results) {
+		try {
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/*
+	 * fills in the planes for pixels first to last and adds those pixels to the
+	 * histograms of stats, then updates them. The histograms come out of the same
+	 * pass, so the brightness of a frame costs nothing extra
+	 */
+	public void convert(int[] rgb, float[] hue, float[] saturation, float[] value, BrightnessStats stats, int first, int last) {
+		int[] valueHistogram = stats.getValueHistogram();
+		int[] saturationHistogram = stats.getSaturationHistogram();
+		lock.lock();
+		try {
+			if (vectorized) {
+				runBands(first, last, (from, to) -> {
+					// counted per band and added up at the end so the bands never touch the same bins
+					int[] values = new int[BrightnessStats.BINS];
+					int[] saturations = new int[BrightnessStats.BINS];
+					for (int start = from; start < to; start += HISTOGRAM_STRETCH) {
+						int end = Math.min(to, start + HISTOGRAM_STRETCH);
+						VectorOps.convert(rgb, hue, saturation, value, start, end);
+						VectorOps.histograms(rgb, saturation, values, saturations, start, end);
+					}
+					synchronized (stats) {
+						for (int bin = 0; bin < BrightnessStats.BINS; bin++) {
+							valueHistogram[bin] += values[bin];
+							saturationHistogram[bin] += saturations[bin];
+						}
+					}
+				});
+			} else {
+				convertKernel.setArrays(rgb, hue, saturation, value);
+				convertKernel.setHistograms(valueHistogram, saturationHistogram);
+				convertKernel.setFirst(first);
+				execute(convertKernel, last - first);
+			}
+			stats.update();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * amount passes of amount pixels each, what Frame.fastBlur does for
+	 * amount * amount, over rows firstRow to lastRow as if they were the whole
+	 * frame. The result ends up in saturation and value
+	 */
+	public void blur(float[] saturation, float[] value, int width, int firstRow, int lastRow, int amount) {
+		blur(saturation, value, width, firstRow, lastRow, amount, firstRow, lastRow);
+	}
+
+	/*
+	 * only rows fromRow to toRow of the stretch, they come out the same as if all
+	 * of it had been blurred. Each pass reaches amount rows, so the amount *
+	 * amount rows on either side have to hold the converted frame as well, they
+	 * are read and left scrambled
+	 */
+	public void blur(float[] saturation, float[] value, int width, int firstRow, int lastRow, int amount, int fromRow, int toRow) {
+		lock.lock();
+		try {
+			if (amount <= 0)
+				return;
+			// only ever grows, cameras with different sizes can share it
+			if (saturationBuffer.length < saturation.length) {
+				saturationBuffer = new float[saturation.length];
+				valueBuffer = new float[value.length];
+			}
+
+			// every pass spoils amount more rows at the ends that aren't the ends of the stretch
+			int start = Math.max(firstRow, fromRow - amount * amount), end = Math.min(lastRow, toRow + amount * amount);
+			float[] saturationIn = saturation, valueIn = value;
+			float[] saturationOut = saturationBuffer, valueOut = valueBuffer;
+			blurKernel.setSize(width, firstRow, lastRow, amount);
+			blurKernel.setFromRow(start);
+			for (int i = 0; i < amount; i++) {
+				if (vectorized) {
+					float[] sIn = saturationIn, vIn = valueIn, sOut = saturationOut, vOut = valueOut;
+					int offset = amount;
+					runBands(start, end, (from, to) -> VectorOps.blur(sIn, vIn, sOut, vOut, width, firstRow, lastRow, offset, from, to));
+				} else {
+					blurKernel.setArrays(saturationIn, valueIn, saturationOut, valueOut);
+					execute(blurKernel, (end - start) * width);
+				}
+
+				float[] swap = saturationIn;
+				saturationIn = saturationOut;
+				saturationOut = swap;
+				swap = valueIn;
+				valueIn = valueOut;
+				valueOut = swap;
+			}
+
+			// an odd number of passes leaves the result in the scratch planes
+			if (saturationIn != saturation) {
+				int length = (toRow - fromRow) * width;
+				System.arraycopy(saturationIn, fromRow * width, saturation, fromRow * width, length);
+				System.arraycopy(valueIn, fromRow * width, value, fromRow * width, length);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * sets bit n of classes for the pixels from first to last that match hues[n],
+	 * hueTable is CompiledConfig.getHueTable()
+	 */
+	public void isolate(float[] hue, float[] saturation, float[] value, byte[] classes, byte[] hueTable, float threshold, float valueCutoff, int first, int last) {
+		lock.lock();
+		try {
+			if (vectorized) {
+				runBands(first, last, (from, to) -> VectorOps.isolate(hue, saturation, value, classes, hueTable, threshold, valueCutoff, from, to));
+				return;
+			}
+			thresholdKernel.setArrays(hue, saturation, value, classes);
+			thresholdKernel.setParameters(hueTable, threshold, valueCutoff);
+			thresholdKernel.setFirst(first);
+			execute(thresholdKernel, last - first);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * sets bit n of classes for the pixels from first to last whose hue and
+	 * saturation bin is set for hues[n] in colorTable, which is
+	 * CompiledConfig.getColorTable()
+	 */
+	public void backProject(float[] hue, float[] saturation, float[] value, byte[] classes, byte[] colorTable, int hueBins, int saturationBins, float valueCutoff, int first,
+			int last) {
+		lock.lock();
+		try {
+			if (vectorized) {
+				runBands(first, last, (from, to) -> VectorOps.backProject(hue, saturation, value, classes, colorTable, hueBins, saturationBins, valueCutoff, from, to));
+				return;
+			}
+			backProjectKernel.setArrays(hue, saturation, value, classes);
+			backProjectKernel.setParameters(colorTable, hueBins, saturationBins, valueCutoff);
+			backProjectKernel.setFirst(first);
+			execute(backProjectKernel, last - first);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * fills in sums from rows firstRow to lastRow of plane, every pixel times
+	 * scale, the rows outside count as zeros. Runs on the workers without the
+	 * kernel lock, nothing here uses a kernel
+	 */
+	public void integrate(IntegralImage sums, float[] plane, float scale, int firstRow, int lastRow) {
+		integrate(sums, plane, scale, firstRow, lastRow, null, null);
+	}
+
+	/*
+	 * the same, but the rows redo leaves out are taken from previous, which has to
+	 * be the same size. Null redoes every row
+	 */
+	public void integrate(IntegralImage sums, float[] plane, float scale, int firstRow, int lastRow, IntegralImage previous, boolean[] redo) {
+		runBands(firstRow, lastRow, (from, to) -> {
+			for (int row = from; row < to; row++) {
+				if (redo == null || redo[row])
+					sums.sumRow(row, plane, scale);
+				else
+					sums.copyRow(row, previous);
+			}
+		});
+		runBands(0, sums.getWidth(), (from, to) -> sums.sumColumns(from, to));
+	}
+
+	/*
+	 * fills in sums[n] with the pixels from rows firstRow to lastRow of classes
+	 * that have bit n set
+	 */
+	public void integrate(IntegralImage[] sums, byte[] classes, int firstRow, int lastRow) {
+		integrate(sums, classes, firstRow, lastRow, null, null);
+	}
+
+	public void integrate(IntegralImage[] sums, byte[] classes, int firstRow, int lastRow, IntegralImage[] previous, boolean[] redo) {
+		runBands(firstRow, lastRow, (from, to) -> {
+			for (int row = from; row < to; row++) {
+				for (int bit = 0; bit < sums.length; bit++) {
+					if (redo == null || redo[row])
+						sums[bit].sumRow(row, classes, bit);
+					else
+						sums[bit].copyRow(row, previous[bit]);
+				}
+			}
+		});
+		runBands(0, sums.length == 0 ? 0 : sums[0].getWidth(), (from, to) -> {
+			for (IntegralImage image : sums)
+				image.sumColumns(from, to);
+		});
+	}
+
+	public void dispose() {
+		lock.lock();
+		try {
+			if (bandPool != null)
+				bandPool.shutdown();
+			convertKernel.dispose();
+			blurKernel.dispose();
+			thresholdKernel.dispose();
+			backProjectKernel.dispose();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
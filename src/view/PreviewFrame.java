@@ -3,15 +3,18 @@ package view;
 import javax.swing.JFrame;
 
 import controller.Controller;
-import model.vision.Pixel;
 
 public class PreviewFrame extends JFrame {
 	private PreviewPanel panel;
 
-	public PreviewFrame(Pixel[][] pixels, Controller controller) {
+	public PreviewFrame(Controller controller) {
+		this(controller, 15);
+	}
+
+	public PreviewFrame(Controller controller, int maxFramerate) {
 		super();
 
-		this.panel = new PreviewPanel(pixels, controller);
+		this.panel = new PreviewPanel(controller, maxFramerate);
 
 		setupFrame();
 	}
@@ -26,7 +29,8 @@ public class PreviewFrame extends JFrame {
 		
 	}
 	
-	public void update(Pixel[][] pixels) {
-		panel.update(pixels);
+	public void dispose() {
+		panel.stop();
+		super.dispose();
 	}
 }
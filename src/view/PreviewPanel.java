@@ -2,17 +2,17 @@
 package view;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.util.concurrent.TimeUnit;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.SpringLayout;
+import javax.swing.Timer;
 
 import controller.Controller;
-import model.vision.Pixel;
+import model.vision.VisionConfig;
+import model.vision.hsvIsolate.HSVIsolateController;
 
 public class PreviewPanel extends JPanel {
 
@@ -29,20 +29,29 @@ public class PreviewPanel extends JPanel {
 
 	private SpringLayout layout;
 
-	private Pixel[][] pixels;
-
-	public PreviewPanel(Pixel[][] pixels, Controller controller) {
+	private PreviewRenderer renderer;
+	// the result drawn last, a timer tick with nothing new draws nothing
+	private HSVIsolateController rendered;
+	private Timer refreshTimer;
+
+	/**
+	 * @param maxFramerate
+	 *            how often the preview looks for a new result, the pipeline never
+	 *            waits for the preview
+	 */
+	public PreviewPanel(Controller controller, int maxFramerate) {
 		super();
 
 		this.controller = controller;
 
-		this.pixels = pixels;
-
-		this.imageLabel = new JLabel(new ImageIcon(pixelsToBufferedImage(pixels)));
-		this.framerateSlider = new JSlider(0, 1, 60, controller.framerate);
-		this.thresholdSlider = new JSlider(0, 0, 100, (int)(controller.threshold*100));
-		this.spreadSlider = new JSlider(0, 1, 100, (int)(controller.hueSpread*100));
-		this.blurSlider = new JSlider(0, 0, 100, controller.blur);
+		HSVIsolateController result = controller.getLatestResult();
+		VisionConfig config = controller.getConfig();
+		this.renderer = new PreviewRenderer(result.getWidth(), result.getHeight());
+		this.imageLabel = new JLabel(new ImageIcon(renderer.getImage()));
+		this.framerateSlider = new JSlider(0, 1, 60, config.getFramerate());
+		this.thresholdSlider = new JSlider(0, 0, 100, (int)(config.getThreshold()*100));
+		this.spreadSlider = new JSlider(0, 1, 100, (int)(config.getHueSpread()*100));
+		this.blurSlider = new JSlider(0, 0, 100, config.getBlur());
 		this.framerateLabel = new JLabel("Framerate: 0");
 		this.thresholdLabel = new JLabel("Threshold: 0");
 		this.spreadLabel = new JLabel("Intensity: 0");
@@ -70,7 +79,15 @@ public class PreviewPanel extends JPanel {
 		layout.putConstraint(SpringLayout.WEST, framerateSlider, 10, SpringLayout.WEST, this);
 		this.setLayout(layout);
 
-		update(pixels);
+		// push slider changes to the controller as they happen
+		framerateSlider.addChangeListener(e -> controller.setFrameRate(framerateSlider.getValue()));
+		spreadSlider.addChangeListener(e -> controller.setHueSpread((float)spreadSlider.getValue() / 100));
+		thresholdSlider.addChangeListener(e -> controller.setThresholdCoeff((float)thresholdSlider.getValue() / 100));
+		blurSlider.addChangeListener(e -> controller.setBlur(blurSlider.getValue()));
+
+		// swing timers fire on the event dispatch thread
+		refreshTimer = new Timer(1000 / Math.max(1, maxFramerate), e -> refresh());
+		refreshTimer.setCoalesce(true);
 
 		this.add(imageLabel);
 		this.add(framerateSlider);
@@ -83,35 +100,30 @@ public class PreviewPanel extends JPanel {
 		this.add(framerateLabel);
 		this.add(blurLabel);
 
+		refresh();
+		if (!GraphicsEnvironment.isHeadless())
+			refreshTimer.start();
 	}
-
-	public void update(Pixel[][] pixels) {
-		this.pixels = pixels;
-		this.imageLabel.setIcon(new ImageIcon(pixelsToBufferedImage(pixels)));
-
-		// update controller values
-		
-		spreadLabel.setText("Hue Spread: " + (double)spreadSlider.getValue()/100);
-		framerateLabel.setText("Framerate: " + framerateSlider.getValue() + "/" + controller.getMaxFramerate() + "/" + controller.getCameraFramerate());
-		thresholdLabel.setText("Threshold: " + (double)thresholdSlider.getValue()/100);
-		blurLabel.setText("Blur: " + blurSlider.getValue());
-		
-		controller.setFrameRate(framerateSlider.getValue());
-		controller.setHueSpread((float)spreadSlider.getValue() / 100);
-		controller.setThresholdCoeff((float)thresholdSlider.getValue() / 100);
-		controller.setBlur(blurSlider.getValue());
-
+	
+	public void stop() {
+		refreshTimer.stop();
 	}
 
-	private BufferedImage pixelsToBufferedImage(Pixel[][] pixels) {
-		BufferedImage retBuffer = new BufferedImage(pixels[0].length, pixels.length, BufferedImage.TYPE_INT_RGB);
-		for (int row = 0; row < pixels.length; row++) {
-			for (int col = 0; col < pixels[0].length; col++) {
-				retBuffer.setRGB(col, row, pixels[row][col].getRGB());
+	private void refresh() {
+		HSVIsolateController result = controller.getLatestResult();
+
+		if (result != null && result != rendered && isShowing()) {
+			if (renderer.render(result)) {
+				imageLabel.setIcon(new ImageIcon(renderer.getImage()));
 			}
+			rendered = result;
+			imageLabel.repaint();
 		}
 
-		return retBuffer;
+		spreadLabel.setText("Hue Spread: " + (double)spreadSlider.getValue()/100);
+		framerateLabel.setText("Framerate: " + controller.getEffectiveFramerate() + "/" + framerateSlider.getValue() + " (max " + controller.getMaxFramerate() + ", camera " + controller.getCameraFramerate() + ")");
+		thresholdLabel.setText("Threshold: " + (double)thresholdSlider.getValue()/100);
+		blurLabel.setText("Blur: " + blurSlider.getValue());
 	}
 	
 }
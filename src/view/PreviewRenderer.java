@@ -0,0 +1,74 @@
+package view;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import model.vision.Contour;
+import model.vision.hsvIsolate.HSVIsolateController;
+import model.vision.hsvIsolate.HSVIsolateFrame;
+import model.vision.hsvIsolate.HSVIsolateObject;
+
+/*
+ * Draws results straight into the int array behind one reused image: the
+ * camera image, the outline of every object in its color and a magenta box on
+ * each center of mass
+ */
+public class PreviewRenderer {
+
+	private BufferedImage image;
+	private int[] raster;
+
+	private final int comColor = Color.MAGENTA.getRGB() & 0xFFFFFF;
+
+	public PreviewRenderer(int width, int height) {
+		allocate(width, height);
+	}
+
+	private void allocate(int width, int height) {
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/*
+	 * @return true if the image had to be replaced because the frame size changed
+	 */
+	public boolean render(HSVIsolateController result) {
+		int width = result.getWidth();
+		int height = result.getHeight();
+		boolean resized = false;
+		if (width != image.getWidth() || height != image.getHeight()) {
+			allocate(width, height);
+			resized = true;
+		}
+
+		System.arraycopy(result.getRGB(), 0, raster, 0, raster.length);
+
+		for (HSVIsolateFrame frame : result.getColorFrames()) {
+			int color = Color.HSBtoRGB(frame.getHue(), 1f, 1f) & 0xFFFFFF;
+			for (HSVIsolateObject object : frame.getObjects()) {
+				Contour contour = object.getContour();
+				if (contour != null) {
+					for (int[] point : contour.getPoints()) {
+						raster[point[1] * width + point[0]] = color;
+					}
+				}
+				int[] com = object.getCOM();
+				fillBox(com[0], com[1], (int) (.25 * Math.sqrt(object.getArea()) / 2), comColor, width, height);
+			}
+		}
+		return resized;
+	}
+
+	private void fillBox(int x, int y, int radius, int color, int width, int height) {
+		for (int row = Math.max(0, y - radius); row < Math.min(height, y + radius); row++) {
+			for (int col = Math.max(0, x - radius); col < Math.min(width, x + radius); col++) {
+				raster[row * width + col] = color;
+			}
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package model.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+/*
+ * Decodes baseline JPEGs written by ImageIO and compares them with what ImageIO
+ * reads back. The two can't be the same to the byte, the idct and chroma
+ * upsampling differ, so the mean and worst difference per channel are held
+ * under limits instead. Scaled output is compared with ImageIO's picture box
+ * averaged down to the same size
+ */
+public class JpegDecoderTest {
+
+	static byte[] encode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(ImageIO.write(image, "jpg", out));
+		return out.toByteArray();
+	}
+
+	/*
+	 * color without chroma subsampling, so only the idct can make a difference
+	 */
+	static byte[] encodeFullChroma(BufferedImage image) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+		String format = "javax_imageio_jpeg_image_1.0";
+		IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(format);
+		NodeList components = tree.getElementsByTagName("componentSpec");
+		for (int i = 0; i < components.getLength(); i++) {
+			IIOMetadataNode component = (IIOMetadataNode) components.item(i);
+			component.setAttribute("HsamplingFactor", "1");
+			component.setAttribute("VsamplingFactor", "1");
+		}
+		metadata.setFromTree(format, tree);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+		writer.setOutput(stream);
+		writer.write(null, new IIOImage(image, null, metadata), param);
+		stream.close();
+		writer.dispose();
+		return out.toByteArray();
+	}
+
+	/*
+	 * smooth gradients, with some hard edged shapes on top if asked for
+	 */
+	static BufferedImage picture(int width, int height, int type, boolean shapes) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = 255 * x / width;
+				int g = 255 * y / height;
+				int b = (int) (127 + 100 * Math.sin(x * .05) * Math.cos(y * .07));
+				image.setRGB(x, y, (r << 16) | (g << 8) | b);
+			}
+		}
+		if (!shapes)
+			return image;
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.YELLOW);
+		g.fillRect(width / 5, height / 4, width / 4, height / 3);
+		g.setColor(new Color(20, 200, 60));
+		g.setStroke(new BasicStroke(3));
+		g.drawOval(width / 2, height / 3, width / 3, height / 2);
+		g.dispose();
+		return image;
+	}
+
+	private static int[][] decode(byte[] jpeg, int scale, float from, float to) throws IOException {
+		JpegDecoder decoder = new JpegDecoder(scale);
+		decoder.setRows(from, to);
+		decoder.decode(jpeg, jpeg.length);
+		byte[] rgb = new byte[decoder.getWidth() * decoder.getHeight() * 3];
+		decoder.writeRGB(rgb);
+		int[][] pixels = new int[decoder.getHeight()][decoder.getWidth()];
+		for (int y = 0, i = 0; y < pixels.length; y++) {
+			for (int x = 0; x < pixels[y].length; x++, i += 3) {
+				pixels[y][x] = ((rgb[i] & 0xFF) << 16) | ((rgb[i + 1] & 0xFF) << 8) | (rgb[i + 2] & 0xFF);
+			}
+		}
+		return pixels;
+	}
+
+	/*
+	 * ImageIO's picture box averaged down by scale, partial blocks at the edges
+	 * are averaged over what they cover
+	 */
+	private static int[][] reference(byte[] jpeg, int scale) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+		int width = (image.getWidth() + scale - 1) / scale, height = (image.getHeight() + scale - 1) / scale;
+		boolean gray = image.getRaster().getNumBands() == 1;
+		int[][] pixels = new int[height][width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = 0, g = 0, b = 0, count = 0;
+				for (int sy = y * scale; sy < Math.min(image.getHeight(), (y + 1) * scale); sy++) {
+					for (int sx = x * scale; sx < Math.min(image.getWidth(), (x + 1) * scale); sx++) {
+						// getRGB would gamma correct a gray picture
+						if (gray) {
+							int sample = image.getRaster().getSample(sx, sy, 0);
+							r += sample;
+							g += sample;
+							b += sample;
+						} else {
+							int rgb = image.getRGB(sx, sy);
+							r += (rgb >> 16) & 0xFF;
+							g += (rgb >> 8) & 0xFF;
+							b += rgb & 0xFF;
+						}
+						count++;
+					}
+				}
+				pixels[y][x] = (Math.round((float) r / count) << 16) | (Math.round((float) g / count) << 8) | Math.round((float) b / count);
+			}
+		}
+		return pixels;
+	}
+
+	private static void assertClose(String what, int[][] expected, int[][] actual, double meanLimit, int maxLimit) {
+		assertEquals(what + " height", expected.length, actual.length);
+		assertEquals(what + " width", expected[0].length, actual[0].length);
+		long total = 0;
+		int worst = 0, count = 0;
+		for (int y = 0; y < expected.length; y++) {
+			for (int x = 0; x < expected[y].length; x++) {
+				for (int shift = 0; shift <= 16; shift += 8) {
+					int difference = Math.abs(((expected[y][x] >> shift) & 0xFF) - ((actual[y][x] >> shift) & 0xFF));
+					total += difference;
+					worst = Math.max(worst, difference);
+					count++;
+				}
+			}
+		}
+		double mean = (double) total / count;
+		assertTrue(what + " differs by " + mean + " on average", mean <= meanLimit);
+		assertTrue(what + " differs by up to " + worst, worst <= maxLimit);
+	}
+
+	private static final int[][] SIZES = { { 64, 48 }, { 123, 77 }, { 17, 9 } };
+
+	/*
+	 * full size only differs by rounding. Scaled down the decoder keeps the low
+	 * frequencies of each block rather than averaging it, which is a little off
+	 * next to hard edges
+	 */
+	private static void assertMatches(String what, byte[] jpeg, int scale) throws IOException {
+		if (scale == 1)
+			assertClose(what, reference(jpeg, scale), decode(jpeg, scale, 0, 1), .1, 4);
+		else
+			assertClose(what, reference(jpeg, scale), decode(jpeg, scale, 0, 1), 7, 40);
+	}
+
+	@Test
+	public void colorMatchesImageIO() throws IOException {
+		for (int[] size : SIZES) {
+			byte[] jpeg = encodeFullChroma(picture(size[0], size[1], BufferedImage.TYPE_INT_RGB, true));
+			for (int scale = 1; scale <= 8; scale *= 2) {
+				assertMatches(size[0] + "x" + size[1] + " at 1/" + scale, jpeg, scale);
+			}
+		}
+	}
+
+	@Test
+	public void grayMatchesImageIO() throws IOException {
+		byte[] jpeg = encode(picture(90, 70, BufferedImage.TYPE_BYTE_GRAY, true));
+		for (int scale = 1; scale <= 8; scale *= 2) {
+			assertMatches("gray at 1/" + scale, jpeg, scale);
+		}
+	}
+
+	/*
+	 * ImageIO's default 4:2:0. ImageIO interpolates the chroma where the decoder
+	 * repeats it, which only stays close on smooth color and while a chroma sample
+	 * covers no more than two output pixels
+	 */
+	@Test
+	public void subsampledColorMatchesImageIO() throws IOException {
+		for (int i = 0; i < 2; i++) {
+			int[] size = SIZES[i];
+			byte[] jpeg = encode(picture(size[0], size[1], BufferedImage.TYPE_INT_RGB, false));
+			for (int scale = 1; scale <= 2; scale *= 2) {
+				assertClose(size[0] + "x" + size[1] + " at 1/" + scale, reference(jpeg, scale), decode(jpeg, scale, 0, 1), 4, 16);
+			}
+		}
+	}
+
+	@Test
+	public void rowsOutsideTheBandAreBlack() throws IOException {
+		byte[] jpeg = encode(picture(123, 77, BufferedImage.TYPE_INT_RGB, true));
+		for (int scale = 1; scale <= 8; scale *= 2) {
+			int[][] whole = decode(jpeg, scale, 0, 1);
+			int[][] band = decode(jpeg, scale, .25f, .6f);
+			int height = whole.length;
+			int first = (int) Math.floor(.25f * height), last = (int) Math.ceil(.6f * height);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < whole[y].length; x++) {
+					assertEquals("1/" + scale + " row " + y + " col " + x, y >= first && y < last ? whole[y][x] : 0, band[y][x]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notAJpeg() throws IOException {
+		byte[] data = "definitely not a jpeg".getBytes("US-ASCII");
+		new JpegDecoder(1).decode(data, data.length);
+	}
+}
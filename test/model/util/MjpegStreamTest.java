@@ -0,0 +1,201 @@
+package model.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Reads frames from a stand in for an IP camera, a local server that sends a
+ * few JPEGs as multipart/x-mixed-replace the way mjpg-streamer does
+ */
+public class MjpegStreamTest {
+
+	/*
+	 * answers every connection with the frames, as many rounds as asked for (0
+	 * keeps going until closed), then hangs up
+	 */
+	private static class StandIn extends Thread {
+		private ServerSocket server;
+		private List<byte[]> frames = new ArrayList<byte[]>();
+		private boolean contentLength = true;
+		private int rounds = 1;
+		private String contentType = "multipart/x-mixed-replace; boundary=--myboundary";
+		// the request headers of the last connection
+		private volatile List<String> request = new ArrayList<String>();
+
+		StandIn() throws IOException {
+			server = new ServerSocket(0);
+			setDaemon(true);
+		}
+
+		String url(String path) {
+			return "http://127.0.0.1:" + server.getLocalPort() + path;
+		}
+
+		public void run() {
+			while (!server.isClosed()) {
+				try {
+					final Socket socket = server.accept();
+					Thread connection = new Thread(() -> serve(socket));
+					connection.setDaemon(true);
+					connection.start();
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}
+
+		private void serve(Socket socket) {
+			try {
+				InputStream in = socket.getInputStream();
+				List<String> headers = new ArrayList<String>();
+				StringBuilder line = new StringBuilder();
+				int c;
+				while ((c = in.read()) >= 0) {
+					if (c == '\n') {
+						if (line.length() == 0)
+							break;
+						headers.add(line.toString());
+						line.setLength(0);
+					} else if (c != '\r') {
+						line.append((char) c);
+					}
+				}
+				request = headers;
+
+				OutputStream out = socket.getOutputStream();
+				out.write(("HTTP/1.0 200 OK\r\nServer: stand in\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+				for (int round = 0; rounds == 0 || round < rounds; round++) {
+					for (byte[] frame : frames) {
+						String part = "--myboundary\r\nContent-Type: image/jpeg\r\n";
+						if (contentLength)
+							part += "Content-Length: " + frame.length + "\r\n";
+						out.write((part + "\r\n").getBytes(StandardCharsets.US_ASCII));
+						out.write(frame);
+						out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+						out.flush();
+						if (rounds == 0)
+							TimeUnit.MILLISECONDS.sleep(10);
+					}
+				}
+				socket.close();
+			} catch (IOException | InterruptedException e) {
+				// the client hung up
+			}
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+	}
+
+	private StandIn standIn;
+
+	@Before
+	public void setUp() throws IOException {
+		standIn = new StandIn();
+		standIn.frames.add(JpegDecoderTest.encode(JpegDecoderTest.picture(64, 48, BufferedImage.TYPE_INT_RGB, true)));
+		standIn.frames.add(JpegDecoderTest.encode(JpegDecoderTest.picture(123, 77, BufferedImage.TYPE_INT_RGB, true)));
+		standIn.frames.add(withThumbnail(JpegDecoderTest.encode(JpegDecoderTest.picture(80, 60, BufferedImage.TYPE_INT_RGB, true))));
+		standIn.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		standIn.close();
+	}
+
+	/*
+	 * the jpeg with an APP1 segment right after the start of image that holds a
+	 * whole small jpeg, end of image marker and all, the way EXIF thumbnails do
+	 */
+	private static byte[] withThumbnail(byte[] jpeg) throws IOException {
+		byte[] thumbnail = JpegDecoderTest.encode(JpegDecoderTest.picture(16, 12, BufferedImage.TYPE_INT_RGB, false));
+		byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+		int length = 2 + exif.length + thumbnail.length;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(jpeg, 0, 2);
+		out.write(new byte[] { (byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length });
+		out.write(exif);
+		out.write(thumbnail);
+		out.write(jpeg, 2, jpeg.length - 2);
+		return out.toByteArray();
+	}
+
+	private void readsEveryFrame(MjpegStream stream) throws IOException {
+		for (byte[] expected : standIn.frames) {
+			int length = stream.readFrame();
+			assertEquals(expected.length, length);
+			assertArrayEquals(expected, Arrays.copyOf(stream.getFrame(), length));
+		}
+		try {
+			stream.readFrame();
+			fail("Read a frame past the end of the stream");
+		} catch (EOFException e) {
+			// the stand in hung up
+		}
+		stream.close();
+	}
+
+	@Test
+	public void readsFramesWithContentLength() throws IOException {
+		readsEveryFrame(new MjpegStream(standIn.url("/video")));
+		assertEquals("GET /video HTTP/1.0", standIn.request.get(0));
+	}
+
+	@Test
+	public void readsFramesWithoutContentLength() throws IOException {
+		standIn.contentLength = false;
+		readsEveryFrame(new MjpegStream(standIn.url("/video")));
+	}
+
+	@Test
+	public void sendsCredentials() throws IOException {
+		new MjpegStream(standIn.url("/video").replace("//", "//user:secret@")).close();
+		assertTrue(standIn.request.toString(), standIn.request.contains("Authorization: Basic dXNlcjpzZWNyZXQ="));
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesOtherContent() throws IOException {
+		standIn.contentType = "text/html";
+		new MjpegStream(standIn.url("/"));
+	}
+
+	@Test
+	public void cameraDecodesTheStream() throws IOException, InterruptedException {
+		standIn.frames.subList(1, standIn.frames.size()).clear();
+		standIn.rounds = 0;
+		Camera camera = new Camera(standIn.url("/video"), 2);
+		assertTrue(camera.isIpCamera());
+		BufferedImage image = camera.getImage();
+		assertEquals(32, image.getWidth());
+		assertEquals(24, image.getHeight());
+
+		camera.start();
+		long frames = camera.getFrameCount();
+		for (int i = 0; i < 200 && camera.getFrameCount() < frames + 5; i++)
+			TimeUnit.MILLISECONDS.sleep(10);
+		assertTrue("Camera only read " + (camera.getFrameCount() - frames) + " frames", camera.getFrameCount() >= frames + 5);
+		camera.interrupt();
+		camera.join(2000);
+	}
+}
@@ -0,0 +1,106 @@
+package model.vision;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The banded union find against a flood fill from each group's first pixel, on
+ * random masks with some solid blocks mixed in so groups cross several bands
+ */
+public class ComponentLabellerTest {
+
+	/*
+	 * the pixels of each 4-connected group as row * width + col in row major
+	 * order, groups in the order of their first pixels
+	 */
+	private static List<List<Integer>> floodFill(BitMask mask) {
+		int width = mask.getWidth(), height = mask.getHeight();
+		boolean[] seen = new boolean[width * height];
+		List<List<Integer>> groups = new ArrayList<List<Integer>>();
+		for (int start = 0; start < seen.length; start++) {
+			if (seen[start] || !mask.get(start / width, start % width))
+				continue;
+			boolean[] inGroup = new boolean[seen.length];
+			Deque<Integer> queue = new ArrayDeque<Integer>();
+			queue.add(start);
+			seen[start] = inGroup[start] = true;
+			while (!queue.isEmpty()) {
+				int pixel = queue.poll(), row = pixel / width, col = pixel % width;
+				int[][] neighbours = { { row - 1, col }, { row + 1, col }, { row, col - 1 }, { row, col + 1 } };
+				for (int[] n : neighbours) {
+					if (n[0] < 0 || n[0] >= height || n[1] < 0 || n[1] >= width || seen[n[0] * width + n[1]] || !mask.get(n[0], n[1]))
+						continue;
+					seen[n[0] * width + n[1]] = inGroup[n[0] * width + n[1]] = true;
+					queue.add(n[0] * width + n[1]);
+				}
+			}
+			List<Integer> group = new ArrayList<Integer>();
+			for (int i = start; i < inGroup.length; i++) {
+				if (inGroup[i])
+					group.add(i);
+			}
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	private static List<List<Integer>> label(BitMask mask, int bandRows) {
+		ComponentLabeller labeller = new ComponentLabeller(mask, bandRows);
+		for (ComponentLabeller.Band band : labeller.getBands()) {
+			band.invoke();
+		}
+		List<List<Integer>> groups = new ArrayList<List<Integer>>();
+		for (RunLength runs : labeller.merge()) {
+			List<Integer> group = new ArrayList<Integer>();
+			for (int run = 0; run < runs.size(); run++) {
+				for (int col = runs.getStart(run); col <= runs.getEnd(run); col++) {
+					group.add(runs.getRow(run) * mask.getWidth() + col);
+				}
+			}
+			assertEquals(group.size(), runs.getArea());
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	@Test
+	public void matchesFloodFill() {
+		Random random = new Random(1);
+		for (int trial = 0; trial < 150; trial++) {
+			int width = 1 + random.nextInt(140), height = 1 + random.nextInt(90);
+			BitMask mask = MorphologyTest.random(random, width, height);
+			if (trial % 3 == 0) {
+				for (int i = 0; i < 6; i++) {
+					int row = random.nextInt(height), col = random.nextInt(width);
+					mask.setRect(row, col, Math.min(height - 1, row + random.nextInt(40)), Math.min(width - 1, col + random.nextInt(40)));
+				}
+			}
+			int bandRows = 1 + random.nextInt(40);
+			assertEquals(width + "x" + height + " in bands of " + bandRows, floodFill(mask), label(mask, bandRows));
+		}
+	}
+
+	/*
+	 * a U whose arms only meet at the bottom, in bands that split it every row
+	 */
+	@Test
+	public void joinsGroupsThatMeetInALaterBand() {
+		BitMask mask = new BitMask(9, 8);
+		mask.setRect(0, 0, 7, 1);
+		mask.setRect(0, 7, 7, 8);
+		mask.setRect(7, 0, 7, 8);
+		mask.set(2, 4);
+		for (int bandRows = 1; bandRows <= 8; bandRows++) {
+			List<List<Integer>> groups = label(mask, bandRows);
+			assertEquals("bands of " + bandRows, 2, groups.size());
+			assertEquals(floodFill(mask), groups);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package model.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/*
+ * Chain codes of small known shapes, and on random groups the pixels the trace
+ * visits against the boundary worked out the slow way: every pixel of the group
+ * next to background that can reach the edge of the picture
+ */
+public class ContourTest {
+
+	private static final int[] COL_STEP = { 1, 1, 0, -1, -1, -1, 0, 1 };
+	private static final int[] ROW_STEP = { 0, -1, -1, -1, 0, 1, 1, 1 };
+
+	private static byte[] codes(Contour contour) {
+		byte[] codes = new byte[contour.getLength()];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = (byte) contour.getCode(i);
+		}
+		return codes;
+	}
+
+	private static RunLength runs(String... rows) {
+		RunLength runs = new RunLength();
+		for (int row = 0; row < rows.length; row++) {
+			int col = rows[row].indexOf('#');
+			while (col >= 0) {
+				int end = col;
+				while (end + 1 < rows[row].length() && rows[row].charAt(end + 1) == '#')
+					end++;
+				runs.add(row + 3, col + 5, end + 5);
+				col = rows[row].indexOf('#', end + 1);
+			}
+		}
+		return runs;
+	}
+
+	@Test
+	public void singlePixelHasNoSteps() {
+		Contour contour = Contour.trace(runs("#"));
+		assertEquals(0, contour.getLength());
+		assertEquals(3, contour.getStartRow());
+		assertEquals(5, contour.getStartCol());
+		assertEquals(0, contour.getPerimeter(), 0);
+	}
+
+	@Test
+	public void goesAroundAnticlockwise() {
+		// down the left side first, then right, up and back left
+		assertArrayEquals(new byte[] { 6, 0, 2, 4 }, codes(Contour.trace(runs("##", "##"))));
+		assertArrayEquals(new byte[] { 6, 6, 0, 0, 2, 2, 4, 4 }, codes(Contour.trace(runs("###", "###", "###"))));
+		assertEquals(8, Contour.trace(runs("###", "###", "###")).getPerimeter(), 1e-9);
+		// a line is walked there and back
+		assertArrayEquals(new byte[] { 0, 0, 4, 4 }, codes(Contour.trace(runs("###"))));
+	}
+
+	@Test
+	public void diagonalStepsCostMore() {
+		Contour contour = Contour.trace(runs(" # ", "###", " # "));
+		assertArrayEquals(new byte[] { 5, 7, 1, 3 }, codes(contour));
+		assertEquals(4 * Math.sqrt(2), contour.getPerimeter(), 1e-9);
+	}
+
+	@Test
+	public void visitsTheOuterBoundary() {
+		Random random = new Random(1);
+		int groups = 0;
+		for (int trial = 0; trial < 300; trial++) {
+			int width = 2 + random.nextInt(25), height = 2 + random.nextInt(25);
+			BitMask mask = MorphologyTest.random(random, width, height);
+			ComponentLabeller labeller = new ComponentLabeller(mask, height);
+			for (ComponentLabeller.Band band : labeller.getBands()) {
+				band.invoke();
+			}
+			for (RunLength runs : labeller.merge()) {
+				BitMask group = new BitMask(width, height);
+				runs.paint(group);
+				Contour contour = Contour.trace(runs);
+				int[] bounds = runs.getBounds();
+				assertEquals(bounds[0], contour.getStartRow());
+				assertEquals(runs.getStart(0), contour.getStartCol());
+				// the same as tracing the group where it is in the frame
+				assertArrayEquals(codes(Contour.trace(group, contour.getStartRow(), contour.getStartCol())), codes(contour));
+
+				Set<Integer> visited = new HashSet<Integer>();
+				int row = contour.getStartRow(), col = contour.getStartCol();
+				visited.add(row * width + col);
+				for (int i = 0; i < contour.getLength(); i++) {
+					row += ROW_STEP[contour.getCode(i)];
+					col += COL_STEP[contour.getCode(i)];
+					assertTrue("stepped off the group to " + row + "," + col, group.get(row, col));
+					visited.add(row * width + col);
+				}
+				assertEquals("ends where it started", contour.getStartRow() * width + contour.getStartCol(), row * width + col);
+				assertEquals(width + "x" + height + " group at " + bounds[0] + "," + runs.getStart(0), outerBoundary(group), visited);
+				groups++;
+			}
+		}
+		assertTrue(groups > 1000);
+	}
+
+	/*
+	 * pixels of group with a 4-neighbour in the background that is 4-connected to
+	 * the outside of the frame, holes don't count
+	 */
+	private static Set<Integer> outerBoundary(BitMask group) {
+		int width = group.getWidth(), height = group.getHeight();
+		// padded by one pixel all around, so the outside is one piece
+		boolean[][] outside = new boolean[height + 2][width + 2];
+		Deque<int[]> queue = new ArrayDeque<int[]>();
+		outside[0][0] = true;
+		queue.add(new int[] { 0, 0 });
+		while (!queue.isEmpty()) {
+			int[] pixel = queue.poll();
+			for (int d = 0; d < 8; d += 2) {
+				int row = pixel[0] + ROW_STEP[d], col = pixel[1] + COL_STEP[d];
+				if (row < 0 || row > height + 1 || col < 0 || col > width + 1 || outside[row][col])
+					continue;
+				if (row >= 1 && row <= height && col >= 1 && col <= width && group.get(row - 1, col - 1))
+					continue;
+				outside[row][col] = true;
+				queue.add(new int[] { row, col });
+			}
+		}
+		Set<Integer> boundary = new HashSet<Integer>();
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (!group.get(row, col))
+					continue;
+				for (int d = 0; d < 8; d += 2) {
+					if (outside[row + 1 + ROW_STEP[d]][col + 1 + COL_STEP[d]])
+						boundary.add(row * width + col);
+				}
+			}
+		}
+		return boundary;
+	}
+}
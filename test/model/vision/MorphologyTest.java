@@ -0,0 +1,125 @@
+package model.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * The word at a time shifts and the van Herk/Gil-Werman passes against the
+ * element applied pixel by pixel, on random masks whose widths fall on either
+ * side of a word
+ */
+public class MorphologyTest {
+
+	private static final int[] WIDTHS = { 1, 5, 63, 64, 65, 130 };
+
+	static BitMask random(Random random, int width, int height) {
+		BitMask mask = new BitMask(width, height);
+		double density = random.nextDouble();
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (random.nextDouble() < density)
+					mask.set(row, col);
+			}
+		}
+		return mask;
+	}
+
+	/*
+	 * every pixel the element covers is looked at, off the frame is white when
+	 * eroding and black when dilating
+	 */
+	private static BitMask naive(BitMask mask, StructuringElement element, boolean erode) {
+		int width = mask.getWidth(), height = mask.getHeight();
+		int halfWidth = element.getWidth() / 2, halfHeight = element.getHeight() / 2;
+		boolean cross = element.getShape() == StructuringElement.Shape.CROSS;
+		BitMask out = new BitMask(width, height);
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				boolean result = erode;
+				for (int dy = -halfHeight; dy <= halfHeight; dy++) {
+					for (int dx = -halfWidth; dx <= halfWidth; dx++) {
+						if (cross && dx != 0 && dy != 0)
+							continue;
+						int r = row + dy, c = col + dx;
+						boolean set = r >= 0 && r < height && c >= 0 && c < width ? mask.get(r, c) : erode;
+						if (set != erode)
+							result = !erode;
+					}
+				}
+				if (result)
+					out.set(row, col);
+			}
+		}
+		return out;
+	}
+
+	private static void assertMasksEqual(String what, BitMask expected, BitMask actual) {
+		for (int row = 0; row < expected.getHeight(); row++) {
+			for (int col = 0; col < expected.getWidth(); col++) {
+				assertEquals(what + " at " + row + "," + col, expected.get(row, col), actual.get(row, col));
+			}
+		}
+		// the bits past the width of each row stay clear, cardinality and nextSet count on it
+		int tail = actual.getWidth() % 64;
+		if (tail != 0) {
+			for (int row = 0; row < actual.getHeight(); row++) {
+				long last = actual.getWords()[row * actual.getWordsPerRow() + actual.getWordsPerRow() - 1];
+				assertEquals(what + " past the edge of row " + row, 0, last >>> tail);
+			}
+		}
+	}
+
+	private static StructuringElement element(Random random) {
+		int width = 1 + 2 * random.nextInt(5), height = 1 + 2 * random.nextInt(5);
+		return random.nextBoolean() ? StructuringElement.rectangle(width, height) : StructuringElement.cross(width, height);
+	}
+
+	@Test
+	public void erodeAndDilateMatchNaive() {
+		Random random = new Random(1);
+		for (int width : WIDTHS) {
+			for (int trial = 0; trial < 25; trial++) {
+				BitMask mask = random(random, width, 1 + random.nextInt(30));
+				StructuringElement element = element(random);
+				String what = width + "x" + mask.getHeight() + " " + element;
+				assertMasksEqual("dilate " + what, naive(mask, element, false), Morphology.dilate(mask, element));
+				assertMasksEqual("erode " + what, naive(mask, element, true), Morphology.erode(mask, element));
+			}
+		}
+	}
+
+	@Test
+	public void openAndCloseMatchNaive() {
+		Random random = new Random(2);
+		for (int width : WIDTHS) {
+			for (int trial = 0; trial < 10; trial++) {
+				BitMask mask = random(random, width, 1 + random.nextInt(30));
+				StructuringElement element = element(random);
+				String what = width + "x" + mask.getHeight() + " " + element;
+				BitMask closed = Morphology.close(mask, element), opened = Morphology.open(mask, element);
+				assertMasksEqual("close " + what, naive(naive(mask, element, false), element, true), closed);
+				assertMasksEqual("open " + what, naive(naive(mask, element, true), element, false), opened);
+				// close only adds pixels and open only takes them away
+				BitMask added = new BitMask(mask);
+				added.andNot(closed);
+				assertTrue("close took pixels away " + what, added.isEmpty());
+				BitMask removed = new BitMask(opened);
+				removed.andNot(mask);
+				assertTrue("open added pixels " + what, removed.isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void edgesAreNotEatenAway() {
+		BitMask full = new BitMask(70, 12);
+		full.setRect(0, 0, 11, 69);
+		assertEquals(full.cardinality(), Morphology.erode(full, StructuringElement.rectangle(5, 5)).cardinality());
+		BitMask empty = new BitMask(70, 12);
+		assertTrue(Morphology.dilate(empty, StructuringElement.rectangle(5, 5)).isEmpty());
+	}
+}
@@ -0,0 +1,103 @@
+package model.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/*
+ * Shapes drawn straight into Moments a row run at a time, the way the
+ * labeller adds them up
+ */
+public class ShapeFilterTest {
+
+	private static Moments rectangle(int width, int height) {
+		Moments moments = new Moments();
+		for (int row = 0; row < height; row++) {
+			moments.addRun(row + 10, 10, 10 + width - 1);
+		}
+		return moments;
+	}
+
+	/*
+	 * a strip along the diagonal, the pixels less than thickness off it
+	 */
+	private static Moments diagonal(int length, int thickness) {
+		Moments moments = new Moments();
+		for (int row = 0; row < length; row++) {
+			moments.addRun(row, Math.max(0, row - thickness + 1), Math.min(length - 1, row + thickness - 1));
+		}
+		return moments;
+	}
+
+	/*
+	 * only the border of a square, the right size and aspect but mostly empty
+	 */
+	private static Moments outline(int side, int thickness) {
+		Moments moments = new Moments();
+		for (int row = 0; row < side; row++) {
+			if (row < thickness || row >= side - thickness) {
+				moments.addRun(row, 0, side - 1);
+			} else {
+				moments.addRun(row, 0, thickness - 1);
+				moments.addRun(row, side - thickness, side - 1);
+			}
+		}
+		return moments;
+	}
+
+	@Test
+	public void cubesAreSquareAndFull() {
+		assertTrue(ShapeFilter.CUBE.accepts(rectangle(30, 30)));
+		assertTrue(ShapeFilter.CUBE.accepts(rectangle(40, 25)));
+		assertFalse("too long", ShapeFilter.CUBE.accepts(rectangle(80, 20)));
+		assertFalse("too empty", ShapeFilter.CUBE.accepts(outline(40, 2)));
+	}
+
+	@Test
+	public void tapeIsLongAndThin() {
+		assertTrue(ShapeFilter.TAPE.accepts(rectangle(4, 30)));
+		assertTrue(ShapeFilter.TAPE.accepts(rectangle(60, 8)));
+		assertFalse("too square", ShapeFilter.TAPE.accepts(rectangle(30, 30)));
+	}
+
+	@Test
+	public void turnedShapesGoByTheirOwnAxes() {
+		Moments strip = diagonal(60, 3);
+		assertTrue("aspect " + strip.getAspectRatio(), strip.getAspectRatio() > 4);
+		assertTrue(ShapeFilter.TAPE.accepts(strip));
+		assertFalse(ShapeFilter.CUBE.accepts(strip));
+	}
+
+	@Test
+	public void parsesWhatItEncodes() {
+		assertNull(ShapeFilter.parse("off"));
+		assertNull(ShapeFilter.parse(" "));
+		assertEquals(ShapeFilter.CUBE, ShapeFilter.parse("cube"));
+		assertEquals(ShapeFilter.TAPE, ShapeFilter.parse(ShapeFilter.TAPE.encode()));
+		ShapeFilter custom = new ShapeFilter(1.5, 3, .6);
+		assertEquals(custom, ShapeFilter.parse(custom.encode()));
+		assertEquals(custom, ShapeFilter.parse("1.5, 3, .6"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesOtherShapes() {
+		ShapeFilter.parse("1,2");
+	}
+
+	@Test
+	public void offUnlessConfigured() {
+		VisionConfig config = VisionConfig.defaults();
+		assertNull(config.getShape(0));
+		assertNull(config.getShape(1));
+		VisionConfig shaped = config.with("shape1", "tape");
+		assertNull(shaped.getShape(0));
+		assertEquals(ShapeFilter.TAPE, shaped.getShape(1));
+		assertFalse(shaped.sameProcessing(config));
+		assertEquals("tape", shaped.toProperties().getProperty("shape1"));
+		assertNull(shaped.with("shape1", "off").getShape(1));
+		assertEquals(ShapeFilter.TAPE, CompiledConfig.compile(null, shaped, new float[] { .16f, .33f }).getShape(1));
+	}
+}
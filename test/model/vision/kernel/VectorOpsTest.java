@@ -0,0 +1,195 @@
+package model.vision.kernel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.amd.aparapi.Kernel.EXECUTION_MODE;
+
+import model.vision.BrightnessStats;
+import model.vision.ColorHistogram;
+import model.vision.CompiledConfig;
+import model.vision.Pixel;
+import model.vision.VisionConfig;
+
+/*
+ * The loops in VectorOps have to give exactly what the JTP kernels give, the
+ * pipeline switches between them depending on the jvm. Both are run on the same
+ * random frames and compared bit for bit
+ */
+public class VectorOpsTest {
+
+	private static final int WIDTH = 97, HEIGHT = 61;
+	private static final int FRAMES = 5;
+
+	private static VisionKernels kernels;
+
+	@BeforeClass
+	public static void setUp() {
+		kernels = new VisionKernels(EXECUTION_MODE.JTP);
+		kernels.setVectorized(false);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		kernels.dispose();
+	}
+
+	/*
+	 * random colors with some greys, black, white and pure hues mixed in, those
+	 * are where the conversion divides by zero or wraps
+	 */
+	private static int[] frame(Random random) {
+		int[] special = { 0x000000, 0xFFFFFF, 0x808080, 0xFF0000, 0x00FF00, 0x0000FF, 0xFF00FF, 0xFF0001, 0x010000 };
+		int[] rgb = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < rgb.length; i++) {
+			rgb[i] = random.nextInt(8) == 0 ? special[random.nextInt(special.length)] : random.nextInt(0x1000000);
+		}
+		return rgb;
+	}
+
+	@Test
+	public void convertMatchesKernel() {
+		Random random = new Random(1);
+		for (int frame = 0; frame < FRAMES; frame++) {
+			int[] rgb = frame(random);
+			int n = rgb.length;
+			float[] hue = new float[n], saturation = new float[n], value = new float[n];
+			BrightnessStats stats = new BrightnessStats();
+			kernels.convert(rgb, hue, saturation, value, stats, 0, n);
+
+			float[] vectorHue = new float[n], vectorSaturation = new float[n], vectorValue = new float[n];
+			int[] values = new int[BrightnessStats.BINS], saturations = new int[BrightnessStats.BINS];
+			VectorOps.convert(rgb, vectorHue, vectorSaturation, vectorValue, 0, n);
+			VectorOps.histograms(rgb, vectorSaturation, values, saturations, 0, n);
+
+			assertArrayEquals("hue", hue, vectorHue, 0);
+			assertArrayEquals("saturation", saturation, vectorSaturation, 0);
+			assertArrayEquals("value", value, vectorValue, 0);
+			assertArrayEquals("value histogram", stats.getValueHistogram(), values);
+			assertArrayEquals("saturation histogram", stats.getSaturationHistogram(), saturations);
+		}
+	}
+
+	@Test
+	public void convertMatchesPixel() {
+		Random random = new Random(2);
+		int[] rgb = frame(random);
+		float[] hue = new float[rgb.length], saturation = new float[rgb.length], value = new float[rgb.length];
+		VectorOps.convert(rgb, hue, saturation, value, 0, rgb.length);
+		for (int i = 0; i < rgb.length; i++) {
+			Pixel pixel = new Pixel(rgb[i]);
+			String color = Integer.toHexString(rgb[i]);
+			assertEquals("hue of " + color, pixel.getHue(), hue[i], 0);
+			assertEquals("saturation of " + color, pixel.getSaturation(), saturation[i], 0);
+			assertEquals("value of " + color, pixel.getValue(), value[i], 0);
+		}
+	}
+
+	@Test
+	public void blurMatchesKernel() {
+		Random random = new Random(3);
+		for (int amount = 1; amount <= 3; amount++) {
+			int n = WIDTH * HEIGHT;
+			float[] saturation = new float[n], value = new float[n];
+			for (int i = 0; i < n; i++) {
+				saturation[i] = random.nextFloat();
+				value[i] = random.nextFloat();
+			}
+			float[] vectorSaturation = saturation.clone(), vectorValue = value.clone();
+			// only part of the frame, like a processing mask leaves
+			int firstRow = 4, lastRow = HEIGHT - 7;
+			kernels.blur(saturation, value, WIDTH, firstRow, lastRow, amount);
+
+			float[] saturationOut = new float[n], valueOut = new float[n];
+			for (int pass = 0; pass < amount; pass++) {
+				VectorOps.blur(vectorSaturation, vectorValue, saturationOut, valueOut, WIDTH, firstRow, lastRow, amount, firstRow, lastRow);
+				float[] swap = vectorSaturation;
+				vectorSaturation = saturationOut;
+				saturationOut = swap;
+				swap = vectorValue;
+				vectorValue = valueOut;
+				valueOut = swap;
+			}
+			// rows outside the stretch are whatever the buffers held, only the stretch is compared
+			for (int i = firstRow * WIDTH; i < lastRow * WIDTH; i++) {
+				assertEquals("saturation " + i + " after " + amount + " passes", saturation[i], vectorSaturation[i], 0);
+				assertEquals("value " + i + " after " + amount + " passes", value[i], vectorValue[i], 0);
+			}
+		}
+	}
+
+	/*
+	 * blurring only some rows has to leave them as blurring everything would, in
+	 * both the kernel and the loops
+	 */
+	@Test
+	public void partialBlurMatchesWhole() {
+		Random random = new Random(6);
+		for (boolean vectorized : new boolean[] { false, true }) {
+			kernels.setVectorized(vectorized);
+			for (int amount = 1; amount <= 3; amount++) {
+				int n = WIDTH * HEIGHT;
+				float[] saturation = new float[n], value = new float[n];
+				for (int i = 0; i < n; i++) {
+					saturation[i] = random.nextFloat();
+					value[i] = random.nextFloat();
+				}
+				float[] partSaturation = saturation.clone(), partValue = value.clone();
+				int firstRow = 2, lastRow = HEIGHT - 3, fromRow = 20, toRow = 33;
+				kernels.blur(saturation, value, WIDTH, firstRow, lastRow, amount);
+				kernels.blur(partSaturation, partValue, WIDTH, firstRow, lastRow, amount, fromRow, toRow);
+				for (int i = fromRow * WIDTH; i < toRow * WIDTH; i++) {
+					assertEquals("saturation " + i + " after " + amount + " passes", saturation[i], partSaturation[i], 0);
+					assertEquals("value " + i + " after " + amount + " passes", value[i], partValue[i], 0);
+				}
+			}
+		}
+		kernels.setVectorized(false);
+	}
+
+	@Test
+	public void isolateMatchesKernel() {
+		Random random = new Random(4);
+		CompiledConfig config = CompiledConfig.compile(null, VisionConfig.defaults(), new float[] { .16f, .33f, .97f });
+		for (int frame = 0; frame < FRAMES; frame++) {
+			float[][] planes = convert(frame(random));
+			int n = planes[0].length;
+			byte[] classes = new byte[n], vectorClasses = new byte[n];
+			kernels.isolate(planes[0], planes[1], planes[2], classes, config.getHueTable(), .3f, .2f, 0, n);
+			VectorOps.isolate(planes[0], planes[1], planes[2], vectorClasses, config.getHueTable(), .3f, .2f, 0, n);
+			assertArrayEquals("classes", classes, vectorClasses);
+		}
+	}
+
+	@Test
+	public void backProjectMatchesKernel() {
+		Random random = new Random(5);
+		StringBuilder counts = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			counts.append(random.nextInt(ColorHistogram.HUE_BINS * ColorHistogram.SATURATION_BINS)).append(':').append(1 + random.nextInt(50)).append(' ');
+		}
+		VisionConfig backProjecting = VisionConfig.defaults().withBackProjection(true).withHistogram(0, ColorHistogram.parse(counts.toString()));
+		CompiledConfig config = CompiledConfig.compile(null, backProjecting, new float[] { .16f, .33f });
+		for (int frame = 0; frame < FRAMES; frame++) {
+			float[][] planes = convert(frame(random));
+			int n = planes[0].length;
+			byte[] classes = new byte[n], vectorClasses = new byte[n];
+			kernels.backProject(planes[0], planes[1], planes[2], classes, config.getColorTable(), ColorHistogram.HUE_BINS, ColorHistogram.SATURATION_BINS, .2f, 0, n);
+			VectorOps.backProject(planes[0], planes[1], planes[2], vectorClasses, config.getColorTable(), ColorHistogram.HUE_BINS, ColorHistogram.SATURATION_BINS, .2f, 0,
+					n);
+			assertArrayEquals("classes", classes, vectorClasses);
+		}
+	}
+
+	private static float[][] convert(int[] rgb) {
+		float[][] planes = new float[3][rgb.length];
+		VectorOps.convert(rgb, planes[0], planes[1], planes[2], 0, rgb.length);
+		return planes;
+	}
+}